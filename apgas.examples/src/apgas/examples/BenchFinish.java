@@ -0,0 +1,110 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import apgas.Configuration;
+import apgas.Place;
+
+/**
+ * Measures the cost of SPMD-style finish constructs as the number of places
+ * grows.
+ * <p>
+ * Run once per place count and finish implementation, for instance:
+ *
+ * <pre>
+ * for p in 2 4 8 16 32 64 128 256; do
+ *   java -Dapgas.places=$p -Dapgas.finish=apgas.impl.DefaultFinish apgas.examples.BenchFinish
+ *   java -Dapgas.places=$p -Dapgas.finish=apgas.impl.TreeFinish apgas.examples.BenchFinish
+ * done
+ * </pre>
+ *
+ * Use {@code -Dapgas.compact=true} and a small {@code -Dapgas.threads} to fit
+ * many places on one host.
+ */
+public class BenchFinish {
+  static int OUTER_ITERS = 10;
+
+  // require each test to run for at least 5 seconds (reduce jitter)
+  static long MIN_NANOS = 5 * 1000000000L;
+
+  public static void main(String[] args) {
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "4");
+    }
+    final String finish = System.getProperty("apgas.finish", "default");
+
+    System.out.println("Running with " + places().size() + " places and "
+        + finish + " finish.");
+
+    long time0;
+    long time1;
+    long iterCount;
+
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      for (int i = 0; i < OUTER_ITERS; ++i) {
+        finish(() -> {
+          for (final Place p : places()) {
+            asyncAt(p, () -> {
+            });
+          }
+        });
+      }
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println(places().size() + " places -- flat fan out: "
+        + (time1 - time0) / 1E9 / OUTER_ITERS / iterCount + " seconds");
+
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      for (int i = 0; i < OUTER_ITERS; ++i) {
+        finish(() -> {
+          for (final Place p : places()) {
+            asyncAt(p, () -> {
+              final Place next = place((here().id + 1) % places().size());
+              asyncAt(next, () -> {
+              });
+            });
+          }
+        });
+      }
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println(places().size() + " places -- SPMD with neighbor hop: "
+        + (time1 - time0) / 1E9 / OUTER_ITERS / iterCount + " seconds");
+
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      finish(() -> {
+        for (final Place p : places()) {
+          asyncAt(p, () -> {
+            for (final Place q : places()) {
+              asyncAt(q, () -> {
+              });
+            }
+          });
+        }
+      });
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println(places().size() + " places -- all to all: "
+        + (time1 - time0) / 1E9 / iterCount + " seconds");
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import apgas.impl.KryoSerializer;
+import apgas.util.LongIntMap;
+
+/**
+ * Compares boxed collections with {@link LongIntMap} for the bookkeeping of a
+ * resilient finish: the per place pair task counters and the sets of dead
+ * places and nested finishes.
+ * <p>
+ * Each iteration replays a two-level fan-out over n places: place 0 spawns a
+ * task to every place, every place then spawns a task to every place, and
+ * every place runs a nested finish. The benchmark reports the bytes allocated
+ * and the time spent per counter update, and the Java and Kryo serialized
+ * sizes of the state at its peak.
+ */
+public class BenchFinishState {
+  // require each test to run for at least 2 seconds (reduce jitter)
+  static long MIN_NANOS = 2 * 1000000000L;
+
+  static int sink;
+
+  /**
+   * The state of a finish.
+   */
+  interface State extends Serializable {
+    void incr(int p, int q);
+
+    void decr(int p, int q);
+
+    void addChild(long gid);
+
+    void removeChild(long gid);
+
+    void kill(int p);
+
+    boolean isDone();
+  }
+
+  /**
+   * The boxed representation.
+   */
+  static class BoxedState implements State {
+    private static final long serialVersionUID = 1L;
+
+    final HashMap<Long, Integer> counts = new HashMap<Long, Integer>();
+    HashSet<Integer> deads;
+    HashSet<Long> cids;
+    HashSet<Long> dids;
+
+    @Override
+    public void incr(int p, int q) {
+      final long index = ((long) p << 32) + q;
+      final int v = counts.getOrDefault(index, 0) + 1;
+      if (v == 0) {
+        counts.remove(index);
+      } else {
+        counts.put(index, v);
+      }
+    }
+
+    @Override
+    public void decr(int p, int q) {
+      final long index = ((long) p << 32) + q;
+      final int v = counts.getOrDefault(index, 0) - 1;
+      if (v == 0) {
+        counts.remove(index);
+      } else {
+        counts.put(index, v);
+      }
+    }
+
+    @Override
+    public void addChild(long gid) {
+      if (dids == null || !dids.contains(gid)) {
+        if (cids == null) {
+          cids = new HashSet<Long>();
+        }
+        cids.add(gid);
+      }
+    }
+
+    @Override
+    public void removeChild(long gid) {
+      if (cids != null && cids.remove(gid)) {
+        return;
+      }
+      if (dids == null) {
+        dids = new HashSet<Long>();
+      }
+      dids.add(gid);
+    }
+
+    @Override
+    public void kill(int p) {
+      if (deads == null) {
+        deads = new HashSet<Integer>();
+      }
+      deads.add(p);
+    }
+
+    @Override
+    public boolean isDone() {
+      return counts.isEmpty() && (cids == null || cids.isEmpty());
+    }
+  }
+
+  /**
+   * The primitive representation.
+   */
+  static class PrimitiveState implements State {
+    private static final long serialVersionUID = 1L;
+
+    final LongIntMap counts = new LongIntMap();
+    final LongIntMap deads = new LongIntMap();
+    final LongIntMap cids = new LongIntMap();
+    final LongIntMap dids = new LongIntMap();
+
+    @Override
+    public void incr(int p, int q) {
+      counts.add(((long) p << 32) + q, 1);
+    }
+
+    @Override
+    public void decr(int p, int q) {
+      counts.add(((long) p << 32) + q, -1);
+    }
+
+    @Override
+    public void addChild(long gid) {
+      if (!dids.contains(gid)) {
+        cids.put(gid, 1);
+      }
+    }
+
+    @Override
+    public void removeChild(long gid) {
+      if (cids.remove(gid) == 0) {
+        dids.put(gid, 1);
+      }
+    }
+
+    @Override
+    public void kill(int p) {
+      deads.put(p, 1);
+    }
+
+    @Override
+    public boolean isDone() {
+      return counts.isEmpty() && cids.isEmpty();
+    }
+  }
+
+  /**
+   * A factory of states.
+   */
+  interface Factory {
+    State make();
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int[] sizes = args.length > 0 ? new int[] { Integer.parseInt(args[0]) }
+        : new int[] { 16, 64, 256 };
+    for (final int n : sizes) {
+      doTest("boxed " + n + " places: ", n, () -> new BoxedState());
+      doTest("primitive " + n + " places: ", n, () -> new PrimitiveState());
+      System.out.println();
+    }
+  }
+
+  static void doTest(String prefix, int n, Factory factory) throws Exception {
+    // warm up
+    for (int i = 0; i < 10; i++) {
+      fanOut(factory.make(), n, null);
+    }
+
+    final State peak = factory.make();
+    fanOut(peak, n, peak);
+    final int javaSize = javaSize(peak);
+    final int kryoSize = kryoSize(peak);
+
+    final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean();
+    final long id = Thread.currentThread().getId();
+    long updates = 0;
+    long iterCount = 0;
+    long time1;
+    final long bytes0 = bean.getThreadAllocatedBytes(id);
+    final long time0 = System.nanoTime();
+    do {
+      updates += fanOut(factory.make(), n, null);
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    final long bytes1 = bean.getThreadAllocatedBytes(id);
+    System.out.println(prefix + (bytes1 - bytes0) / updates
+        + " bytes allocated and " + (time1 - time0) / updates
+        + " nanoseconds per update, peak state " + javaSize
+        + " bytes (java), " + kryoSize + " bytes (kryo) in " + iterCount
+        + " iterations");
+  }
+
+  /**
+   * Replays a two-level fan-out.
+   *
+   * @param state
+   *          the state to update
+   * @param n
+   *          the number of places
+   * @param peak
+   *          if not null, stops at peak occupancy leaving the state as is
+   * @return the number of counter updates
+   */
+  static long fanOut(State state, int n, State peak) {
+    long updates = 0;
+    state.incr(0, 0); // root task
+    for (int p = 0; p < n; p++) {
+      state.incr(0, p); // spawn
+      updates++;
+    }
+    for (int p = 0; p < n; p++) {
+      state.decr(0, p); // submit
+      state.incr(p, p);
+      updates += 2;
+      state.addChild(((long) p << 32) + 1);
+      for (int q = 0; q < n; q++) {
+        state.incr(p, q); // spawn
+        updates++;
+      }
+    }
+    if (state == peak) {
+      state.kill(n - 1);
+      return updates;
+    }
+    for (int p = 0; p < n; p++) {
+      for (int q = 0; q < n; q++) {
+        state.decr(p, q); // submit
+        state.incr(q, q);
+        state.decr(q, q); // tell
+        updates += 3;
+      }
+      state.decr(p, p); // tell
+      state.removeChild(((long) p << 32) + 1);
+      updates++;
+    }
+    state.decr(0, 0);
+    sink += state.isDone() ? 1 : 0;
+    return updates;
+  }
+
+  static int javaSize(Object object) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(object);
+    }
+    return bytes.size();
+  }
+
+  static int kryoSize(Object object) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    KryoSerializer.writeObject(bytes, object);
+    return bytes.size();
+  }
+}
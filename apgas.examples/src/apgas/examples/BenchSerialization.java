@@ -0,0 +1,98 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import java.nio.ByteBuffer;
+
+import apgas.impl.SerializableRunnable;
+import apgas.sockets.MessageSerializer;
+
+/**
+ * Compares the cost and size of the socket transport message encodings (Java
+ * serialization, Kryo, Kryo with Snappy compression) on typical closures.
+ */
+public class BenchSerialization {
+  // require each test to run for at least 2 seconds (reduce jitter)
+  static long MIN_NANOS = 2 * 1000000000L;
+
+  static int INNER_ITERS = 1000;
+
+  static int sink;
+
+  public static void main(String[] args) throws Exception {
+    final MessageSerializer java = new MessageSerializer(false, false, 0);
+    final MessageSerializer kryo = new MessageSerializer(true, false, 0);
+    final MessageSerializer snappy = new MessageSerializer(true, true, 0);
+
+    final int a = 42;
+    final long b = 7L;
+    final SerializableRunnable small = () -> sink += a + (int) b;
+
+    final double[] row = new double[64];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = Math.random();
+    }
+    final SerializableRunnable medium = () -> sink += row.length;
+
+    final int[] block = new int[16384];
+    for (int i = 0; i < block.length; i++) {
+      block[i] = i % 16;
+    }
+    final String name = "block";
+    final SerializableRunnable large = () -> sink += block.length
+        + name.length();
+
+    doTest("small closure", small, java, kryo, snappy);
+    doTest("medium closure (double[64])", medium, java, kryo, snappy);
+    doTest("large closure (int[16384])", large, java, kryo, snappy);
+  }
+
+  static void doTest(String prefix, SerializableRunnable f,
+      MessageSerializer java, MessageSerializer kryo, MessageSerializer snappy)
+      throws Exception {
+    doTest(prefix + " -- java: ", f, java);
+    doTest(prefix + " -- kryo: ", f, kryo);
+    doTest(prefix + " -- kryo+snappy: ", f, snappy);
+    System.out.println();
+  }
+
+  static void doTest(String prefix, SerializableRunnable f,
+      MessageSerializer serializer) throws Exception {
+    // warm up
+    for (int i = 0; i < INNER_ITERS; ++i) {
+      roundTrip(f, serializer);
+    }
+
+    final int size = serializer.serialize(f).remaining();
+    long iterCount = 0;
+    long time1;
+    final long time0 = System.nanoTime();
+    do {
+      for (int i = 0; i < INNER_ITERS; ++i) {
+        roundTrip(f, serializer);
+      }
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println(prefix + size + " bytes, "
+        + (time1 - time0) / 1E3 / INNER_ITERS / iterCount
+        + " microseconds per round trip");
+  }
+
+  static void roundTrip(SerializableRunnable f, MessageSerializer serializer)
+      throws Exception {
+    final ByteBuffer frame = serializer.serialize(f);
+    final ByteBuffer copy = ByteBuffer.allocateDirect(frame.remaining());
+    copy.put(frame).flip();
+    serializer.deserialize(copy).run();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import java.io.Serializable;
+
+import apgas.Configuration;
+import apgas.Place;
+import apgas.util.Team;
+
+/**
+ * Compares the {@link Team} collectives with the same operations written by
+ * hand as round trips from place 0.
+ * <p>
+ * Run with increasing values of "{@code apgas.places}", e.g., 2 to 64.
+ */
+public class BenchTeam {
+  static int ITERS = 100;
+
+  // require each test to run for at least 5 seconds (reduce jitter)
+  static long MIN_NANOS = 5 * 1000000000L;
+
+  static long sink;
+
+  interface Test extends Serializable {
+    void run(Team team);
+  }
+
+  public static void main(String[] args) {
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "4");
+    }
+
+    System.out.println("Running with " + places().size() + " places.");
+    System.out.println(
+        "Min elapsed time for each test: " + MIN_NANOS / 1e9 + " seconds.");
+
+    final Team team = Team.make(places());
+
+    doTest("team broadcast: ", team, t -> t.broadcast(0, 42L));
+    doTest("team allreduce: ", team, t -> t.allreduce(1L, Long::sum));
+    doTest("team barrier: ", team, t -> t.barrier());
+
+    doTest("hand-written allreduce: ", null, t -> {
+      long sum = 0;
+      for (final Place p : places()) {
+        sum += at(p, () -> 1L);
+      }
+      final long result = sum;
+      finish(() -> {
+        for (final Place p : places()) {
+          asyncAt(p, () -> sink += result);
+        }
+      });
+    });
+  }
+
+  /**
+   * Times a collective operation.
+   *
+   * @param prefix
+   *          the label of the test
+   * @param team
+   *          the team running the operation at all places or null to run the
+   *          operation at place 0 only
+   * @param test
+   *          the operation
+   */
+  static void doTest(String prefix, Team team, Test test) {
+    // warm up
+    final long warmup = System.nanoTime();
+    do {
+      runBatch(team, test);
+    } while (System.nanoTime() - warmup < MIN_NANOS / 5);
+
+    long time0;
+    long time1;
+    long iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      runBatch(team, test);
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println(prefix + (time1 - time0) / 1E3 / ITERS / iterCount
+        + " microseconds");
+  }
+
+  static void runBatch(Team team, Test test) {
+    if (team == null) {
+      for (int i = 0; i < ITERS; ++i) {
+        test.run(null);
+      }
+    } else {
+      finish(() -> {
+        for (final Place p : places()) {
+          asyncAt(p, () -> {
+            for (int i = 0; i < ITERS; ++i) {
+              test.run(team);
+            }
+          });
+        }
+      });
+    }
+  }
+}
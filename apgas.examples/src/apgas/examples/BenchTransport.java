@@ -0,0 +1,151 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import apgas.Configuration;
+import apgas.Place;
+
+/**
+ * Measures the latency, message rate, and bandwidth of the transport selected
+ * with the "{@code apgas.transport}" system property between place 0 and
+ * place 1.
+ * <p>
+ * The ping-pong test reports the mean and 99th percentile of the round trip
+ * latency. The streaming test sends uncounted tasks back to back and reports
+ * how many are received per second.
+ * <p>
+ * Run with the same arguments for each transport to compare them, for instance
+ * "{@code -Dapgas.transport=apgas.sockets.SharedMemoryTransport}".
+ */
+public class BenchTransport {
+  static int ITERS = 1000;
+
+  // require each test to run for at least 5 seconds (reduce jitter)
+  static long MIN_NANOS = 5 * 1000000000L;
+
+  static final int PAYLOAD = 64 * 1024;
+
+  static int sink;
+
+  static final AtomicLong received = new AtomicLong();
+
+  public static void main(String[] args) {
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "2");
+    }
+
+    if (places().size() < 2) {
+      System.err.println("This benchmark requires at least two places.");
+      System.exit(1);
+    }
+
+    System.out.println("Transport: " + System
+        .getProperty("apgas.transport", "apgas.impl.HazelcastTransport"));
+    System.out.println(
+        "Min elapsed time for each test: " + MIN_NANOS / 1e9 + " seconds.");
+
+    final Place next = place(1);
+
+    // warm up
+    for (int i = 0; i < ITERS; ++i) {
+      at(next, () -> {
+      });
+    }
+
+    long time0;
+    long time1;
+    long iterCount;
+
+    long[] samples = new long[ITERS];
+    int sampleCount = 0;
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      if (sampleCount + ITERS > samples.length) {
+        samples = Arrays.copyOf(samples, 2 * samples.length);
+      }
+      for (int i = 0; i < ITERS; ++i) {
+        final long start = System.nanoTime();
+        at(next, () -> {
+        });
+        samples[sampleCount++] = System.nanoTime() - start;
+      }
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    Arrays.sort(samples, 0, sampleCount);
+    System.out.println("round trip latency: "
+        + (time1 - time0) / 1E3 / ITERS / iterCount + " microseconds (p99 "
+        + samples[(int) (sampleCount * 0.99)] / 1E3 + " microseconds)");
+    System.out.println("ping-pong rate: "
+        + (long) (ITERS * iterCount * 1E9 / (time1 - time0))
+        + " round trips per second");
+
+    long sent = 0;
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      for (int i = 0; i < ITERS; ++i) {
+        uncountedAsyncAt(next, () -> received.incrementAndGet());
+      }
+      sent += ITERS;
+      final long expected = sent;
+      while (at(next, () -> received.get()) < expected) {
+      }
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println("streaming rate: "
+        + (long) (ITERS * iterCount * 1E9 / (time1 - time0))
+        + " messages per second");
+
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      finish(() -> {
+        for (int i = 0; i < ITERS; ++i) {
+          asyncAt(next, () -> {
+          });
+        }
+      });
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println("message rate: "
+        + (long) (ITERS * iterCount * 1E9 / (time1 - time0))
+        + " tasks per second");
+
+    final byte[] payload = new byte[PAYLOAD];
+    iterCount = 0;
+    time0 = System.nanoTime();
+    do {
+      finish(() -> {
+        for (int i = 0; i < ITERS / 10; ++i) {
+          asyncAt(next, () -> {
+            sink += payload.length;
+          });
+        }
+      });
+      time1 = System.nanoTime();
+      iterCount++;
+    } while (time1 - time0 < MIN_NANOS);
+    System.out.println("bandwidth (" + PAYLOAD / 1024 + " KB tasks): "
+        + (long) ((double) PAYLOAD * ITERS / 10 * iterCount / (time1 - time0)
+            * 1E9 / (1 << 20))
+        + " MB per second");
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import java.util.Arrays;
+
+import apgas.Configuration;
+import apgas.glb.GLB;
+import apgas.glb.GLBParameters;
+import apgas.glb.TaskBag;
+import apgas.glb.TaskQueue;
+
+/**
+ * Computes Fibonacci numbers using the {@link GLB} load balancer.
+ * <p>
+ * Each task computes fib(n) by spawning tasks for fib(n-1) and fib(n-2) or
+ * sequentially below a threshold. Compare the performance for increasing
+ * values of "{@code apgas.places}" to evaluate the scaling of the load
+ * balancer.
+ */
+final class GLBFibonacci {
+  static final int THRESHOLD = 20;
+
+  static long seqfib(int n) {
+    if (n < 2) {
+      return n;
+    }
+    return seqfib(n - 1) + seqfib(n - 2);
+  }
+
+  static final class Bag implements TaskBag {
+    private static final long serialVersionUID = -3924461397612870125L;
+
+    final int[] tasks;
+
+    Bag(int[] tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    public int size() {
+      return tasks.length;
+    }
+  }
+
+  static final class Queue implements TaskQueue<Bag, Long> {
+    int[] tasks = new int[64];
+    int size;
+    long result;
+    long count;
+
+    void push(int n) {
+      if (size == tasks.length) {
+        tasks = Arrays.copyOf(tasks, size * 2);
+      }
+      tasks[size++] = n;
+    }
+
+    @Override
+    public boolean process(int n) {
+      for (; n > 0 && size > 0; --n) {
+        final int t = tasks[--size];
+        ++count;
+        if (t < THRESHOLD) {
+          result += seqfib(t);
+        } else {
+          push(t - 1);
+          push(t - 2);
+        }
+      }
+      return size > 0;
+    }
+
+    @Override
+    public Bag split() {
+      // give away the bottom half of the stack where the largest tasks are
+      final int s = size / 2;
+      if (s == 0) {
+        return null;
+      }
+      final Bag bag = new Bag(Arrays.copyOf(tasks, s));
+      System.arraycopy(tasks, s, tasks, 0, size - s);
+      size -= s;
+      return bag;
+    }
+
+    @Override
+    public void merge(Bag bag) {
+      for (final int t : bag.tasks) {
+        push(t);
+      }
+    }
+
+    @Override
+    public long count() {
+      return count;
+    }
+
+    @Override
+    public Long getResult() {
+      return result;
+    }
+  }
+
+  static long run(int n, boolean verbose) {
+    final GLB<Bag, Long> glb = new GLB<Bag, Long>(() -> new Queue(),
+        (a, b) -> a + b, new GLBParameters(100, 4, 4,
+            GLBParameters.computeZ(places().size(), 4), 1024, verbose));
+    final Queue queue = (Queue) glb.taskQueue();
+    return glb.run(() -> queue.push(n));
+  }
+
+  public static void main(String[] args) {
+    int n = 40;
+    if (args.length > 0) {
+      try {
+        n = Integer.parseInt(args[0]);
+      } catch (final NumberFormatException e) {
+        System.err.println("usage: java GLBFibonacci [int]");
+        System.exit(1);
+      }
+    }
+
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "4");
+    }
+
+    System.out.println("Warmup...");
+    run(n - 5, false);
+
+    System.out.println("Starting...");
+    long time = System.nanoTime();
+    final long f = run(n, true);
+    time = System.nanoTime() - time;
+    System.out.println("fib(" + n + ")=" + f + " in " + time / 1e9 + "s with "
+        + places().size() + " places");
+  }
+}
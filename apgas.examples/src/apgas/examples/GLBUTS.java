@@ -0,0 +1,102 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+import apgas.Configuration;
+import apgas.glb.GLB;
+import apgas.glb.GLBParameters;
+import apgas.glb.TaskQueue;
+
+/**
+ * Counts the nodes of an unbalanced tree using the {@link GLB} load balancer.
+ * <p>
+ * Compare the performance for increasing values of "
+ * {@code apgas.places}" to evaluate the scaling of the load balancer.
+ */
+final class GLBUTS {
+  static final class Queue implements TaskQueue<UTS, Long> {
+    final MessageDigest md = UTS.encoder();
+    final UTS bag = new UTS(64);
+
+    @Override
+    public boolean process(int n) {
+      try {
+        for (; n > 0 && bag.size > 0; --n) {
+          bag.expand(md);
+        }
+      } catch (final DigestException e) {
+        throw new RuntimeException(e);
+      }
+      return bag.size > 0;
+    }
+
+    @Override
+    public UTS split() {
+      return bag.split();
+    }
+
+    @Override
+    public void merge(UTS b) {
+      bag.merge(b);
+    }
+
+    @Override
+    public long count() {
+      return bag.count;
+    }
+
+    @Override
+    public Long getResult() {
+      return bag.count;
+    }
+  }
+
+  static long run(int depth, boolean verbose) {
+    final GLB<UTS, Long> glb = new GLB<UTS, Long>(() -> new Queue(),
+        (a, b) -> a + b, new GLBParameters(511, 4, 4,
+            GLBParameters.computeZ(places().size(), 4), 1024, verbose));
+    final Queue queue = (Queue) glb.taskQueue();
+    return glb.run(() -> queue.bag.seed(queue.md, 19, depth));
+  }
+
+  public static void main(String[] args) {
+    int depth = 13;
+    try {
+      depth = Integer.parseInt(args[0]);
+    } catch (final Exception e) {
+    }
+
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "4");
+    }
+
+    System.out.println("Warmup...");
+    run(depth - 2, false);
+
+    System.out.println("Starting...");
+    long time = System.nanoTime();
+
+    final long count = run(depth, true);
+
+    time = System.nanoTime() - time;
+    System.out.println("Finished.");
+
+    System.out.println("Depth: " + depth + ", Places: " + places().size()
+        + ", Performance: " + count + "/" + UTS.sub("" + time / 1e9, 0, 6)
+        + " = " + UTS.sub("" + (count / (time / 1e3)), 0, 6) + "M nodes/s");
+  }
+}
@@ -16,7 +16,9 @@ import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-public final class UTS implements Serializable {
+import apgas.glb.TaskBag;
+
+public final class UTS implements Serializable, TaskBag {
   private static final long serialVersionUID = 2200935927036145803L;
 
   // branching factor: 4
@@ -47,6 +49,11 @@ public final class UTS implements Serializable {
     upper = new int[n];
   }
 
+  @Override
+  public int size() {
+    return size;
+  }
+
   private void digest(MessageDigest md, int d) throws DigestException {
     if (size >= depth.length) {
       grow();
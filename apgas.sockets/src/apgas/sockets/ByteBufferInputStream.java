@@ -0,0 +1,67 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link ByteBufferInputStream} class implements an input stream that reads
+ * in place from a {@link ByteBuffer}, direct or not.
+ */
+final class ByteBufferInputStream extends InputStream {
+  /**
+   * The underlying buffer.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Constructs a stream reading the bytes between the position and the limit of
+   * the buffer.
+   *
+   * @param buffer
+   *          the buffer
+   */
+  ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    final int n = Math.min(len, buffer.remaining());
+    buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    final int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + k);
+    return k;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link ByteBufferOutputStream} class implements an output stream that
+ * writes into a growable direct {@link ByteBuffer}.
+ * <p>
+ * Instances are meant to be reused: {@link #reset()} rewinds the stream without
+ * releasing the underlying buffer.
+ */
+final class ByteBufferOutputStream extends OutputStream {
+  /**
+   * The initial capacity of the buffer.
+   */
+  private static final int INITIAL_CAPACITY = 4096;
+
+  /**
+   * The underlying buffer.
+   */
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+  /**
+   * Rewinds the stream to the beginning of the buffer.
+   *
+   * @return this
+   */
+  ByteBufferOutputStream reset() {
+    buffer.clear();
+    return this;
+  }
+
+  /**
+   * Returns the buffer ready to be read from the beginning to the last byte
+   * written.
+   * <p>
+   * The returned buffer remains owned by this stream and is only valid until
+   * the next call to {@link #reset()}.
+   *
+   * @return the buffer
+   */
+  ByteBuffer flip() {
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Ensures the buffer can accommodate {@code n} more bytes.
+   *
+   * @param n
+   *          the number of bytes
+   */
+  private void ensureRemaining(int n) {
+    if (buffer.remaining() < n) {
+      final ByteBuffer tmp = ByteBuffer.allocateDirect(
+          Math.max(buffer.position() + n, 2 * buffer.capacity()));
+      buffer.flip();
+      tmp.put(buffer);
+      buffer = tmp;
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    ensureRemaining(1);
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureRemaining(len);
+    buffer.put(b, off, len);
+  }
+
+  @Override
+  public void close() {
+    // the buffer is reused, nothing to release
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.xerial.snappy.Snappy;
+
+import apgas.impl.KryoSerializer;
+import apgas.impl.SerializableRunnable;
+
+/**
+ * The {@link MessageSerializer} class converts active messages to and from the
+ * frames exchanged by the {@link SocketTransport}.
+ * <p>
+ * A frame starts with one byte identifying the codec applied to the rest of
+ * the frame. Messages are serialized using either Kryo or Java serialization.
+ * Serialized messages larger than the compression threshold are compressed
+ * using Snappy if compression is enabled and effective.
+ * <p>
+ * Frames are written into per-thread reusable direct buffers.
+ */
+public final class MessageSerializer {
+  /**
+   * Codec of uncompressed frames.
+   */
+  private static final byte RAW = 0;
+
+  /**
+   * Codec of Snappy-compressed frames.
+   */
+  private static final byte SNAPPY = 1;
+
+  /**
+   * Per-thread reusable serialization buffers.
+   */
+  private static final ThreadLocal<ByteBufferOutputStream> buffers = new ThreadLocal<ByteBufferOutputStream>() {
+    @Override
+    protected ByteBufferOutputStream initialValue() {
+      return new ByteBufferOutputStream();
+    }
+  };
+
+  /**
+   * Per-thread reusable compression buffers.
+   */
+  private static final ThreadLocal<ByteBuffer> compressionBuffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(4096);
+    }
+  };
+
+  /**
+   * Per-thread reusable decompression buffers.
+   */
+  private static final ThreadLocal<ByteBuffer> decompressionBuffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(4096);
+    }
+  };
+
+  /**
+   * Use Kryo if set, Java serialization otherwise.
+   */
+  private final boolean kryo;
+
+  /**
+   * Enables Snappy compression if set.
+   */
+  private final boolean compress;
+
+  /**
+   * Minimal size in bytes of a serialized message to attempt compression.
+   */
+  private final int threshold;
+
+  /**
+   * Constructs a {@link MessageSerializer} instance.
+   *
+   * @param kryo
+   *          use Kryo if set, Java serialization otherwise
+   * @param compress
+   *          enables Snappy compression if set
+   * @param threshold
+   *          minimal size in bytes of a serialized message to attempt
+   *          compression
+   */
+  public MessageSerializer(boolean kryo, boolean compress, int threshold) {
+    this.kryo = kryo;
+    this.compress = compress;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Serializes a message into a frame.
+   * <p>
+   * The returned buffer belongs to the calling thread and is only valid until
+   * the next call to this method from the same thread.
+   *
+   * @param f
+   *          the message
+   * @return the frame
+   * @throws IOException
+   *           if I/O errors occur
+   */
+  public ByteBuffer serialize(SerializableRunnable f) throws IOException {
+    final ByteBufferOutputStream out = buffers.get().reset();
+    out.write(RAW);
+    if (kryo) {
+      KryoSerializer.writeObject(out, f);
+    } else {
+      final ObjectOutputStream oos = new ObjectOutputStream(out);
+      oos.writeObject(f);
+      oos.close();
+    }
+    final ByteBuffer frame = out.flip();
+    if (!compress || frame.remaining() - 1 < threshold) {
+      return frame;
+    }
+    return compress(frame);
+  }
+
+  /**
+   * Compresses a raw frame if this makes the frame smaller.
+   *
+   * @param frame
+   *          the raw frame
+   * @return the compressed frame or the raw frame
+   * @throws IOException
+   *           if I/O errors occur
+   */
+  private static ByteBuffer compress(ByteBuffer frame) throws IOException {
+    final int length = frame.remaining() - 1;
+    final int max = 1 + Snappy.maxCompressedLength(length);
+    ByteBuffer compressed = compressionBuffers.get();
+    if (compressed.capacity() < max) {
+      compressed = ByteBuffer
+          .allocateDirect(Math.max(max, 2 * compressed.capacity()));
+      compressionBuffers.set(compressed);
+    }
+    compressed.clear();
+    compressed.put(SNAPPY);
+    frame.position(1);
+    final int size = Snappy.compress(frame, compressed);
+    frame.position(0);
+    if (size >= length) {
+      return frame;
+    }
+    compressed.position(0);
+    return compressed;
+  }
+
+  /**
+   * Deserializes a message from a frame.
+   * <p>
+   * The frame is consumed in place.
+   *
+   * @param frame
+   *          the frame
+   * @return the message
+   * @throws IOException
+   *           if I/O errors occur
+   * @throws ClassNotFoundException
+   *           if the class of the message cannot be found
+   */
+  public SerializableRunnable deserialize(ByteBuffer frame)
+      throws IOException, ClassNotFoundException {
+    ByteBuffer data = frame;
+    if (data.get() == SNAPPY) {
+      data = decompress(data);
+    }
+    if (kryo) {
+      return (SerializableRunnable) KryoSerializer
+          .readObject(new ByteBufferInputStream(data));
+    }
+    final ObjectInputStream ois = new ObjectInputStream(
+        new ByteBufferInputStream(data));
+    final SerializableRunnable f = (SerializableRunnable) ois.readObject();
+    ois.close();
+    return f;
+  }
+
+  /**
+   * Decompresses a frame.
+   *
+   * @param data
+   *          the compressed bytes
+   * @return the uncompressed bytes in a per-thread reusable buffer
+   * @throws IOException
+   *           if I/O errors occur
+   */
+  private static ByteBuffer decompress(ByteBuffer data) throws IOException {
+    if (!data.isDirect()) {
+      final byte[] tmp = new byte[data.remaining()];
+      data.get(tmp);
+      return ByteBuffer.wrap(Snappy.uncompress(tmp));
+    }
+    final int length = Snappy.uncompressedLength(data);
+    ByteBuffer uncompressed = decompressionBuffers.get();
+    if (uncompressed.capacity() < length) {
+      uncompressed = ByteBuffer
+          .allocateDirect(Math.max(length, 2 * uncompressed.capacity()));
+      decompressionBuffers.set(uncompressed);
+    }
+    uncompressed.clear();
+    Snappy.uncompress(data, uncompressed);
+    return uncompressed;
+  }
+}
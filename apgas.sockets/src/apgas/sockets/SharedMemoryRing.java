@@ -0,0 +1,290 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The {@link SharedMemoryRing} class implements a single-producer
+ * single-consumer ring buffer of frames in a memory-mapped file shared by two
+ * processes.
+ * <p>
+ * The file starts with a header holding a nonce identifying the ring, the
+ * producer and consumer positions, and a flag set by an idle consumer. Each
+ * field sits on its own cache line. Frames follow as an {@code int} length and
+ * the frame bytes, padded to a multiple of 8 bytes and wrapping around the end
+ * of the data area. Positions increase monotonically and are published with
+ * volatile accesses so the ring works across processes.
+ * <p>
+ * Concurrent producers in one process must synchronize on the ring.
+ */
+final class SharedMemoryRing {
+  // Unsafe mechanics: Java 8 has no public API for volatile and atomic
+  // accesses to memory shared with another process (javac warns about it)
+  private static final sun.misc.Unsafe U;
+
+  static {
+    try {
+      final java.lang.reflect.Field field = sun.misc.Unsafe.class
+          .getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      U = (sun.misc.Unsafe) field.get(null);
+    } catch (final Exception e) {
+      throw new Error(e);
+    }
+  }
+
+  private static final int NONCE = 0;
+  private static final int TAIL = 64;
+  private static final int HEAD = 128;
+  private static final int SLEEPING = 192;
+  private static final int DATA = 256;
+
+  /**
+   * The mapped file, referenced to keep the mapping alive.
+   */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * The address of the mapped file.
+   */
+  private final long address;
+
+  /**
+   * The data area.
+   */
+  private final ByteBuffer data;
+
+  /**
+   * The capacity of the data area (a power of two).
+   */
+  private final int capacity;
+
+  /**
+   * A scratch buffer for frames wrapping around the end of the data area.
+   */
+  private ByteBuffer scratch;
+
+  /**
+   * The length of the frame returned by the last call to {@link #peek()}.
+   */
+  private int length;
+
+  /**
+   * Maps a ring file.
+   *
+   * @param file
+   *          the file
+   * @param capacity
+   *          the capacity of the data area (a power of two)
+   * @param create
+   *          whether to create and size the file
+   * @throws IOException
+   *           if the file cannot be mapped
+   */
+  private SharedMemoryRing(File file, int capacity, boolean create)
+      throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file,
+        create ? "rw" : "r")) {
+      if (create) {
+        raf.setLength(DATA + capacity);
+      } else {
+        capacity = (int) raf.length() - DATA;
+      }
+    }
+    // the file must be mapped read-write on both sides
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+          DATA + capacity);
+    }
+    buffer.order(ByteOrder.nativeOrder());
+    address = ((sun.nio.ch.DirectBuffer) buffer).address();
+    buffer.position(DATA);
+    data = buffer.slice().order(ByteOrder.nativeOrder());
+    this.capacity = capacity;
+  }
+
+  /**
+   * Creates a new ring file.
+   *
+   * @param file
+   *          the file to create
+   * @param capacity
+   *          the capacity of the data area (a power of two)
+   * @param nonce
+   *          the identifier of the ring
+   * @return the ring
+   * @throws IOException
+   *           if the file cannot be created
+   */
+  static SharedMemoryRing create(File file, int capacity, long nonce)
+      throws IOException {
+    final SharedMemoryRing ring = new SharedMemoryRing(file, capacity, true);
+    U.putLongVolatile(null, ring.address + NONCE, nonce);
+    return ring;
+  }
+
+  /**
+   * Opens an existing ring file.
+   *
+   * @param file
+   *          the file to open
+   * @param nonce
+   *          the expected identifier of the ring
+   * @return the ring or null if the file does not exist or is not the expected
+   *         ring
+   */
+  static SharedMemoryRing open(File file, long nonce) {
+    if (!file.isFile() || file.length() <= DATA) {
+      return null;
+    }
+    try {
+      final SharedMemoryRing ring = new SharedMemoryRing(file, 0, false);
+      if (Integer.bitCount(ring.capacity) != 1
+          || U.getLongVolatile(null, ring.address + NONCE) != nonce) {
+        return null;
+      }
+      return ring;
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the size of the record holding a frame of the given length.
+   *
+   * @param length
+   *          the frame length
+   * @return the record size
+   */
+  private static int record(int length) {
+    return 4 + length + 7 & ~7;
+  }
+
+  /**
+   * Appends a frame to the ring if there is room.
+   * <p>
+   * Consumes the frame if successful.
+   *
+   * @param frame
+   *          the frame
+   * @return false if the ring is too full or the frame too large
+   */
+  boolean offer(ByteBuffer frame) {
+    final int n = frame.remaining();
+    final int record = record(n);
+    if (record > capacity >> 1) {
+      return false;
+    }
+    final long tail = U.getLong(address + TAIL);
+    if (tail + record - U.getLongVolatile(null, address + HEAD) > capacity) {
+      return false;
+    }
+    final int mask = capacity - 1;
+    final int offset = (int) tail & mask;
+    data.clear();
+    data.putInt(offset, n);
+    final int start = offset + 4 & mask;
+    final int first = Math.min(n, capacity - start);
+    final int limit = frame.limit();
+    frame.limit(frame.position() + first);
+    data.position(start);
+    data.put(frame);
+    frame.limit(limit);
+    if (first < n) {
+      data.clear();
+      data.put(frame);
+    }
+    U.putLongVolatile(null, address + TAIL, tail + record);
+    return true;
+  }
+
+  /**
+   * Returns the next frame without consuming it.
+   * <p>
+   * The returned buffer is only valid until the next call to {@link #advance()}
+   * or this method.
+   *
+   * @return the frame or null if the ring is empty
+   */
+  ByteBuffer peek() {
+    final long head = U.getLong(address + HEAD);
+    if (U.getLongVolatile(null, address + TAIL) == head) {
+      return null;
+    }
+    final int mask = capacity - 1;
+    final int offset = (int) head & mask;
+    data.clear();
+    length = data.getInt(offset);
+    final int start = offset + 4 & mask;
+    final int first = Math.min(length, capacity - start);
+    if (first == length) {
+      data.position(start).limit(start + length);
+      return data;
+    }
+    // copy a wrapped frame
+    if (scratch == null || scratch.capacity() < length) {
+      scratch = ByteBuffer.allocateDirect(capacity >> 1);
+    }
+    scratch.clear();
+    data.position(start);
+    scratch.put(data);
+    data.clear().limit(length - first);
+    scratch.put(data);
+    scratch.flip();
+    return scratch;
+  }
+
+  /**
+   * Consumes the frame returned by the last call to {@link #peek()}.
+   */
+  void advance() {
+    final long head = U.getLong(address + HEAD);
+    U.putOrderedLong(null, address + HEAD, head + record(length));
+  }
+
+  /**
+   * Checks whether the ring is empty.
+   *
+   * @return true if there is no frame to consume
+   */
+  boolean isEmpty() {
+    return U.getLongVolatile(null, address + TAIL) == U
+        .getLong(address + HEAD);
+  }
+
+  /**
+   * Announces whether the consumer is about to block.
+   *
+   * @param sleeping
+   *          true if the consumer is about to block
+   */
+  void setSleeping(boolean sleeping) {
+    U.putIntVolatile(null, address + SLEEPING, sleeping ? 1 : 0);
+  }
+
+  /**
+   * Clears the flag set by a blocked consumer.
+   *
+   * @return true if the consumer was blocked and must be woken up
+   */
+  boolean wake() {
+    return U.getIntVolatile(null, address + SLEEPING) == 1
+        && U.compareAndSwapInt(null, address + SLEEPING, 1, 0);
+  }
+}
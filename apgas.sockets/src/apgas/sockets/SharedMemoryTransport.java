@@ -0,0 +1,369 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import apgas.DeadPlaceException;
+import apgas.Place;
+import apgas.impl.Config;
+import apgas.impl.GlobalRuntimeImpl;
+import apgas.impl.SerializableRunnable;
+
+/**
+ * The {@link SharedMemoryTransport} class extends the {@link SocketTransport}
+ * with ring buffers in shared memory between places running on the same host.
+ * <p>
+ * The first message from a place to another is sent over sockets together with
+ * a request to attach a {@link SharedMemoryRing} created by the sender in the
+ * {@link Config#APGAS_TRANSPORT_SHM_DIR} directory. If the receiver can map the
+ * file, it is on the same host and later messages go through the ring. Places
+ * on other hosts, messages too large for the ring, and messages sent while the
+ * ring is full keep using sockets. Cluster membership and failure detection are
+ * inherited from the socket transport.
+ * <p>
+ * A single thread polls the inbound rings. It spins briefly when idle then
+ * blocks, leaving a flag in each ring so that the next sender wakes it up with
+ * a message over sockets.
+ */
+public class SharedMemoryTransport extends SocketTransport {
+  /**
+   * How long the poller spins before blocking.
+   */
+  private static final long SPIN_NANOS = 50000;
+
+  /**
+   * How long the poller blocks at most.
+   */
+  private static final long PARK_NANOS = 10000000;
+
+  /**
+   * The transport instance of this place.
+   */
+  static SharedMemoryTransport instance;
+
+  /**
+   * A ring created by this place waiting for the destination to attach it.
+   */
+  private static final class Pending {
+    final SharedMemoryRing ring;
+    final File file;
+
+    Pending(SharedMemoryRing ring, File file) {
+      this.ring = ring;
+      this.file = file;
+    }
+  }
+
+  /**
+   * The directory holding the ring files or null if disabled.
+   */
+  private final File dir;
+
+  /**
+   * The capacity of the rings.
+   */
+  private final int capacity;
+
+  /**
+   * The serializer for messages sent through rings (no compression).
+   */
+  private final MessageSerializer rawSerializer;
+
+  /**
+   * The places this place has tried to attach a ring to.
+   */
+  private final Set<Integer> attempted = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The rings waiting to be attached, indexed by destination place.
+   */
+  private final ConcurrentHashMap<Integer, Pending> pending = new ConcurrentHashMap<Integer, Pending>();
+
+  /**
+   * The outbound rings, indexed by destination place.
+   */
+  private final ConcurrentHashMap<Integer, SharedMemoryRing> outbound = new ConcurrentHashMap<Integer, SharedMemoryRing>();
+
+  /**
+   * The inbound rings, indexed by source place.
+   */
+  private final ConcurrentHashMap<Integer, SharedMemoryRing> inbound = new ConcurrentHashMap<Integer, SharedMemoryRing>();
+
+  /**
+   * A snapshot of the inbound rings for the poller.
+   */
+  private volatile SharedMemoryRing[] rings = new SharedMemoryRing[0];
+
+  /**
+   * The poller thread.
+   */
+  private Thread poller;
+
+  /**
+   * False once the transport is shut down.
+   */
+  private volatile boolean polling = true;
+
+  /**
+   * Initializes the {@link SharedMemoryTransport} for this global runtime
+   * instance.
+   *
+   * @param runtime
+   *          the global runtime instance
+   * @param master
+   *          the address of the first place or null
+   * @param localhost
+   *          the preferred ip address of this host
+   * @param compact
+   *          reduces thread creation if set
+   * @param kryo
+   *          use kryo serialization if set
+   */
+  public SharedMemoryTransport(GlobalRuntimeImpl runtime, String master,
+      String localhost, boolean compact, boolean kryo) {
+    super(runtime, master, localhost, compact, kryo);
+    final File dir = new File(
+        System.getProperty(Config.APGAS_TRANSPORT_SHM_DIR, "/dev/shm"));
+    if (dir.isDirectory()) {
+      this.dir = dir;
+    } else {
+      System.err.println("[APGAS] Directory " + dir
+          + " not found. Using sockets only.");
+      this.dir = null;
+    }
+    final int size = Math.max(4096,
+        Integer.getInteger(Config.APGAS_TRANSPORT_SHM_CAPACITY, 262144));
+    capacity = Integer.highestOneBit(size - 1) << 1;
+    rawSerializer = new MessageSerializer(kryo, false, 0);
+    instance = this;
+  }
+
+  @Override
+  public synchronized void start() {
+    super.start();
+    poller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, "apgas-shm-poller");
+    poller.setDaemon(true);
+    poller.start();
+  }
+
+  @Override
+  public void send(int place, SerializableRunnable f) {
+    if (place == here()) {
+      f.run();
+      return;
+    }
+    final SharedMemoryRing ring = outbound.get(place);
+    if (ring == null) {
+      super.send(place, f);
+      connect(place);
+      return;
+    }
+    if (localTransport.isPlaceDead(place)) {
+      throw new DeadPlaceException(new Place(place));
+    }
+    final ByteBuffer frame;
+    try {
+      frame = rawSerializer.serialize(f);
+    } catch (final IOException e) {
+      // report serialization failures to the caller like Kryo does
+      throw new RuntimeException(e);
+    }
+    final boolean sent;
+    synchronized (ring) {
+      sent = ring.offer(frame);
+    }
+    if (!sent) {
+      super.send(place, f);
+    } else if (ring.wake()) {
+      super.send(place, SharedMemoryTransport::wakeup);
+    }
+  }
+
+  /**
+   * Creates a ring to the given place and asks the place to attach it.
+   * <p>
+   * Each destination is only tried once.
+   *
+   * @param place
+   *          the destination place
+   */
+  private void connect(int place) {
+    if (dir == null || !attempted.add(place)) {
+      return;
+    }
+    final int here = here();
+    final long nonce = ThreadLocalRandom.current().nextLong();
+    final File file = new File(dir, "apgas-" + here + "-" + place + "-"
+        + Long.toHexString(nonce));
+    file.deleteOnExit();
+    final SharedMemoryRing ring;
+    try {
+      ring = SharedMemoryRing.create(file, capacity, nonce);
+    } catch (final IOException e) {
+      file.delete();
+      return;
+    }
+    pending.put(place, new Pending(ring, file));
+    final String path = file.getPath();
+    try {
+      super.send(place, () -> instance.attach(here, path, nonce));
+    } catch (final DeadPlaceException e) {
+      pending.remove(place);
+      file.delete();
+    }
+  }
+
+  /**
+   * Attaches a ring created by the given place if the file is visible from
+   * this place and replies to the place.
+   *
+   * @param place
+   *          the source place
+   * @param path
+   *          the path of the ring file
+   * @param nonce
+   *          the identifier of the ring
+   */
+  private void attach(int place, String path, long nonce) {
+    final File file = new File(path);
+    final SharedMemoryRing ring = dir == null ? null
+        : SharedMemoryRing.open(file, nonce);
+    if (ring != null) {
+      // both places have mapped the file now
+      file.delete();
+      synchronized (inbound) {
+        inbound.put(place, ring);
+        rings = inbound.values().toArray(new SharedMemoryRing[0]);
+      }
+      LockSupport.unpark(poller);
+    }
+    final int here = here();
+    final boolean attached = ring != null;
+    try {
+      super.send(place, () -> instance.attached(here, attached));
+    } catch (final DeadPlaceException e) {
+    }
+  }
+
+  /**
+   * Starts using the ring to the given place or discards it.
+   *
+   * @param place
+   *          the destination place
+   * @param attached
+   *          true if the destination has mapped the ring
+   */
+  private void attached(int place, boolean attached) {
+    final Pending p = pending.remove(place);
+    if (p == null) {
+      return;
+    }
+    if (attached) {
+      outbound.put(place, p.ring);
+    } else {
+      p.file.delete();
+    }
+  }
+
+  /**
+   * Wakes up the poller.
+   */
+  private static void wakeup() {
+    LockSupport.unpark(instance.poller);
+  }
+
+  /**
+   * Runs the poller loop.
+   */
+  private void poll() {
+    long idle = System.nanoTime();
+    while (polling) {
+      final SharedMemoryRing[] rings = this.rings;
+      boolean found = false;
+      for (final SharedMemoryRing ring : rings) {
+        ByteBuffer frame;
+        while ((frame = ring.peek()) != null) {
+          // deserialize in place from the shared memory
+          try {
+            final SerializableRunnable f = serializer.deserialize(frame);
+            immediateThreads.submit(f);
+          } catch (final Exception e) {
+            e.printStackTrace();
+          }
+          ring.advance();
+          found = true;
+        }
+      }
+      if (found) {
+        idle = System.nanoTime();
+      } else if (System.nanoTime() - idle < SPIN_NANOS) {
+        Thread.yield();
+      } else {
+        // announce that we are about to block then check again
+        for (final SharedMemoryRing ring : rings) {
+          ring.setSleeping(true);
+        }
+        boolean empty = true;
+        for (final SharedMemoryRing ring : rings) {
+          empty &= ring.isEmpty();
+        }
+        if (empty && polling) {
+          LockSupport.parkNanos(PARK_NANOS);
+        }
+        for (final SharedMemoryRing ring : rings) {
+          ring.setSleeping(false);
+        }
+        idle = System.nanoTime();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    polling = false;
+    LockSupport.unpark(poller);
+    super.shutdown();
+    for (final Pending p : pending.values()) {
+      p.file.delete();
+    }
+  }
+
+  @Override
+  public void runPlaceRemovedHandler(int placeId) {
+    // links may break before this subclass is initialized
+    if (inbound != null) {
+      outbound.remove(placeId);
+      final Pending p = pending.remove(placeId);
+      if (p != null) {
+        p.file.delete();
+      }
+      synchronized (inbound) {
+        if (inbound.remove(placeId) != null) {
+          rings = inbound.values().toArray(new SharedMemoryRing[0]);
+        }
+      }
+    }
+    super.runPlaceRemovedHandler(placeId);
+  }
+}
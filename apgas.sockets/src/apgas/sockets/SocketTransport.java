@@ -11,11 +11,8 @@
 
 package apgas.sockets;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -23,24 +20,25 @@ import java.util.concurrent.Executors;
 import x10.network.NetworkTransportCallbacks;
 import apgas.DeadPlaceException;
 import apgas.Place;
+import apgas.impl.Config;
 import apgas.impl.GlobalRuntimeImpl;
 import apgas.impl.SerializableRunnable;
 import apgas.impl.Transport;
 
 /**
- * The {@link SocketTransport} class manages the Hazelcast cluster and
- * implements active messages via direct socket links.
+ * The {@link SocketTransport} class implements cluster membership, failure
+ * detection, and active messages via direct socket links.
+ * <p>
+ * It does not depend on Hazelcast. Places join by connecting to the address
+ * of the first place. Failures are detected when links break.
  */
-public class SocketTransport extends Transport implements
-    NetworkTransportCallbacks {
+public class SocketTransport implements Transport, NetworkTransportCallbacks {
 
-  private final x10.network.SocketTransport localTransport;
-  private final ExecutorService immediateThreads;
+  protected final x10.network.SocketTransport localTransport;
+  protected final ExecutorService immediateThreads;
   private boolean running = true;
   private final GlobalRuntimeImpl runtime;
-  private final boolean useSnappy;
-
-  // private final Kryo kryo;
+  protected final MessageSerializer serializer;
 
   /**
    * Initializes the {@link SocketTransport} for this global runtime instance.
@@ -48,26 +46,29 @@ public class SocketTransport extends Transport implements
    * @param runtime
    *          the global runtime instance
    * @param master
-   *          member to connect to or null
+   *          the address of the first place or null
    * @param localhost
    *          the preferred ip address of this host
    * @param compact
    *          reduces thread creation if set
    * @param kryo
-   *          todo
+   *          use kryo serialization if set
    */
   public SocketTransport(GlobalRuntimeImpl runtime, String master,
       String localhost, boolean compact, boolean kryo) {
-    super(runtime, master == null ? null : master.split(",")[0], localhost,
-        compact, kryo);
     this.runtime = runtime;
-    this.useSnappy = System.getProperty(apgas.impl.Config.APGAS_TRANSPORT_COMPRESSION, "snappy").equals("snappy");
+    final boolean useSnappy = System
+        .getProperty(Config.APGAS_TRANSPORT_COMPRESSION, "snappy")
+        .equals("snappy");
+    final int threshold = Integer
+        .getInteger(Config.APGAS_TRANSPORT_COMPRESSION_THRESHOLD, 512);
+    serializer = new MessageSerializer(kryo, useSnappy, threshold);
     localTransport = new x10.network.SocketTransport(this);
     if (master == null) {
       localTransport.establishLinks(0, null); // place 0
       runPlaceAddedHandler(0);
     } else {
-      localTransport.establishLinks(master.split(",")[1]); // other place
+      localTransport.establishLinks(master); // other place
       final int livePlaces = localTransport.x10rt_nplaces()
           - localTransport.numDead();
       final ArrayList<Integer> added = new ArrayList<Integer>(livePlaces);
@@ -77,22 +78,10 @@ public class SocketTransport extends Transport implements
       runtime.updatePlaces(added, new ArrayList<Integer>(0));
     }
     immediateThreads = Executors.newCachedThreadPool();
-    /*
-     * kryo = new Kryo(); kryo.register(DeadPlaceError.class);
-     * kryo.register(DefaultFinish.class, new JavaSerializer());
-     * kryo.register(Finish.class); kryo.register(GlobalRuntimeImpl.class);
-     * kryo.register(NullFinish.class); kryo.register(ResilientFinish.class);
-     * kryo.register(ResilientFinishOpt.class);
-     * kryo.register(ResilientFinishState.class);
-     * kryo.register(SerializableRunnable.class);
-     * kryo.register(SerializableThrowable.class); kryo.register(Task.class, new
-     * JavaSerializer()); kryo.register(UncountedTask.class);
-     */
   }
 
   @Override
-  protected synchronized void start() {
-    // super.start();
+  public synchronized void start() {
     immediateThreads.execute(new Runnable() {
       @Override
       public void run() {
@@ -100,24 +89,10 @@ public class SocketTransport extends Transport implements
           final x10.network.SocketTransport.Message message = localTransport
               .x10rt_probe(x10.network.SocketTransport.PROBE_TYPE.ALL, true);
           if (message != null && message.callbackId != -1) {
-            byte[] data;
-            if (message.data.hasArray()) {
-              data = message.data.array();
-            } else {
-              data = new byte[message.data.remaining()];
-              message.data.get(data);
-            }
-            /*
-             * final Input input = new Input(data); final SerializableRunnable f
-             * = (SerializableRunnable) kryo .readClassAndObject(input);
-             */
-
+            // deserialize in place from the received buffer
             try {
-              final ObjectInputStream ois = new ObjectInputStream(
-                  new ByteArrayInputStream(data));
-              final SerializableRunnable f = (SerializableRunnable) ois
-                  .readObject();
-              ois.close();
+              final SerializableRunnable f = serializer
+                  .deserialize(message.data);
               immediateThreads.submit(f);
             } catch (final Exception e) {
               e.printStackTrace();
@@ -129,55 +104,45 @@ public class SocketTransport extends Transport implements
   }
 
   @Override
-  protected String getAddress() {
-    return super.getAddress() + ',' + localTransport.getLocalConnectionInfo();
+  public String getAddress() {
+    return localTransport.getLocalConnectionInfo();
   }
 
   @Override
-  protected int maxPlace() {
+  public int maxPlace() {
     return localTransport.x10rt_nplaces();
   }
 
   @Override
-  protected int here() {
+  public int here() {
     return localTransport.x10rt_here();
   }
 
   @Override
-  protected void send(int place, SerializableRunnable f) {
+  public void send(int place, SerializableRunnable f) {
     if (place == here()) {
       f.run();
     } else {
+      // serialize straight into this thread's reusable direct buffer
+      final ByteBuffer frame;
       try {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(f);
-        oos.close();
-        final byte[] data = baos.toByteArray();
-        if (localTransport.sendMessage(place, 0, data) != 0) {
-          throw new DeadPlaceException(new Place(place));
-        }
+        frame = serializer.serialize(f);
       } catch (final IOException e) {
-        e.printStackTrace();
+        // report serialization failures to the caller like Kryo does
+        throw new RuntimeException(e);
+      }
+      if (localTransport.sendMessage(place, 0, frame) != 0) {
+        throw new DeadPlaceException(new Place(place));
       }
-      /*
-       * final long freeMem = Runtime.getRuntime().freeMemory(); final Output
-       * output = new Output(4096, freeMem < Integer.MAX_VALUE ? (int) freeMem :
-       * Integer.MAX_VALUE); kryo.writeClassAndObject(output, f); //
-       * org.xerial.snappy.Snappy.compress(output.getBuffer(), arg1);
-       * localTransport.sendMessage(place, 0, output.getBuffer());
-       */
     }
   }
 
   @Override
-  protected synchronized void shutdown() {
-    // super.shutdown();
+  public synchronized void shutdown() {
     running = false;
     localTransport.shutdown();
     immediateThreads.shutdown();
     localTransport.wakeup();
-    hazelcast.shutdown();
   }
 
   /**
@@ -210,8 +175,7 @@ public class SocketTransport extends Transport implements
 
   @Override
   public void initDataStore(String connectTo) {
-    // Not used in apgas. Hazelcast is initialized independently, not over this
-    // link
+    // Not used in apgas
   }
 
   @Override
@@ -227,10 +191,7 @@ public class SocketTransport extends Transport implements
 
   @Override
   public compressionCodec useCompressionCodec() {
-    if (useSnappy) {
-      return compressionCodec.SNAPPY;
-    } else {
-      return compressionCodec.NONE;
-    }
+    // compression is applied per message by the serializer
+    return compressionCodec.NONE;
   }
 }
@@ -29,6 +29,7 @@ import apgas.MultipleException;
 import apgas.Place;
 import apgas.util.GlobalRef;
 import apgas.util.PlaceLocalArray;
+import apgas.util.Team;
 
 @SuppressWarnings("javadoc")
 public class ApgasTest {
@@ -98,6 +99,27 @@ public class ApgasTest {
     }
   }
 
+  @Test
+  public void testTeam() {
+    final Team team = Team.make(places());
+    finish(() -> {
+      for (final Place p : places()) {
+        asyncAt(p, () -> {
+          final int rank = team.rank();
+          team.barrier();
+          assertEquals(team.broadcast(1, rank == 1 ? here() : null), place(1));
+          assertEquals(team.reduce(2, rank, Integer::sum),
+              rank == 2 ? (Integer) 6 : null);
+          assertEquals(team.allreduce(rank, Integer::sum), (Integer) 6);
+          assertEquals(team.gather(3, here()),
+              rank == 3 ? places() : null);
+          assertEquals(team.scatter(1, rank == 1 ? places() : null), here());
+          team.barrier();
+        });
+      }
+    });
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testIllegalArgumentException() {
     place(-1);
@@ -0,0 +1,178 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.glb;
+
+import static apgas.Constructs.*;
+
+import java.io.Serializable;
+import java.util.function.BinaryOperator;
+
+import apgas.Job;
+import apgas.Place;
+import apgas.SerializableCallable;
+import apgas.util.PlaceLocalObject;
+
+/**
+ * The {@link GLB} class balances a computation across all places using random
+ * and lifeline-based work stealing.
+ * <p>
+ * Each place holds a {@link TaskQueue} created by the given initializer. The
+ * computation either starts from the queue at the current place, seeded by the
+ * function passed to {@link #run(Job)}, or from all the queues at once with
+ * {@link #runParallel()}. Idle places steal {@link TaskBag} instances from
+ * busy places until no work is left. The partial results of the places are
+ * then combined with the given reduction operator.
+ * <p>
+ * Each place runs one worker thread so place counts should match core counts.
+ * A {@link GLB} instance runs one computation.
+ *
+ * @param <B>
+ *          the type of the task bags
+ * @param <R>
+ *          the type of the result
+ */
+public final class GLB<B extends TaskBag, R extends Serializable> {
+  private final Worker<B, R> worker;
+  private final BinaryOperator<R> reducer;
+  private final GLBParameters parameters;
+
+  private long setupTime;
+  private long processTime;
+  private long reduceTime;
+
+  /**
+   * Constructs a {@link GLB} instance with the default parameters.
+   *
+   * @param init
+   *          the function to evaluate at each place to make its task queue
+   * @param reducer
+   *          the associative operator combining the results of two places
+   */
+  public GLB(SerializableCallable<? extends TaskQueue<B, R>> init,
+      BinaryOperator<R> reducer) {
+    this(init, reducer, GLBParameters.getDefault());
+  }
+
+  /**
+   * Constructs a {@link GLB} instance.
+   *
+   * @param init
+   *          the function to evaluate at each place to make its task queue
+   * @param reducer
+   *          the associative operator combining the results of two places
+   * @param parameters
+   *          the tuning parameters
+   */
+  public GLB(SerializableCallable<? extends TaskQueue<B, R>> init,
+      BinaryOperator<R> reducer, GLBParameters parameters) {
+    this.reducer = reducer;
+    this.parameters = parameters;
+    setupTime = System.nanoTime();
+    worker = PlaceLocalObject.make(places(),
+        () -> new Worker<B, R>(init.call(), parameters));
+    setupTime = System.nanoTime() - setupTime;
+  }
+
+  /**
+   * Returns the task queue at the current place.
+   *
+   * @return the task queue
+   */
+  public TaskQueue<B, R> taskQueue() {
+    return worker.queue;
+  }
+
+  /**
+   * Runs the computation starting from the current place.
+   *
+   * @param start
+   *          the function to seed the task queue at the current place
+   * @return the reduced result
+   */
+  public R run(Job start) {
+    final Worker<B, R> worker = this.worker;
+    processTime = System.nanoTime();
+    finish(() -> worker.main(start));
+    processTime = System.nanoTime() - processTime;
+    return end();
+  }
+
+  /**
+   * Runs the computation starting from all places at once.
+   *
+   * @return the reduced result
+   */
+  public R runParallel() {
+    final Worker<B, R> worker = this.worker;
+    processTime = System.nanoTime();
+    finish(() -> {
+      for (final Place p : places()) {
+        asyncAt(p, () -> worker.main(null));
+      }
+    });
+    processTime = System.nanoTime() - processTime;
+    return end();
+  }
+
+  /**
+   * Reduces the results and prints statistics if requested.
+   *
+   * @return the reduced result
+   */
+  private R end() {
+    final Worker<B, R> worker = this.worker;
+    reduceTime = System.nanoTime();
+    final int size = places().size();
+    @SuppressWarnings("unchecked")
+    final R[] results = (R[]) new Serializable[size];
+    finish(() -> {
+      for (final Place p : places()) {
+        async(() -> results[p.id] = at(p, () -> worker.queue.getResult()));
+      }
+    });
+    R result = results[0];
+    for (int i = 1; i < size; i++) {
+      result = reducer.apply(result, results[i]);
+    }
+    reduceTime = System.nanoTime() - reduceTime;
+    if (parameters.verbose) {
+      printStatistics();
+    }
+    return result;
+  }
+
+  /**
+   * Prints the timings and the stealing statistics summed over all places.
+   */
+  private void printStatistics() {
+    final Worker<B, R> worker = this.worker;
+    final long[] total = new long[7];
+    for (final Place p : places()) {
+      final long[] stats = at(p,
+          () -> new long[] { worker.queue.count(), worker.stealsAttempted,
+              worker.stealsPerpetrated, worker.lifelineStealsAttempted,
+              worker.lifelineStealsPerpetrated, worker.nodesGiven,
+              worker.nodesReceived });
+      for (int i = 0; i < total.length; i++) {
+        total[i] += stats[i];
+      }
+    }
+    System.out.println("Setup time(s): " + setupTime / 1e9);
+    System.out.println("Process time(s): " + processTime / 1e9);
+    System.out.println("Result reduce time(s): " + reduceTime / 1e9);
+    System.out.println("Tasks processed: " + total[0]);
+    System.out.println("Steals: " + total[2] + "/" + total[1]
+        + " random, " + total[4] + "/" + total[3] + " lifeline");
+    System.out.println(
+        "Tasks given: " + total[5] + ", tasks received: " + total[6]);
+  }
+}
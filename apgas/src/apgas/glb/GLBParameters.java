@@ -0,0 +1,106 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.glb;
+
+import static apgas.Constructs.*;
+
+import java.io.Serializable;
+
+/**
+ * The {@link GLBParameters} class holds the tuning parameters of a
+ * {@link GLB} instance.
+ */
+public final class GLBParameters implements Serializable {
+  private static final long serialVersionUID = 3290563846187544396L;
+
+  /**
+   * The number of tasks to process between two checks for thieves.
+   */
+  public final int n;
+
+  /**
+   * The number of random steal attempts before falling back to lifelines.
+   */
+  public final int w;
+
+  /**
+   * The base of the lifeline graph.
+   */
+  public final int l;
+
+  /**
+   * The power of the lifeline graph.
+   */
+  public final int z;
+
+  /**
+   * The number of potential random victims of each place.
+   */
+  public final int m;
+
+  /**
+   * Whether to print timings and stealing statistics.
+   */
+  public final boolean verbose;
+
+  /**
+   * Constructs a set of parameters.
+   *
+   * @param n
+   *          the number of tasks to process between two checks for thieves
+   * @param w
+   *          the number of random steal attempts
+   * @param l
+   *          the base of the lifeline graph
+   * @param z
+   *          the power of the lifeline graph
+   * @param m
+   *          the number of potential random victims
+   * @param verbose
+   *          whether to print timings and stealing statistics
+   */
+  public GLBParameters(int n, int w, int l, int z, int m, boolean verbose) {
+    this.n = n;
+    this.w = w;
+    this.l = l;
+    this.z = z;
+    this.m = m;
+    this.verbose = verbose;
+  }
+
+  /**
+   * Returns the smallest power z such that l^z covers p places.
+   *
+   * @param p
+   *          the number of places
+   * @param l
+   *          the base of the lifeline graph
+   * @return the power of the lifeline graph
+   */
+  public static int computeZ(int p, int l) {
+    int z = 1;
+    for (long ll = l; ll < p; ll *= l) {
+      z++;
+    }
+    return z;
+  }
+
+  /**
+   * Returns the default parameters for the current set of places.
+   *
+   * @return the default parameters
+   */
+  public static GLBParameters getDefault() {
+    return new GLBParameters(100, 4, 4, computeZ(places().size(), 4), 1024,
+        false);
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.glb;
+
+import java.io.Serializable;
+
+/**
+ * A {@link TaskBag} holds a fraction of the work of a {@link TaskQueue} in
+ * transit from a place to another.
+ */
+public interface TaskBag extends Serializable {
+  /**
+   * Returns the number of tasks in this bag.
+   * <p>
+   * This is only used for statistics.
+   *
+   * @return the number of tasks
+   */
+  int size();
+}
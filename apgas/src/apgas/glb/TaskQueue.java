@@ -0,0 +1,67 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.glb;
+
+import java.io.Serializable;
+
+/**
+ * A {@link TaskQueue} holds the pending work and the partial result of a place.
+ * <p>
+ * A task queue is only accessed by one thread at a time and needs no
+ * synchronization.
+ *
+ * @param <B>
+ *          the type of the task bags exchanged between places
+ * @param <R>
+ *          the type of the result
+ */
+public interface TaskQueue<B extends TaskBag, R extends Serializable> {
+  /**
+   * Processes at most n tasks.
+   *
+   * @param n
+   *          the maximum number of tasks to process
+   * @return true if work remains in the queue
+   */
+  boolean process(int n);
+
+  /**
+   * Removes a fraction of the pending work from this queue.
+   *
+   * @return a bag of tasks or null if there is not enough work to share
+   */
+  B split();
+
+  /**
+   * Adds the tasks of the given bag to this queue.
+   *
+   * @param bag
+   *          the bag to merge
+   */
+  void merge(B bag);
+
+  /**
+   * Returns the number of tasks processed so far.
+   * <p>
+   * This is only used for statistics.
+   *
+   * @return the number of tasks processed
+   */
+  long count();
+
+  /**
+   * Returns the partial result of the computation at this place.
+   *
+   * @return the result
+   */
+  R getResult();
+}
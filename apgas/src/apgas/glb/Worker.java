@@ -0,0 +1,451 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.glb;
+
+import static apgas.Constructs.*;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import apgas.Job;
+import apgas.util.PlaceLocalObject;
+
+/**
+ * The {@link Worker} class implements the load balancer at one place.
+ * <p>
+ * The worker processes its {@link TaskQueue} in batches of n tasks, answering
+ * pending steal requests between batches. Once out of work, it makes w
+ * attempts at stealing from random victims then registers with its lifelines
+ * and goes idle. A lifeline that later has work to share starts the worker
+ * again with a counted task so that the enclosing finish only terminates once
+ * all the work is done. Random steals and replies to waiting thieves are
+ * uncounted since the thief is kept active by a counted task until it gets an
+ * answer.
+ * <p>
+ * Messages are processed concurrently with the worker by other threads so the
+ * state of the worker is guarded by this object's lock. The task queue is only
+ * accessed by the thread running the worker. Loot received from other places
+ * is handed over to this thread via the inbox.
+ *
+ * @param <B>
+ *          the type of the task bags
+ * @param <R>
+ *          the type of the result
+ */
+final class Worker<B extends TaskBag, R extends Serializable>
+    extends PlaceLocalObject implements ForkJoinPool.ManagedBlocker {
+  private static final long serialVersionUID = -2516868825220570181L;
+
+  /**
+   * The task queue of this place.
+   */
+  final TaskQueue<B, R> queue;
+
+  /**
+   * The number of tasks to process between two checks for thieves.
+   */
+  private final int n;
+
+  /**
+   * The number of random steal attempts.
+   */
+  private final int w;
+
+  /**
+   * The ID of this place.
+   */
+  private final int h;
+
+  /**
+   * The number of places.
+   */
+  private final int p;
+
+  /**
+   * The random generator for picking victims.
+   */
+  private final Random random;
+
+  /**
+   * The potential random victims.
+   */
+  private final int[] victims;
+
+  /**
+   * The lifelines of this place.
+   */
+  private final int[] lifelines;
+
+  /**
+   * Whether this place is registered with each place as a lifeline thief.
+   */
+  private final boolean[] lifelinesActivated;
+
+  /**
+   * The thieves waiting for an answer: a place ID for a lifeline thief, -id-1
+   * for a random thief.
+   */
+  private final ArrayDeque<Integer> thieves = new ArrayDeque<Integer>();
+
+  /**
+   * The lifeline thieves to deal work to when available.
+   */
+  private final ArrayDeque<Integer> lifelineThieves = new ArrayDeque<Integer>();
+
+  /**
+   * The loot received and not yet merged into the queue.
+   */
+  private ArrayList<B> inbox = new ArrayList<B>();
+
+  /**
+   * True if a thread is running this worker.
+   */
+  private boolean active;
+
+  /**
+   * True if this worker is out of work.
+   */
+  private boolean empty = true;
+
+  /**
+   * True if this worker is waiting for an answer to a steal request.
+   */
+  private boolean waiting;
+
+  // statistics
+  long stealsAttempted;
+  long stealsPerpetrated;
+  long lifelineStealsAttempted;
+  long lifelineStealsPerpetrated;
+  long nodesGiven;
+  long nodesReceived;
+
+  /**
+   * Constructs a worker.
+   * <p>
+   * Places are initially registered as lifeline thieves of their parent in a
+   * ternary tree so that work started at place 0 reaches all places.
+   *
+   * @param queue
+   *          the task queue of this place
+   * @param parameters
+   *          the tuning parameters
+   */
+  Worker(TaskQueue<B, R> queue, GLBParameters parameters) {
+    this.queue = queue;
+    n = parameters.n;
+    w = parameters.w;
+    h = here().id;
+    p = places().size();
+    random = new Random(h);
+
+    victims = new int[p > 1 ? parameters.m : 0];
+    for (int i = 0; i < victims.length; i++) {
+      final int v = random.nextInt(p - 1);
+      victims[i] = v < h ? v : v + 1;
+    }
+
+    // lifelines form a low degree hypercube of base l and power z
+    final int l = parameters.l;
+    final int[] lifelines = new int[parameters.z];
+    int t = 0;
+    long x = 1;
+    for (int j = 0; j < parameters.z; j++) {
+      long v = h;
+      for (int k = 1; k < l; k++) {
+        v = v - v % (x * l) + (v + x * l - x) % (x * l);
+        if (v < p) {
+          lifelines[t++] = (int) v;
+          break;
+        }
+      }
+      x *= l;
+    }
+    this.lifelines = Arrays.copyOf(lifelines, t);
+    lifelinesActivated = new boolean[p];
+
+    for (int i = 3 * h + 1; i <= 3 * h + 3 && i < p; i++) {
+      lifelineThieves.push(i);
+    }
+    if (h > 0) {
+      lifelinesActivated[(h - 1) / 3] = true;
+    }
+  }
+
+  /**
+   * Runs the worker at the first place after running the given initializer.
+   *
+   * @param start
+   *          the function to seed the task queue
+   * @throws Exception
+   *           if the initializer throws an exception
+   */
+  void main(Job start) throws Exception {
+    synchronized (this) {
+      active = true;
+      empty = false;
+    }
+    if (start != null) {
+      start.run();
+    }
+    run();
+  }
+
+  /**
+   * Processes the queue and steals work until there is no work left to steal
+   * then goes idle.
+   */
+  private void run() {
+    for (;;) {
+      do {
+        merge();
+        while (queue.process(n)) {
+          merge();
+          distribute();
+          reject();
+        }
+      } while (steal());
+      synchronized (this) {
+        if (inbox.isEmpty()) {
+          active = false;
+          return;
+        }
+        empty = false;
+      }
+    }
+  }
+
+  /**
+   * Merges the received loot into the queue.
+   */
+  private void merge() {
+    final ArrayList<B> loot;
+    synchronized (this) {
+      if (inbox.isEmpty()) {
+        return;
+      }
+      loot = inbox;
+      inbox = new ArrayList<B>();
+    }
+    for (final B bag : loot) {
+      nodesReceived += bag.size();
+      queue.merge(bag);
+    }
+  }
+
+  /**
+   * Shares work with the thieves if possible.
+   */
+  private void distribute() {
+    for (;;) {
+      final int thief;
+      final boolean idle;
+      synchronized (this) {
+        idle = thieves.isEmpty();
+        if (idle && lifelineThieves.isEmpty()) {
+          return;
+        }
+        thief = idle ? lifelineThieves.pop() : thieves.pop();
+      }
+      final B loot = queue.split();
+      if (loot == null) {
+        synchronized (this) {
+          (idle ? lifelineThieves : thieves).push(thief);
+        }
+        return;
+      }
+      nodesGiven += loot.size();
+      give(thief, idle, loot);
+    }
+  }
+
+  /**
+   * Sends loot to a thief.
+   *
+   * @param thief
+   *          the thief as stored in {@link #thieves} or
+   *          {@link #lifelineThieves}
+   * @param idle
+   *          true for an idle lifeline thief
+   * @param loot
+   *          the loot
+   */
+  private void give(int thief, boolean idle, B loot) {
+    final Worker<B, R> worker = this;
+    final int victim = h;
+    if (idle) {
+      // wake up an idle thief with a counted task
+      asyncAt(place(thief), () -> worker.deal(loot, victim, false));
+    } else if (thief >= 0) {
+      uncountedAsyncAt(place(thief), () -> worker.deal(loot, victim, true));
+    } else {
+      uncountedAsyncAt(place(-thief - 1), () -> worker.deal(loot, -1, true));
+    }
+  }
+
+  /**
+   * Answers the pending steal requests with no loot.
+   * <p>
+   * Lifeline thieves remain registered.
+   */
+  private void reject() {
+    final Worker<B, R> worker = this;
+    synchronized (this) {
+      while (!thieves.isEmpty()) {
+        final int thief = thieves.pop();
+        if (thief >= 0) {
+          lifelineThieves.push(thief);
+          uncountedAsyncAt(place(thief), worker::nack);
+        } else {
+          uncountedAsyncAt(place(-thief - 1), worker::nack);
+        }
+      }
+    }
+  }
+
+  /**
+   * Attempts to steal work from random victims then from the lifelines.
+   *
+   * @return true if some work was obtained
+   */
+  private boolean steal() {
+    if (p == 1) {
+      return false;
+    }
+    synchronized (this) {
+      empty = true;
+    }
+    // requests may have been queued since the last check
+    reject();
+    final Worker<B, R> worker = this;
+    final int thief = h;
+    for (int i = 0; i < w && isEmpty(); i++) {
+      ++stealsAttempted;
+      synchronized (this) {
+        waiting = true;
+      }
+      final int v = victims[random.nextInt(victims.length)];
+      uncountedAsyncAt(place(v), () -> worker.request(thief, false));
+      await();
+    }
+    for (int i = 0; i < lifelines.length && isEmpty(); i++) {
+      final int lifeline = lifelines[i];
+      synchronized (this) {
+        if (lifelinesActivated[lifeline]) {
+          continue;
+        }
+        lifelinesActivated[lifeline] = true;
+        waiting = true;
+      }
+      ++lifelineStealsAttempted;
+      uncountedAsyncAt(place(lifeline), () -> worker.request(thief, true));
+      await();
+    }
+    return !isEmpty();
+  }
+
+  /**
+   * Checks whether this worker is out of work.
+   *
+   * @return true if no loot has been received
+   */
+  private synchronized boolean isEmpty() {
+    return empty;
+  }
+
+  /**
+   * Blocks until a steal request is answered.
+   */
+  private void await() {
+    try {
+      ForkJoinPool.managedBlock(this);
+    } catch (final InterruptedException e) {
+    }
+  }
+
+  @Override
+  public synchronized boolean isReleasable() {
+    return !waiting;
+  }
+
+  @Override
+  public synchronized boolean block() throws InterruptedException {
+    while (waiting) {
+      wait();
+    }
+    return true;
+  }
+
+  /**
+   * Handles a steal request.
+   *
+   * @param thief
+   *          the ID of the thief
+   * @param lifeline
+   *          true for a lifeline steal
+   */
+  private synchronized void request(int thief, boolean lifeline) {
+    if (empty || waiting) {
+      if (lifeline) {
+        lifelineThieves.push(thief);
+      }
+      final Worker<B, R> worker = this;
+      uncountedAsyncAt(place(thief), worker::nack);
+    } else {
+      thieves.push(lifeline ? thief : -thief - 1);
+    }
+  }
+
+  /**
+   * Handles a negative answer to a steal request.
+   */
+  private synchronized void nack() {
+    waiting = false;
+    notifyAll();
+  }
+
+  /**
+   * Handles loot from another place.
+   *
+   * @param loot
+   *          the loot
+   * @param source
+   *          the ID of the victim for a lifeline steal, -1 otherwise
+   * @param answer
+   *          true if this is the answer to a pending steal request
+   */
+  private void deal(B loot, int source, boolean answer) {
+    synchronized (this) {
+      if (source >= 0) {
+        lifelinesActivated[source] = false;
+        ++lifelineStealsPerpetrated;
+      } else {
+        ++stealsPerpetrated;
+      }
+      inbox.add(loot);
+      empty = false;
+      if (answer) {
+        waiting = false;
+        notifyAll();
+      }
+      if (active) {
+        return;
+      }
+      active = true;
+    }
+    run();
+  }
+}
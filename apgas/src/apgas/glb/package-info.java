@@ -0,0 +1,22 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+/**
+ * The {@link apgas.glb} package implements lifeline-based global load
+ * balancing.
+ * <p>
+ * Applications implement a {@link apgas.glb.TaskQueue} holding the pending
+ * work of a place and a {@link apgas.glb.TaskBag} to ship a fraction of this
+ * work to another place. The {@link apgas.glb.GLB} class then distributes the
+ * work across places by random and lifeline-based work stealing and reduces
+ * the results.
+ */
+package apgas.glb;
@@ -0,0 +1,282 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import apgas.DeadPlaceException;
+
+/**
+ * The {@link Aggregator} class coalesces remote tasks sent to the same place.
+ * <p>
+ * Tasks are buffered per destination place until either the number of buffered
+ * tasks reaches the size bound or the oldest buffered task has waited for the
+ * delay bound. The buffered tasks are then shipped as a single {@link Batch}
+ * message and unpacked into the pool of the destination place.
+ * <p>
+ * Finish accounting is unaffected: tasks are spawned before being buffered and
+ * submitted upon arrival as usual. If a batch cannot be shipped, each task in
+ * the batch is unspawned and the failure is reported to the task's finish.
+ */
+final class Aggregator {
+  /**
+   * A batch of tasks shipped to a place as a single message.
+   */
+  static final class Batch implements SerializableRunnable {
+    private static final long serialVersionUID = -3186436580418386046L;
+
+    /**
+     * The tasks.
+     */
+    private final Task[] tasks;
+
+    /**
+     * Constructs a new {@link Batch}.
+     *
+     * @param tasks
+     *          the tasks
+     */
+    Batch(Task[] tasks) {
+      this.tasks = tasks;
+    }
+
+    /**
+     * Submits the tasks for asynchronous execution.
+     */
+    @Override
+    public void run() {
+      for (final Task task : tasks) {
+        task.run();
+      }
+    }
+  }
+
+  /**
+   * The buffer for one destination place.
+   */
+  private static final class Buffer {
+    /**
+     * The buffered tasks.
+     */
+    ArrayList<Task> tasks = new ArrayList<Task>();
+
+    /**
+     * The time at which the oldest buffered task was buffered.
+     */
+    long time;
+
+    /**
+     * Removes and returns all buffered tasks.
+     *
+     * @return the buffered tasks or null if none
+     */
+    Task[] drain() {
+      if (tasks.isEmpty()) {
+        return null;
+      }
+      final Task[] batch = tasks.toArray(new Task[tasks.size()]);
+      tasks.clear();
+      return batch;
+    }
+  }
+
+  /**
+   * The maximal number of tasks in a batch.
+   */
+  private final int size;
+
+  /**
+   * The maximal time in nanoseconds a task may be buffered.
+   */
+  private final long delay;
+
+  /**
+   * The transport used to ship batches.
+   */
+  private final Transport transport;
+
+  /**
+   * The buffers indexed by destination place.
+   */
+  private final Map<Integer, Buffer> buffers = new ConcurrentHashMap<Integer, Buffer>();
+
+  /**
+   * The thread flushing buffers when the delay bound is exceeded.
+   */
+  private final Thread flusher;
+
+  /**
+   * True if shutdown is in progress.
+   */
+  private volatile boolean dying;
+
+  /**
+   * True if the flusher thread is parked until the next task is buffered.
+   */
+  private volatile boolean sleeping;
+
+  /**
+   * Constructs a new {@link Aggregator} instance.
+   *
+   * @param transport
+   *          the transport used to ship batches
+   * @param size
+   *          the maximal number of tasks in a batch
+   * @param delay
+   *          the maximal time in microseconds a task may be buffered
+   */
+  Aggregator(Transport transport, int size, long delay) {
+    this.transport = transport;
+    this.size = size;
+    this.delay = delay * 1000;
+    flusher = new Thread(() -> {
+      while (!dying) {
+        LockSupport.parkNanos(this.delay);
+        if (!flushExpired()) {
+          // nothing buffered: park until send buffers a task
+          sleeping = true;
+          if (isEmpty()) {
+            while (sleeping && !dying) {
+              LockSupport.park(this);
+            }
+          }
+          sleeping = false;
+        }
+      }
+    });
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Ships the buffers whose oldest task has waited for the delay bound.
+   *
+   * @return true if tasks remain buffered
+   */
+  private boolean flushExpired() {
+    final long now = System.nanoTime();
+    boolean pending = false;
+    for (final Map.Entry<Integer, Buffer> entry : buffers.entrySet()) {
+      final Buffer buffer = entry.getValue();
+      Task[] batch = null;
+      synchronized (buffer) {
+        if (now - buffer.time >= delay) {
+          batch = buffer.drain();
+        } else if (!buffer.tasks.isEmpty()) {
+          pending = true;
+        }
+      }
+      ship(entry.getKey(), batch);
+    }
+    return pending;
+  }
+
+  /**
+   * Returns true if no task is buffered.
+   *
+   * @return true if all buffers are empty
+   */
+  private boolean isEmpty() {
+    for (final Buffer buffer : buffers.values()) {
+      synchronized (buffer) {
+        if (!buffer.tasks.isEmpty()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Buffers a task for execution at place p.
+   * <p>
+   * The task must have been spawned already.
+   *
+   * @param p
+   *          the place ID
+   * @param task
+   *          the task
+   */
+  void send(int p, Task task) {
+    final Buffer buffer = buffers.computeIfAbsent(p, k -> new Buffer());
+    Task[] batch = null;
+    synchronized (buffer) {
+      if (buffer.tasks.isEmpty()) {
+        buffer.time = System.nanoTime();
+      }
+      buffer.tasks.add(task);
+      if (buffer.tasks.size() >= size) {
+        batch = buffer.drain();
+      }
+    }
+    if (sleeping && batch == null) {
+      // the flusher checks the buffers after setting sleeping, so either it
+      // sees this task or we see sleeping set
+      sleeping = false;
+      LockSupport.unpark(flusher);
+    }
+    ship(p, batch);
+  }
+
+  /**
+   * Ships all buffered tasks immediately.
+   */
+  void flush() {
+    for (final Map.Entry<Integer, Buffer> entry : buffers.entrySet()) {
+      final Buffer buffer = entry.getValue();
+      Task[] batch;
+      synchronized (buffer) {
+        batch = buffer.drain();
+      }
+      ship(entry.getKey(), batch);
+    }
+  }
+
+  /**
+   * Ships a batch of tasks to place p.
+   *
+   * @param p
+   *          the place ID
+   * @param batch
+   *          the tasks or null if none
+   */
+  private void ship(int p, Task[] batch) {
+    if (batch == null) {
+      return;
+    }
+    try {
+      transport.send(p, new Batch(batch));
+    } catch (final Throwable e) {
+      if (GlobalRuntimeImpl.getRuntime().verboseSerialization
+          && !(e instanceof DeadPlaceException)) {
+        System.err.println("[APGAS] Failed to spawn " + batch.length
+            + " tasks at place " + p + " due to: " + e);
+      }
+      for (final Task task : batch) {
+        // report the failure before unspawning so the finish cannot complete
+        task.finish.addSuppressed(e);
+        task.finish.unspawn(p);
+      }
+    }
+  }
+
+  /**
+   * Stops the flusher thread.
+   */
+  void shutdown() {
+    dying = true;
+    LockSupport.unpark(flusher);
+  }
+}
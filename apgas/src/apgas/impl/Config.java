@@ -26,10 +26,13 @@ public final class Config {
    * Name of the network transport class implementation to instantiate (String
    * property).
    * <p>
-   * Currently "{@code apgas.impl.Transport}" and "
-   * {@code apgas.sockets.SocketTransport}" are supported. Defaults to "
-   * {@code apgas.impl.Transport}".
+   * Currently "{@code apgas.impl.HazelcastTransport}", "
+   * {@code apgas.sockets.SocketTransport}", and "
+   * {@code apgas.sockets.SharedMemoryTransport}" are supported. Defaults to "
+   * {@code apgas.impl.HazelcastTransport}". The socket and shared-memory
+   * transports do not depend on Hazelcast.
    *
+   * @see Transport
    */
   public static final String APGAS_TRANSPORT = "apgas.transport";
 
@@ -41,6 +44,32 @@ public final class Config {
    */
   public static final String APGAS_TRANSPORT_COMPRESSION = "apgas.transport.compression";
 
+  /**
+   * Minimal size in bytes of a serialized message to be compressed when using
+   * transport "{@code apgas.sockets.SocketTransport}" (Integer property).
+   * <p>
+   * Defaults to 512.
+   */
+  public static final String APGAS_TRANSPORT_COMPRESSION_THRESHOLD = "apgas.transport.compression.threshold";
+
+  /**
+   * Directory holding the ring buffers shared by places on the same host when
+   * using transport "{@code apgas.sockets.SharedMemoryTransport}".
+   * <p>
+   * Defaults to "/dev/shm". If the directory does not exist, all messages are
+   * sent over sockets.
+   */
+  public static final String APGAS_TRANSPORT_SHM_DIR = "apgas.transport.shm.dir";
+
+  /**
+   * Capacity in bytes of each ring buffer when using transport "
+   * {@code apgas.sockets.SharedMemoryTransport}" (Integer property).
+   * <p>
+   * Rounded up to a power of two. Defaults to 262144. Messages larger than half
+   * the capacity are sent over sockets.
+   */
+  public static final String APGAS_TRANSPORT_SHM_CAPACITY = "apgas.transport.shm.capacity";
+
   /**
    * Upper bound on the number of persistent threads in the thread pool (Integer
    * property).
@@ -78,6 +107,41 @@ public final class Config {
    */
   public static final String APGAS_FINISH = "apgas.finish";
 
+  /**
+   * Name of the store holding the resilient finish states (String property).
+   * <p>
+   * Currently "{@code hazelcast}" and "{@code places}" are supported. The
+   * latter keeps the states in the memory of the places and replicates them to
+   * backup places without going through Hazelcast. Defaults to
+   * "{@code hazelcast}" with the Hazelcast transport and "{@code places}"
+   * otherwise. The Hazelcast store requires the Hazelcast transport.
+   */
+  public static final String APGAS_RESILIENT_STORE = "apgas.resilient.store";
+
+  /**
+   * Maximal number of remote tasks to coalesce into a single message per
+   * destination place (Integer property).
+   * <p>
+   * Defaults to 0, which disables aggregation. Ignored in resilient mode.
+   */
+  public static final String APGAS_AGGREGATION = "apgas.aggregation";
+
+  /**
+   * Maximal time in microseconds a remote task may be held back for
+   * aggregation (Long property).
+   * <p>
+   * Defaults to 1000.
+   */
+  public static final String APGAS_AGGREGATION_DELAY = "apgas.aggregation.delay";
+
+  /**
+   * Arity of the tree used by "{@code apgas.impl.TreeFinish}" to aggregate
+   * task count updates (Integer property).
+   * <p>
+   * Defaults to 8.
+   */
+  public static final String APGAS_FINISH_ARITY = "apgas.finish.arity";
+
   /**
    * Name of the launcher implementation class to instantiate (String property).
    * <p>
@@ -35,8 +35,6 @@ import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
 
-import com.hazelcast.core.IMap;
-
 import apgas.Configuration;
 import apgas.Constructs;
 import apgas.GlobalRuntime;
@@ -114,9 +112,14 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
   private boolean dying;
 
   /**
-   * The resilient map from finish IDs to finish states.
+   * The aggregator for remote tasks or null if aggregation is disabled.
    */
-  final IMap<GlobalID, ResilientFinishState> resilientFinishMap;
+  final Aggregator aggregator;
+
+  /**
+   * The resilient store for finish states or null if using Hazelcast.
+   */
+  final ResilientStore store;
 
   private static Worker currentWorker() {
     final Thread t = Thread.currentThread();
@@ -157,6 +160,11 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       final String java = System.getProperty(Config.APGAS_JAVA, "java");
       final String transportName = System.getProperty(Config.APGAS_TRANSPORT);
       final String launcherName = System.getProperty(Config.APGAS_LAUNCHER);
+      final int aggregation = Integer.getInteger(Config.APGAS_AGGREGATION, 0);
+      final long aggregationDelay = Long
+          .getLong(Config.APGAS_AGGREGATION_DELAY, 1000);
+      final String storeName = System
+          .getProperty(Config.APGAS_RESILIENT_STORE);
 
       final String localhost = InetAddress.getLoopbackAddress()
           .getHostAddress();
@@ -319,17 +327,18 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
         try {
           transport = (Transport) Class.forName(transportName)
               .getDeclaredConstructor(GlobalRuntimeImpl.class, String.class,
-                  String.class, boolean.class)
-              .newInstance(this, master, ip, compact);
+                  String.class, boolean.class, boolean.class)
+              .newInstance(this, master, ip, compact, kryo);
         } catch (InstantiationException | IllegalAccessException
             | ExceptionInInitializerError | ClassNotFoundException
-            | NoClassDefFoundError | ClassCastException e) {
+            | NoClassDefFoundError | ClassCastException
+            | NoSuchMethodException e) {
           System.err.println("[APGAS] Unable to instantiate transport: "
               + transportName + ". Using default transport.");
         }
       }
       if (transport == null) {
-        transport = new Transport(this, master, ip, compact, kryo);
+        transport = new HazelcastTransport(this, master, ip, compact, kryo);
       }
       this.transport = transport;
       if (verboseLauncher) {
@@ -341,9 +350,32 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       here = transport.here();
       home = new Place(here);
 
-      resilientFinishMap = resilient
-          ? transport.<GlobalID, ResilientFinishState> getResilientFinishMap()
-          : null;
+      // initialize resilient store
+      boolean hazelcast;
+      try {
+        hazelcast = transport instanceof HazelcastTransport;
+      } catch (final NoClassDefFoundError e) {
+        hazelcast = false; // Hazelcast is not available
+      }
+      final boolean placeStore = "places".equals(storeName) || !hazelcast;
+      if (resilient && storeName != null && !"places".equals(storeName)) {
+        if (!"hazelcast".equals(storeName)) {
+          System.err.println("[APGAS] Unable to instantiate resilient store: "
+              + storeName + ". Using default store.");
+        } else if (!hazelcast) {
+          System.err.println(
+              "[APGAS] The hazelcast store requires the Hazelcast transport. Using places store.");
+        }
+      }
+      store = resilient && placeStore ? new ResilientStore(this) : null;
+
+      // initialize aggregation
+      if (aggregation > 1 && resilient) {
+        System.err.println(
+            "[APGAS] Task aggregation is not supported in resilient mode. Ignoring.");
+      }
+      aggregator = aggregation > 1 && !resilient
+          ? new Aggregator(transport, aggregation, aggregationDelay) : null;
 
       // install hook on thread 1
       if (master == null) {
@@ -439,14 +471,21 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       shutdown();
       return;
     }
+    if (store != null) {
+      for (final int id : removed) {
+        store.purge(id);
+      }
+    }
     final Consumer<Place> handler = this.handler;
     execute(new RecursiveAction() {
       private static final long serialVersionUID = 1052937749744648347L;
 
       @Override
       public void compute() {
-        for (final int id : removed) {
-          ResilientFinishState.purge(id);
+        if (store == null) {
+          for (final int id : removed) {
+            HazelcastStore.purge(id);
+          }
         }
         if (handler != null) {
           for (final int id : removed) {
@@ -473,6 +512,9 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
     if (launcher != null) {
       launcher.shutdown();
     }
+    if (aggregator != null) {
+      aggregator.shutdown();
+    }
     pool.shutdown();
     transport.shutdown();
   }
@@ -550,7 +592,12 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
     final Finish finish = worker == null ? NullFinish.SINGLETON
         : worker.task.finish;
     finish.spawn(p.id);
-    new Task(finish, f, here).asyncAt(p.id);
+    final Task task = new Task(finish, f, here);
+    if (aggregator != null && worker != null && p.id != here) {
+      aggregator.send(p.id, task);
+    } else {
+      task.asyncAt(p.id);
+    }
   }
 
   /**
@@ -0,0 +1,279 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.query.Predicate;
+
+import apgas.util.GlobalID;
+
+/**
+ * The {@link HazelcastStore} class stores the {@link ResilientFinishState}
+ * instances in the distributed map of the {@link HazelcastTransport}.
+ * <p>
+ * This class is only loaded if the Hazelcast store is in use so that the
+ * runtime does not depend on Hazelcast otherwise.
+ */
+final class HazelcastStore {
+  private HazelcastStore() {
+  }
+
+  /**
+   * Returns the distributed map of finish states.
+   *
+   * @return the map
+   */
+  private static IMap<GlobalID, ResilientFinishState> map() {
+    return ((HazelcastTransport) GlobalRuntimeImpl.getRuntime().transport)
+        .getResilientFinishMap();
+  }
+
+  /**
+   * Updates the finish states when a place dies.
+   *
+   * @param p
+   *          the dead place ID
+   */
+  static void purge(int p) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    // only process finish states for the current place and the dead place
+    final Predicate<GlobalID, ResilientFinishState> predicate = entry -> {
+      return entry.getKey().home.id == here || entry.getKey().home.id == p;
+    };
+    for (final GlobalID id : map().keySet(predicate)) {
+      submit(id, state -> {
+        if (state == null) {
+          // entry has been removed already, ignore
+          return null;
+        }
+        return state.kill(p) ? state : null;
+      });
+    }
+  }
+
+  /**
+   * A function to process finish states.
+   */
+  @FunctionalInterface
+  static interface Processor extends Serializable {
+    /**
+     * The function.
+     *
+     * @param state
+     *          the state to process
+     * @return the updated state or null
+     */
+    ResilientFinishState process(ResilientFinishState state);
+  }
+
+  /**
+   * Updates a resilient finish state.
+   *
+   * @param id
+   *          the finish state ID to update
+   * @param processor
+   *          the function to apply
+   */
+  static void update(GlobalID id, Processor processor) {
+    execute(id, entry -> {
+      entry.setValue(processor.process(entry.getValue()));
+      return null;
+    });
+  }
+
+  /**
+   * An entry processor.
+   *
+   * @param <T>
+   *          the return type of the processor
+   */
+  @FunctionalInterface
+  static interface EntryProcessor<T> extends Serializable {
+    /**
+     * The function.
+     *
+     * @param entry
+     *          the entry to process
+     * @return the result
+     */
+    T process(Map.Entry<GlobalID, ResilientFinishState> entry);
+  }
+
+  /**
+   * Apply an entry processor to an entry.
+   *
+   * @param <T>
+   *          the return type of the processor
+   * @param id
+   *          the ID of the entry
+   * @param processor
+   *          the processor
+   * @return the result
+   */
+  static <T> T execute(GlobalID id, EntryProcessor<T> processor) {
+    return execute(id, true, processor);
+  }
+
+  /**
+   * Apply an entry processor to an entry.
+   *
+   * @param <T>
+   *          the return type of the processor
+   * @param id
+   *          the ID of the entry
+   * @param applyOnBackup
+   *          whether to apply the processor on backup entries
+   * @param processor
+   *          the processor
+   * @return the result
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T execute(GlobalID id, boolean applyOnBackup,
+      EntryProcessor<T> processor) {
+    try {
+      return (T) map().executeOnKey(id,
+          new AbstractEntryProcessor<GlobalID, ResilientFinishState>(
+              applyOnBackup) {
+            private static final long serialVersionUID = -8787905766218374656L;
+
+            @Override
+            public T process(Map.Entry<GlobalID, ResilientFinishState> entry) {
+              return processor.process(entry);
+            }
+          });
+    } catch (final DeadPlaceError | HazelcastInstanceNotActiveException e) {
+      // this place is dead for the world
+      System.exit(42);
+      throw e;
+    }
+  }
+
+  /**
+   * Updates a resilient finish state asynchronously and propagates termination
+   * to parent if necessary.
+   *
+   * @param id
+   *          the finish state ID to update
+   * @param processor
+   *          the function to apply
+   */
+  static void submit(GlobalID id, Processor processor) {
+    map().submitToKey(id,
+        new AbstractEntryProcessor<GlobalID, ResilientFinishState>(true) {
+          private static final long serialVersionUID = 1754842053698962361L;
+
+          @Override
+          public GlobalID process(
+              Map.Entry<GlobalID, ResilientFinishState> entry) {
+            final ResilientFinishState state = processor
+                .process(entry.getValue());
+            if (state == null) {
+              return null;
+            }
+            if (!state.isDone() || !state.isDead(id.home.id)) {
+              // state is still useful:
+              // finish is incomplete or we need to preserve its exceptions
+              entry.setValue(state);
+            } else {
+              // finish is complete and place of finish has died, remove entry
+              entry.setValue(null);
+            }
+            return state.isDone() ? state.pid : null;
+          }
+        }, new ExecutionCallback<GlobalID>() {
+
+          @Override
+          public void onResponse(GlobalID pid) {
+            if (pid == null) {
+              return;
+            }
+            submit(pid, state -> {
+              if (state == null) {
+                // parent has been purged already
+                // stop propagating termination
+                return null;
+              }
+              state.removeChild(id);
+              return state;
+            });
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof DeadPlaceError
+                || t instanceof HazelcastInstanceNotActiveException) {
+              // this place is dead for the world
+              System.exit(42);
+            }
+          }
+        });
+  }
+
+  static private class EntryUpdatedOrRemovedListener
+      implements EntryUpdatedListener<GlobalID, ResilientFinishState>,
+      EntryRemovedListener<GlobalID, ResilientFinishState> {
+
+    private final ResilientFinish finish;
+
+    private EntryUpdatedOrRemovedListener(ResilientFinish finish) {
+      this.finish = finish;
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<GlobalID, ResilientFinishState> event) {
+      synchronized (finish) {
+        finish.notifyAll();
+      }
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<GlobalID, ResilientFinishState> event) {
+      synchronized (finish) {
+        finish.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Registers a resilient store listener.
+   * <p>
+   * The finish instance is notified when its entry is updated or removed from
+   * the resilient store.
+   *
+   * @param finish
+   *          the finish instance to register
+   * @return the unique id of the registration
+   */
+  static String addListener(ResilientFinish finish) {
+    return map().addEntryListener(new EntryUpdatedOrRemovedListener(finish),
+        finish.id, false);
+  }
+
+  /**
+   * Deregisters a listener.
+   *
+   * @param registration
+   *          the unique id of the registration
+   */
+  static void removeListener(String registration) {
+    map().removeEntryListener(registration);
+  }
+}
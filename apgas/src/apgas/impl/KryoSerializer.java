@@ -1,9 +1,10 @@
 package apgas.impl;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.objenesis.strategy.SerializingInstantiatorStrategy;
 
@@ -11,22 +12,20 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.io.UnsafeInput;
-import com.esotericsoftware.kryo.io.UnsafeOutput;
 import com.esotericsoftware.kryo.serializers.ClosureSerializer;
-import com.hazelcast.nio.ObjectDataInput;
-import com.hazelcast.nio.ObjectDataOutput;
-import com.hazelcast.nio.serialization.StreamSerializer;
 
 import apgas.Place;
 import apgas.util.GlobalID;
+import apgas.util.LongIntMap;
 import apgas.util.PlaceLocalObject;
 
 /**
  * The {@link KryoSerializer} implements serialization using Kryo.
- *
+ * <p>
+ * It exposes the per-thread Kryo instances to the transports via
+ * {@link #writeObject} and {@link #readObject}.
  */
-class KryoSerializer implements StreamSerializer<Object> {
+public class KryoSerializer {
   private static final ThreadLocal<Kryo> kryoThreadLocal = new ThreadLocal<Kryo>() {
     @Override
     protected Kryo initialValue() {
@@ -44,9 +43,22 @@ class KryoSerializer implements StreamSerializer<Object> {
       };
       kryo.addDefaultSerializer(DefaultFinish.class,
           new DefaultFinishSerializer());
+      kryo.addDefaultSerializer(TreeFinish.class, new TreeFinishSerializer());
       kryo.setInstantiatorStrategy(new SerializingInstantiatorStrategy());
       kryo.register(Task.class);
       kryo.register(UncountedTask.class);
+      kryo.register(Aggregator.Batch.class);
+      kryo.register(Task[].class);
+      kryo.register(ResilientStore.Op.class);
+      kryo.register(ResilientStore.Op[].class);
+      kryo.register(ResilientStore.Requests.class);
+      kryo.register(ResilientStore.Replies.class);
+      kryo.register(ResilientStore.Batch.class);
+      kryo.register(ResilientStore.Snapshot.class);
+      kryo.register(ResilientStore.Ack.class);
+      kryo.register(ResilientFinishState.class,
+          new ResilientFinishStateSerializer());
+      kryo.register(LongIntMap.class);
       kryo.register(Place.class);
       kryo.register(GlobalID.class);
       kryo.register(java.lang.invoke.SerializedLambda.class);
@@ -61,29 +73,63 @@ class KryoSerializer implements StreamSerializer<Object> {
     }
   };
 
-  @Override
-  public int getTypeId() {
-    return 42;
-  }
+  private static final ThreadLocal<Output> outputThreadLocal = new ThreadLocal<Output>() {
+    @Override
+    protected Output initialValue() {
+      return new Output(4096);
+    }
+  };
+
+  private static final ThreadLocal<Input> inputThreadLocal = new ThreadLocal<Input>() {
+    @Override
+    protected Input initialValue() {
+      return new Input(4096);
+    }
+  };
 
-  @Override
-  public void write(ObjectDataOutput objectDataOutput, Object object)
-      throws IOException {
-    final Output output = new UnsafeOutput((OutputStream) objectDataOutput);
-    final Kryo kryo = kryoThreadLocal.get();
-    kryo.writeClassAndObject(output, object);
-    output.flush();
+  /**
+   * Returns this thread's Kryo instance.
+   *
+   * @return the Kryo instance
+   */
+  static Kryo getKryo() {
+    return kryoThreadLocal.get();
   }
 
-  @Override
-  public Object read(ObjectDataInput objectDataInput) throws IOException {
-    final Input input = new UnsafeInput((InputStream) objectDataInput);
-    final Kryo kryo = kryoThreadLocal.get();
-    return kryo.readClassAndObject(input);
+  /**
+   * Serializes an object to a stream using this thread's Kryo instance.
+   *
+   * @param out
+   *          the output stream
+   * @param object
+   *          the object to serialize
+   */
+  public static void writeObject(OutputStream out, Object object) {
+    final Output output = outputThreadLocal.get();
+    output.setOutputStream(out);
+    try {
+      kryoThreadLocal.get().writeClassAndObject(output, object);
+      output.flush();
+    } finally {
+      output.setOutputStream(null);
+    }
   }
 
-  @Override
-  public void destroy() {
+  /**
+   * Deserializes an object from a stream using this thread's Kryo instance.
+   *
+   * @param in
+   *          the input stream
+   * @return the deserialized object
+   */
+  public static Object readObject(InputStream in) {
+    final Input input = inputThreadLocal.get();
+    input.setInputStream(in);
+    try {
+      return kryoThreadLocal.get().readClassAndObject(input);
+    } finally {
+      input.setInputStream(null);
+    }
   }
 
   private static class CustomSerializer extends Serializer<Object> {
@@ -127,4 +173,58 @@ class KryoSerializer implements StreamSerializer<Object> {
       return (DefaultFinish) f.readResolve();
     }
   }
+
+  private static class ResilientFinishStateSerializer
+      extends Serializer<ResilientFinishState> {
+    @Override
+    public void write(Kryo kryo, Output output, ResilientFinishState object) {
+      kryo.writeObjectOrNull(output, object.pid, GlobalID.class);
+      object.counts.write(kryo, output);
+      object.deads.write(kryo, output);
+      object.cids.write(kryo, output);
+      object.dids.write(kryo, output);
+      final List<SerializableThrowable> exceptions = object.exceptions;
+      output.writeInt(exceptions == null ? 0 : exceptions.size() + 1, true);
+      if (exceptions != null) {
+        for (final SerializableThrowable t : exceptions) {
+          kryo.writeObject(output, t);
+        }
+      }
+    }
+
+    @Override
+    public ResilientFinishState read(Kryo kryo, Input input,
+        Class<ResilientFinishState> type) {
+      final ResilientFinishState state = new ResilientFinishState(
+          kryo.readObjectOrNull(input, GlobalID.class));
+      state.counts.read(kryo, input);
+      state.deads.read(kryo, input);
+      state.cids.read(kryo, input);
+      state.dids.read(kryo, input);
+      final int n = input.readInt(true) - 1;
+      if (n >= 0) {
+        state.exceptions = new ArrayList<SerializableThrowable>(n);
+        for (int i = 0; i < n; i++) {
+          state.exceptions
+              .add(kryo.readObject(input, SerializableThrowable.class));
+        }
+      }
+      return state;
+    }
+  }
+
+  private static class TreeFinishSerializer extends Serializer<TreeFinish> {
+    @Override
+    public void write(Kryo kryo, Output output, TreeFinish object) {
+      object.writeReplace();
+      kryo.writeObject(output, object.id);
+    }
+
+    @Override
+    public TreeFinish read(Kryo kryo, Input input, Class<TreeFinish> type) {
+      final TreeFinish f = kryo.newInstance(type);
+      f.id = kryo.readObject(input, GlobalID.class);
+      return (TreeFinish) f.readResolve();
+    }
+  }
 }
@@ -13,7 +13,6 @@ package apgas.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 
 import apgas.DeadPlaceException;
@@ -70,25 +69,25 @@ class ResilientFinish implements Serializable, Finish {
     this.id = id;
     final GlobalID pid = parent instanceof ResilientFinish
         ? ((ResilientFinish) parent).id : null;
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.create(id, pid);
+      return;
+    }
     final int here = GlobalRuntimeImpl.getRuntime().here;
     // map.set(id, new ResilientFinishState(pid, here, p));
-    ResilientFinishState.update(id, state -> {
+    HazelcastStore.update(id, state -> {
       return new ResilientFinishState(pid, here);
     });
     if (pid == null) {
       return;
     }
-    ResilientFinishState.update(pid, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    HazelcastStore.update(pid, state -> {
+      if (state == null || state.isDead(here)) {
         // parent finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
-      if (state.dids == null || !state.dids.contains(id)) {
-        if (state.cids == null) {
-          state.cids = new HashSet<GlobalID>();
-        }
-        state.cids.add(id);
-      }
+      state.addChild(id);
       return state;
     });
   }
@@ -100,12 +99,17 @@ class ResilientFinish implements Serializable, Finish {
       // task originated here, no transit stage
       return;
     }
-    ResilientFinishState.update(id, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.submit(id, p);
+      return;
+    }
+    HazelcastStore.update(id, state -> {
+      if (state == null || state.isDead(here)) {
         // finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
-      if (state.deads != null && state.deads.contains(p)) {
+      if (state.isDead(p)) {
         // source place has died, refuse task but keep place alive
         throw new DeadPlaceException(new Place(p));
       }
@@ -117,13 +121,18 @@ class ResilientFinish implements Serializable, Finish {
 
   @Override
   public void spawn(int p) {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.spawn(id, p);
+      return;
+    }
     final int here = GlobalRuntimeImpl.getRuntime().here;
-    ResilientFinishState.update(id, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    HazelcastStore.update(id, state -> {
+      if (state == null || state.isDead(here)) {
         // finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
-      if (state.deads != null && state.deads.contains(p)) {
+      if (state.isDead(p)) {
         // destination place has died, reject task
         throw new DeadPlaceException(new Place(p));
       }
@@ -134,13 +143,18 @@ class ResilientFinish implements Serializable, Finish {
 
   @Override
   public void unspawn(int p) {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.unspawn(id, p);
+      return;
+    }
     final int here = GlobalRuntimeImpl.getRuntime().here;
-    ResilientFinishState.submit(id, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    HazelcastStore.submit(id, state -> {
+      if (state == null || state.isDead(here)) {
         // finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
-      if (state.deads != null && state.deads.contains(p)) {
+      if (state.isDead(p)) {
         // destination place has died, return
         return null;
       }
@@ -151,9 +165,14 @@ class ResilientFinish implements Serializable, Finish {
 
   @Override
   public void tell() {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.tell(id);
+      return;
+    }
     final int here = GlobalRuntimeImpl.getRuntime().here;
-    ResilientFinishState.submit(id, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    HazelcastStore.submit(id, state -> {
+      if (state == null || state.isDead(here)) {
         // finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
@@ -164,10 +183,15 @@ class ResilientFinish implements Serializable, Finish {
 
   @Override
   public void addSuppressed(Throwable exception) {
-    final int here = GlobalRuntimeImpl.getRuntime().here;
     final SerializableThrowable t = new SerializableThrowable(exception);
-    ResilientFinishState.update(id, state -> {
-      if (state == null || state.deads != null && state.deads.contains(here)) {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      store.addSuppressed(id, t);
+      return;
+    }
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    HazelcastStore.update(id, state -> {
+      if (state == null || state.isDead(here)) {
         // finish thinks this place is dead, exit
         throw new DeadPlaceError();
       }
@@ -185,23 +209,32 @@ class ResilientFinish implements Serializable, Finish {
   }
 
   private boolean isDone() {
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    if (store != null) {
+      return store.isDone(id);
+    }
     final int here = GlobalRuntimeImpl.getRuntime().here;
-    return ResilientFinishState.execute(id, false, // no need to apply on backup
+    return HazelcastStore.execute(id, false, // no need to apply on backup
         entry -> {
           final ResilientFinishState state = entry.getValue();
           if (state == null
-              || state.deads != null && state.deads.contains(here)) {
+              || state.isDead(here)) {
             // parent finish thinks this place is dead, exit
             throw new DeadPlaceError();
           }
-          return state.counts.size() == 0
-              && (state.cids == null || state.cids.isEmpty());
+          return state.isDone();
         });
   }
 
   @Override
   public boolean block() {
-    final String reg = ResilientFinishState.addListener(this);
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    String reg = null;
+    if (store != null) {
+      store.addListener(this);
+    } else {
+      reg = HazelcastStore.addListener(this);
+    }
     synchronized (this) {
       while (!isDone()) {
         try {
@@ -210,24 +243,33 @@ class ResilientFinish implements Serializable, Finish {
         }
       }
     }
-    ResilientFinishState.removeListener(reg);
+    if (store != null) {
+      store.removeListener(this);
+    } else {
+      HazelcastStore.removeListener(reg);
+    }
     return true;
   }
 
   @Override
   public List<Throwable> exceptions() {
     final int here = GlobalRuntimeImpl.getRuntime().here;
-    final List<SerializableThrowable> exceptions = ResilientFinishState
-        .execute(id, entry -> {
-          final ResilientFinishState state = entry.getValue();
-          if (state == null
-              || state.deads != null && state.deads.contains(here)) {
-            // parent finish thinks this place is dead, exit
-            throw new DeadPlaceError();
-          }
-          entry.setValue(null);
-          return state.exceptions;
-        });
+    final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+    final List<SerializableThrowable> exceptions;
+    if (store != null) {
+      exceptions = store.exceptions(id);
+    } else {
+      exceptions = HazelcastStore.execute(id, entry -> {
+        final ResilientFinishState state = entry.getValue();
+        if (state == null
+            || state.isDead(here)) {
+          // parent finish thinks this place is dead, exit
+          throw new DeadPlaceError();
+        }
+        entry.setValue(null);
+        return state.exceptions;
+      });
+    }
     if (exceptions == null) {
       return null;
     }
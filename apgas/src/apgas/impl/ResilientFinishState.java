@@ -13,23 +13,12 @@ package apgas.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import com.hazelcast.core.EntryEvent;
-import com.hazelcast.core.ExecutionCallback;
-import com.hazelcast.core.HazelcastInstanceNotActiveException;
-import com.hazelcast.map.AbstractEntryProcessor;
-import com.hazelcast.map.listener.EntryRemovedListener;
-import com.hazelcast.map.listener.EntryUpdatedListener;
-import com.hazelcast.query.Predicate;
 
 import apgas.DeadPlaceException;
 import apgas.Place;
 import apgas.util.GlobalID;
+import apgas.util.LongIntMap;
 
 /**
  * The {@link ResilientFinishState} class defines the entry associated with a
@@ -42,7 +31,7 @@ final class ResilientFinishState implements Serializable {
   /**
    * The set of places that have died during this finish execution.
    */
-  Set<Integer> deads;
+  final LongIntMap deads = new LongIntMap();
 
   /**
    * The ID of the parent resilient finish object if any.
@@ -50,14 +39,14 @@ final class ResilientFinishState implements Serializable {
   final GlobalID pid;
 
   /**
-   * The IDs of the live immediatly nested finish objects.
+   * The global IDs of the live immediatly nested finish objects.
    */
-  Set<GlobalID> cids;
+  final LongIntMap cids = new LongIntMap();
 
   /**
-   * The IDs of the dead immediatly nested finish objects.
+   * The global IDs of the dead immediatly nested finish objects.
    */
-  Set<GlobalID> dids;
+  final LongIntMap dids = new LongIntMap();
 
   /**
    * The exceptions reported to this finish so far.
@@ -65,14 +54,9 @@ final class ResilientFinishState implements Serializable {
   List<SerializableThrowable> exceptions;
 
   /**
-   * The task counts.
+   * The task counts indexed by (source, destination) place pairs.
    */
-  final Map<Long, Integer> counts = new HashMap<Long, Integer>();
-
-  /**
-   * The largest place ID encountered so far.
-   */
-  int max;
+  final LongIntMap counts = new LongIntMap();
 
   /**
    * Computes the index of the (p, q) counter.
@@ -87,35 +71,6 @@ final class ResilientFinishState implements Serializable {
     return (((long) p) << 32) + q;
   }
 
-  /**
-   * Clears (p, q) counter.
-   *
-   * @param p
-   *          source place ID
-   * @param q
-   *          destination place ID
-   */
-  void clear(int p, int q) {
-    counts.remove(index(p, q));
-  }
-
-  /**
-   * Update counter by delta
-   *
-   * @param index
-   *          the index of the counter
-   * @param delta
-   *          the delta
-   */
-  private void add(long index, int delta) {
-    final int v = counts.getOrDefault(index, 0) + delta;
-    if (v == 0) {
-      counts.remove(index);
-    } else {
-      counts.put(index, v);
-    }
-  }
-
   /**
    * Increments (p, q) counter.
    *
@@ -125,13 +80,7 @@ final class ResilientFinishState implements Serializable {
    *          destination place ID
    */
   void incr(int p, int q) {
-    if (p > max) {
-      max = p;
-    }
-    if (q > max) {
-      max = q;
-    }
-    add(index(p, q), 1);
+    counts.add(index(p, q), 1);
   }
 
   /**
@@ -143,295 +92,104 @@ final class ResilientFinishState implements Serializable {
    *          destination place ID
    */
   void decr(int p, int q) {
-    if (p > max) {
-      max = p;
-    }
-    if (q > max) {
-      max = q;
-    }
-    add(index(p, q), -1);
+    counts.add(index(p, q), -1);
   }
 
   /**
-   * Constructs a resilient finish state.
+   * Checks whether all tasks and nested finish objects have terminated.
    *
-   * @param pid
-   *          the ID of the parent resilient finish if any
-   * @param p
-   *          the place ID of the finish
+   * @return true if this finish is complete
    */
-  ResilientFinishState(GlobalID pid, int p) {
-    max = p;
-    this.pid = pid;
-    counts.put(index(p, p), 1);
+  boolean isDone() {
+    return counts.isEmpty() && cids.isEmpty();
   }
 
   /**
-   * Updates the finish states when a place dies.
+   * Checks whether the death of a place has been recorded.
    *
    * @param p
-   *          the dead place ID
+   *          the place ID
+   * @return true if p is dead
    */
-  static void purge(int p) {
-    final int here = GlobalRuntimeImpl.getRuntime().here;
-    // only process finish states for the current place and the dead place
-    final Predicate<GlobalID, ResilientFinishState> predicate = entry -> {
-      return entry.getKey().home.id == here || entry.getKey().home.id == p;
-    };
-    for (final GlobalID id : GlobalRuntimeImpl.getRuntime().resilientFinishMap
-        .keySet(predicate)) {
-      submit(id, state -> {
-        if (state == null) {
-          // entry has been removed already, ignore
-          return null;
-        }
-        if (state.deads == null) {
-          state.deads = new HashSet<Integer>();
-        }
-        if (state.deads.contains(p)) {
-          // death of p has already been processed
-          return null;
-        }
-        state.deads.add(p);
-        final int count = state.counts.size();
-        for (int i = 0; i <= state.max; i++) {
-          state.clear(p, i);
-          state.clear(i, p);
-        }
-        if (state.counts.size() < count) {
-          if (state.exceptions == null) {
-            state.exceptions = new ArrayList<SerializableThrowable>();
-          }
-          state.exceptions.add(
-              new SerializableThrowable(new DeadPlaceException(new Place(p))));
-        }
-        return state;
-      });
-    }
+  boolean isDead(int p) {
+    return deads.contains(p);
   }
 
   /**
-   * A function to process finish states.
-   */
-  @FunctionalInterface
-  static interface Processor extends Serializable {
-    /**
-     * The function.
-     *
-     * @param state
-     *          the state to process
-     * @return the updated state or null
-     */
-    ResilientFinishState process(ResilientFinishState state);
-  }
-
-  /**
-   * Updates a resilient finish state.
+   * Records a nested finish unless it has already terminated.
    *
    * @param id
-   *          the finish state ID to update
-   * @param processor
-   *          the function to apply
+   *          the ID of the nested finish
    */
-  static void update(GlobalID id, Processor processor) {
-    execute(id, entry -> {
-      entry.setValue(processor.process(entry.getValue()));
-      return null;
-    });
-  }
-
-  /**
-   * An entry processor.
-   *
-   * @param <T>
-   *          the return type of the processor
-   */
-  @FunctionalInterface
-  static interface EntryProcessor<T> extends Serializable {
-    /**
-     * The function.
-     *
-     * @param entry
-     *          the entry to process
-     * @return the result
-     */
-    T process(Map.Entry<GlobalID, ResilientFinishState> entry);
-  }
-
-  /**
-   * Apply an entry processor to an entry.
-   *
-   * @param <T>
-   *          the return type of the processor
-   * @param id
-   *          the ID of the entry
-   * @param processor
-   *          the processor
-   * @return the result
-   */
-  static <T> T execute(GlobalID id, EntryProcessor<T> processor) {
-    return execute(id, true, processor);
+  void addChild(GlobalID id) {
+    final long gid = id.gid();
+    if (!dids.contains(gid)) {
+      cids.put(gid, 1);
+    }
   }
 
   /**
-   * Apply an entry processor to an entry.
+   * Records the termination of a nested finish.
+   * <p>
+   * Termination may be reported before the nested finish is recorded.
    *
-   * @param <T>
-   *          the return type of the processor
    * @param id
-   *          the ID of the entry
-   * @param applyOnBackup
-   *          whether to apply the processor on backup entries
-   * @param processor
-   *          the processor
-   * @return the result
+   *          the ID of the nested finish
    */
-  @SuppressWarnings("unchecked")
-  static <T> T execute(GlobalID id, boolean applyOnBackup,
-      EntryProcessor<T> processor) {
-    try {
-      return (T) GlobalRuntimeImpl.getRuntime().resilientFinishMap.executeOnKey(
-          id, new AbstractEntryProcessor<GlobalID, ResilientFinishState>(
-              applyOnBackup) {
-            private static final long serialVersionUID = -8787905766218374656L;
-
-            @Override
-            public T process(Map.Entry<GlobalID, ResilientFinishState> entry) {
-              return processor.process(entry);
-            }
-          });
-    } catch (final DeadPlaceError | HazelcastInstanceNotActiveException e) {
-      // this place is dead for the world
-      System.exit(42);
-      throw e;
+  void removeChild(GlobalID id) {
+    final long gid = id.gid();
+    if (cids.remove(gid) == 0) {
+      dids.put(gid, 1);
     }
   }
 
   /**
-   * Updates a resilient finish state asynchronously and propagates termination
-   * to parent if necessary.
+   * Records the death of a place.
+   * <p>
+   * Clears the counters involving the dead place and records a
+   * {@link DeadPlaceException} if any was nonzero.
    *
-   * @param id
-   *          the finish state ID to update
-   * @param processor
-   *          the function to apply
+   * @param p
+   *          the dead place ID
+   * @return false if the death of p had already been recorded
    */
-  static void submit(GlobalID id, Processor processor) {
-    GlobalRuntimeImpl.getRuntime().resilientFinishMap.submitToKey(id,
-        new AbstractEntryProcessor<GlobalID, ResilientFinishState>(true) {
-          private static final long serialVersionUID = 1754842053698962361L;
-
-          @Override
-          public GlobalID process(
-              Map.Entry<GlobalID, ResilientFinishState> entry) {
-            final ResilientFinishState state = processor
-                .process(entry.getValue());
-            if (state == null) {
-              return null;
-            }
-            if (state.counts.size() > 0
-                || state.cids != null && !state.cids.isEmpty()
-                || state.deads == null || !state.deads.contains(id.home.id)) {
-              // state is still useful:
-              // finish is incomplete or we need to preserve its exceptions
-              entry.setValue(state);
-            } else {
-              // finish is complete and place of finish has died, remove entry
-              entry.setValue(null);
-            }
-            if (state.counts.size() > 0
-                || state.cids != null && !state.cids.isEmpty()) {
-              return null;
-            } else {
-              return state.pid;
-            }
-          }
-        }, new ExecutionCallback<GlobalID>() {
-
-          @Override
-          public void onResponse(GlobalID pid) {
-            if (pid == null) {
-              return;
-            }
-            submit(pid, state -> {
-              if (state == null) {
-                // parent has been purged already
-                // stop propagating termination
-                return null;
-              }
-              if (state.cids != null && state.cids.contains(id)) {
-                state.cids.remove(id);
-              } else {
-                if (state.dids == null) {
-                  state.dids = new HashSet<GlobalID>();
-                }
-                if (!state.dids.contains(id)) {
-                  state.dids.add(id);
-                }
-              }
-              return state;
-            });
-          }
-
-          @Override
-          public void onFailure(Throwable t) {
-            if (t instanceof DeadPlaceError
-                || t instanceof HazelcastInstanceNotActiveException) {
-              // this place is dead for the world
-              System.exit(42);
-            }
-          }
-        });
-  }
-
-  static private class EntryUpdatedOrRemovedListener
-      implements EntryUpdatedListener<GlobalID, ResilientFinishState>,
-      EntryRemovedListener<GlobalID, ResilientFinishState> {
-
-    private final ResilientFinish finish;
-
-    private EntryUpdatedOrRemovedListener(ResilientFinish finish) {
-      this.finish = finish;
-    }
-
-    @Override
-    public void entryRemoved(EntryEvent<GlobalID, ResilientFinishState> event) {
-      synchronized (finish) {
-        finish.notifyAll();
-      }
+  boolean kill(int p) {
+    if (deads.contains(p)) {
+      // death of p has already been processed
+      return false;
     }
-
-    @Override
-    public void entryUpdated(EntryEvent<GlobalID, ResilientFinishState> event) {
-      synchronized (finish) {
-        finish.notifyAll();
+    deads.put(p, 1);
+    if (counts.removeIf(
+        index -> (int) (index >> 32) == p || (int) index == p) > 0) {
+      if (exceptions == null) {
+        exceptions = new ArrayList<SerializableThrowable>();
       }
+      exceptions.add(
+          new SerializableThrowable(new DeadPlaceException(new Place(p))));
     }
+    return true;
   }
 
   /**
-   * Registers a resilient store listener.
-   * <p>
-   * The finish instance is notified when its entry is updated or removed from
-   * the resilient store.
+   * Constructs a resilient finish state.
    *
-   * @param finish
-   *          the finish instance to register
-   * @return the unique id of the registration
+   * @param pid
+   *          the ID of the parent resilient finish if any
+   * @param p
+   *          the place ID of the finish
    */
-  static String addListener(ResilientFinish finish) {
-    return GlobalRuntimeImpl.getRuntime().resilientFinishMap.addEntryListener(
-        new EntryUpdatedOrRemovedListener(finish), finish.id, false);
+  ResilientFinishState(GlobalID pid, int p) {
+    this(pid);
+    counts.put(index(p, p), 1);
   }
 
   /**
-   * Deregisters a listener.
+   * Constructs an empty resilient finish state.
    *
-   * @param registration
-   *          the unique id of the registration
+   * @param pid
+   *          the ID of the parent resilient finish if any
    */
-  static void removeListener(String registration) {
-    GlobalRuntimeImpl.getRuntime().resilientFinishMap
-        .removeEntryListener(registration);
+  ResilientFinishState(GlobalID pid) {
+    this.pid = pid;
   }
 }
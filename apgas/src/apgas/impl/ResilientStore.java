@@ -0,0 +1,1391 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import apgas.DeadPlaceException;
+import apgas.Place;
+import apgas.util.GlobalID;
+import apgas.util.LongIntMap;
+
+/**
+ * The {@link ResilientStore} class implements a resilient store for finish
+ * states that does not depend on Hazelcast.
+ * <p>
+ * Each place is the master of the states of the finish objects it creates. It
+ * replicates these states to a backup place: the highest live place ID below
+ * its own, or the lowest one above it for place 0. Since new places always get
+ * higher IDs, a backup only changes when places die. When a master dies, its
+ * backup becomes the master of its states.
+ * <p>
+ * Updates are sent to the master as operations. The master applies them in
+ * order and forwards them to its backup in numbered batches, several batches
+ * being in flight at a time. A remote update is acknowledged once the backup
+ * has acknowledged the batch containing it. Until then, the requesting place
+ * retains the update and sends it again to the new master if the master dies.
+ * Replicas record the outcome of the updates they apply so retries are never
+ * applied twice. Updates issued by the master itself do not wait for the
+ * backup: if the master dies, the counters they affect are purged anyway.
+ * <p>
+ * Requests, replies, and batches bound for the same place are coalesced into a
+ * single message while the previous message is being sent.
+ */
+final class ResilientStore {
+  /**
+   * Creates a finish state.
+   */
+  static final int CREATE = 0;
+
+  /**
+   * Registers a nested finish with its parent.
+   */
+  static final int ADD_CHILD = 1;
+
+  /**
+   * Records the arrival of a task.
+   */
+  static final int SUBMIT = 2;
+
+  /**
+   * Records the spawning of a task.
+   */
+  static final int SPAWN = 3;
+
+  /**
+   * Cancels the spawning of a task.
+   */
+  static final int UNSPAWN = 4;
+
+  /**
+   * Records the termination of a task.
+   */
+  static final int TELL = 5;
+
+  /**
+   * Records an exception.
+   */
+  static final int EXCEPTION = 6;
+
+  /**
+   * Removes a finish state.
+   */
+  static final int REMOVE = 7;
+
+  /**
+   * Records the termination of a nested finish.
+   */
+  static final int CHILD_DONE = 8;
+
+  /**
+   * Records the death of a place in all the states of a master.
+   */
+  static final int PURGE = 9;
+
+  /**
+   * Outcome of a successful update.
+   */
+  private static final int OK = 1;
+
+  /**
+   * Outcome of an update requested by a place considered dead by the finish.
+   * <p>
+   * Negative outcomes -p-1 denote a {@link DeadPlaceException} for place p.
+   */
+  private static final int ERROR = 2;
+
+  /**
+   * An update to the resilient store.
+   */
+  static final class Op implements Serializable {
+    private static final long serialVersionUID = 2958826407165640346L;
+
+    /**
+     * The kind of update.
+     */
+    final int kind;
+
+    /**
+     * The ID of the finish state to update or null for {@link #PURGE}.
+     */
+    final GlobalID id;
+
+    /**
+     * The place issuing the update or the dead place for {@link #PURGE}.
+     */
+    final int p;
+
+    /**
+     * The remote place involved in the update if any.
+     */
+    final int q;
+
+    /**
+     * The parent ID, child ID, or exception depending on the kind of update.
+     */
+    final Object arg;
+
+    /**
+     * The requesting place.
+     */
+    int src;
+
+    /**
+     * The request number at the requesting place or 0 if the update was not
+     * requested remotely.
+     */
+    long seq;
+
+    /**
+     * All requests of the requesting place numbered below have been
+     * acknowledged.
+     */
+    long low;
+
+    /**
+     * The outcome of the update.
+     */
+    int result;
+
+    /**
+     * Set if the outcome was computed by a previous master.
+     */
+    boolean replayed;
+
+    /**
+     * The place the request was last sent to.
+     */
+    transient int target;
+
+    /**
+     * Set if the requester waits for the outcome.
+     */
+    transient boolean sync;
+
+    /**
+     * Set once the outcome is known to the requester.
+     */
+    transient boolean done;
+
+    /**
+     * Constructs an update.
+     *
+     * @param kind
+     *          the kind of update
+     * @param id
+     *          the finish ID
+     * @param p
+     *          the place issuing the update
+     * @param q
+     *          the remote place if any
+     * @param arg
+     *          the parent ID, child ID, or exception if any
+     */
+    Op(int kind, GlobalID id, int p, int q, Object arg) {
+      this.kind = kind;
+      this.id = id;
+      this.p = p;
+      this.q = q;
+      this.arg = arg;
+    }
+  }
+
+  /**
+   * The outcomes of the updates requested by a place.
+   */
+  static final class Outcomes implements Serializable {
+    private static final long serialVersionUID = -6117689911418618658L;
+
+    /**
+     * The outcomes indexed by request number.
+     */
+    final LongIntMap results = new LongIntMap();
+
+    /**
+     * All requests numbered below have been acknowledged.
+     */
+    long low;
+
+    /**
+     * The size triggering the next pruning of acknowledged requests.
+     */
+    int limit = 64;
+
+    /**
+     * Records an outcome.
+     *
+     * @param seq
+     *          the request number
+     * @param result
+     *          the outcome
+     * @param low
+     *          the lowest unacknowledged request number
+     */
+    void record(long seq, int result, long low) {
+      if (low > this.low) {
+        this.low = low;
+      }
+      if (seq < this.low) {
+        return; // acknowledged already, will not be retried
+      }
+      results.put(seq, result);
+      if (results.size() > limit) {
+        final long l = this.low;
+        results.removeIf(s -> s < l);
+        limit = Math.max(64, 2 * results.size());
+      }
+    }
+  }
+
+  /**
+   * The replica of the states of a master.
+   */
+  static final class Replica {
+    /**
+     * The replicated states.
+     */
+    Map<GlobalID, ResilientFinishState> states = new HashMap<GlobalID, ResilientFinishState>();
+
+    /**
+     * The number of the next batch to apply or 0 until a snapshot is received.
+     */
+    long expected;
+
+    /**
+     * The batches received ahead of time.
+     */
+    final TreeMap<Long, Op[]> early = new TreeMap<Long, Op[]>();
+  }
+
+  /**
+   * A message carrying requests to a master.
+   */
+  static final class Requests implements SerializableRunnable {
+    private static final long serialVersionUID = 4880520541113823155L;
+
+    private final int src;
+    private final long low;
+    private final Op[] ops;
+
+    Requests(int src, long low, Op[] ops) {
+      this.src = src;
+      this.low = low;
+      this.ops = ops;
+    }
+
+    @Override
+    public void run() {
+      final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+      if (store != null) {
+        store.receive(src, low, ops);
+      }
+    }
+  }
+
+  /**
+   * A message carrying outcomes to a requester.
+   */
+  static final class Replies implements SerializableRunnable {
+    private static final long serialVersionUID = -2770347925567913391L;
+
+    private final long[] seqs;
+    private final int[] results;
+
+    Replies(long[] seqs, int[] results) {
+      this.seqs = seqs;
+      this.results = results;
+    }
+
+    @Override
+    public void run() {
+      final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+      if (store != null) {
+        store.replied(seqs, results);
+      }
+    }
+  }
+
+  /**
+   * A message carrying a batch of updates to a backup.
+   */
+  static final class Batch implements SerializableRunnable {
+    private static final long serialVersionUID = -7735869493493914062L;
+
+    private final int master;
+    private final long number;
+    private final Op[] ops;
+
+    Batch(int master, long number, Op[] ops) {
+      this.master = master;
+      this.number = number;
+      this.ops = ops;
+    }
+
+    @Override
+    public void run() {
+      final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+      if (store != null) {
+        store.replicate(master, number, ops);
+      }
+    }
+  }
+
+  /**
+   * A message carrying all the states of a master to a backup.
+   */
+  static final class Snapshot implements SerializableRunnable {
+    private static final long serialVersionUID = 4094424950002063339L;
+
+    private final int master;
+    private final long number;
+    private final HashMap<GlobalID, ResilientFinishState> states;
+    private final HashMap<Integer, Outcomes> outcomes;
+    private final Op[] ops;
+
+    Snapshot(int master, long number,
+        HashMap<GlobalID, ResilientFinishState> states,
+        HashMap<Integer, Outcomes> outcomes, Op[] ops) {
+      this.master = master;
+      this.number = number;
+      this.states = states;
+      this.outcomes = outcomes;
+      this.ops = ops;
+    }
+
+    @Override
+    public void run() {
+      final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+      if (store != null) {
+        store.restore(master, number, states, outcomes, ops);
+      }
+    }
+  }
+
+  /**
+   * A message acknowledging batches to a master.
+   */
+  static final class Ack implements SerializableRunnable {
+    private static final long serialVersionUID = 6514604934018447590L;
+
+    private final int backup;
+    private final long number;
+
+    Ack(int backup, long number) {
+      this.backup = backup;
+      this.number = number;
+    }
+
+    @Override
+    public void run() {
+      final ResilientStore store = GlobalRuntimeImpl.getRuntime().store;
+      if (store != null) {
+        store.acked(backup, number);
+      }
+    }
+  }
+
+  /**
+   * Coalesces the requests or replies bound for a place.
+   */
+  private final class Outbox {
+    private final int place;
+    private final boolean replies;
+    private ArrayList<Op> ops = new ArrayList<Op>();
+    private boolean busy;
+
+    Outbox(int place, boolean replies) {
+      this.place = place;
+      this.replies = replies;
+    }
+
+    /**
+     * Sends an update or its outcome, coalescing it with the updates posted
+     * while a previous message is being sent.
+     *
+     * @param op
+     *          the update
+     */
+    void post(Op op) {
+      synchronized (this) {
+        ops.add(op);
+        if (busy) {
+          return;
+        }
+        busy = true;
+      }
+      while (true) {
+        final ArrayList<Op> list;
+        synchronized (this) {
+          if (ops.isEmpty()) {
+            busy = false;
+            return;
+          }
+          list = ops;
+          ops = new ArrayList<Op>();
+        }
+        final SerializableRunnable f;
+        if (replies) {
+          final long[] seqs = new long[list.size()];
+          final int[] results = new int[list.size()];
+          for (int i = 0; i < seqs.length; i++) {
+            seqs[i] = list.get(i).seq;
+            results[i] = list.get(i).result;
+          }
+          f = new Replies(seqs, results);
+        } else {
+          f = new Requests(here, low(), list.toArray(new Op[list.size()]));
+        }
+        try {
+          transport.send(place, f);
+        } catch (final DeadPlaceException e) {
+          // requests are sent again when the death is processed
+        }
+      }
+    }
+  }
+
+  /**
+   * The transport.
+   */
+  private final Transport transport;
+
+  /**
+   * The place ID of this store.
+   */
+  private final int here;
+
+  /**
+   * The global runtime instance.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The states mastered by this place.
+   */
+  private final Map<GlobalID, ResilientFinishState> states = new HashMap<GlobalID, ResilientFinishState>();
+
+  /**
+   * The places whose death has been processed.
+   */
+  private final Set<Integer> dead = new HashSet<Integer>();
+
+  /**
+   * The current backup of this place or -1 if none.
+   */
+  private int backup = -1;
+
+  /**
+   * The number of the last batch or snapshot sent to the backup.
+   */
+  private long number;
+
+  /**
+   * The updates applied since the last batch.
+   */
+  private ArrayList<Op> next = new ArrayList<Op>();
+
+  /**
+   * The batches not yet acknowledged by the backup.
+   */
+  private final TreeMap<Long, ArrayList<Op>> unacked = new TreeMap<Long, ArrayList<Op>>();
+
+  /**
+   * Set while a thread is shipping batches.
+   */
+  private boolean shipping;
+
+  /**
+   * The replicas held by this place indexed by master.
+   */
+  private final Map<Integer, Replica> replicas = new HashMap<Integer, Replica>();
+
+  /**
+   * The outcomes of replicated updates indexed by requesting place.
+   */
+  private final HashMap<Integer, Outcomes> outcomes = new HashMap<Integer, Outcomes>();
+
+  /**
+   * The requests received ahead of the death of their master.
+   */
+  private ArrayList<Op> parked = new ArrayList<Op>();
+
+  /**
+   * The number of the last request issued by this place.
+   */
+  private long seq;
+
+  /**
+   * The requests of this place not yet acknowledged.
+   */
+  private final TreeMap<Long, Op> pending = new TreeMap<Long, Op>();
+
+  /**
+   * The outboxes for requests indexed by place.
+   */
+  private final Map<Integer, Outbox> requests = new ConcurrentHashMap<Integer, Outbox>();
+
+  /**
+   * The outboxes for replies indexed by place.
+   */
+  private final Map<Integer, Outbox> replies = new ConcurrentHashMap<Integer, Outbox>();
+
+  /**
+   * The finish objects blocked on this place indexed by ID.
+   */
+  private final Map<GlobalID, ResilientFinish> waiters = new ConcurrentHashMap<GlobalID, ResilientFinish>();
+
+  /**
+   * Constructs the resilient store of a place.
+   *
+   * @param runtime
+   *          the global runtime instance
+   */
+  ResilientStore(GlobalRuntimeImpl runtime) {
+    this.runtime = runtime;
+    transport = runtime.transport;
+    here = runtime.here;
+  }
+
+  /**
+   * Creates the state of a finish and registers it with its parent.
+   * <p>
+   * Returns once the state has reached the backup so that tasks of this finish
+   * never find its state missing.
+   *
+   * @param id
+   *          the finish ID
+   * @param pid
+   *          the parent finish ID if any
+   */
+  void create(GlobalID id, GlobalID pid) {
+    check(request(new Op(CREATE, id, here, here, pid), true));
+    if (pid != null) {
+      check(request(new Op(ADD_CHILD, pid, here, here, id), true));
+    }
+  }
+
+  /**
+   * Records the arrival of a task from place p.
+   *
+   * @param id
+   *          the finish ID
+   * @param p
+   *          the source place
+   */
+  void submit(GlobalID id, int p) {
+    check(request(new Op(SUBMIT, id, here, p, null), true));
+  }
+
+  /**
+   * Records the spawning of a task at place p.
+   *
+   * @param id
+   *          the finish ID
+   * @param p
+   *          the destination place
+   */
+  void spawn(GlobalID id, int p) {
+    check(request(new Op(SPAWN, id, here, p, null), true));
+  }
+
+  /**
+   * Cancels the spawning of a task at place p.
+   *
+   * @param id
+   *          the finish ID
+   * @param p
+   *          the destination place
+   */
+  void unspawn(GlobalID id, int p) {
+    check(request(new Op(UNSPAWN, id, here, p, null), false));
+  }
+
+  /**
+   * Records the termination of a task.
+   *
+   * @param id
+   *          the finish ID
+   */
+  void tell(GlobalID id) {
+    check(request(new Op(TELL, id, here, here, null), false));
+  }
+
+  /**
+   * Records an exception.
+   *
+   * @param id
+   *          the finish ID
+   * @param t
+   *          the exception
+   */
+  void addSuppressed(GlobalID id, SerializableThrowable t) {
+    check(request(new Op(EXCEPTION, id, here, here, t), true));
+  }
+
+  /**
+   * Checks whether a finish mastered by this place is complete.
+   *
+   * @param id
+   *          the finish ID
+   * @return true if the finish is complete
+   */
+  boolean isDone(GlobalID id) {
+    synchronized (this) {
+      final ResilientFinishState state = states.get(id);
+      if (state != null && !state.isDead(here)) {
+        return state.isDone();
+      }
+    }
+    throw die();
+  }
+
+  /**
+   * Removes the state of a finish mastered by this place.
+   *
+   * @param id
+   *          the finish ID
+   * @return the exceptions recorded by the finish if any
+   */
+  List<SerializableThrowable> exceptions(GlobalID id) {
+    final Op op = new Op(REMOVE, id, here, here, null);
+    op.src = here;
+    final ResilientFinishState state;
+    synchronized (this) {
+      state = states.get(id);
+      op.result = apply(op, states, null);
+      next.add(op);
+    }
+    if (op.result == ERROR) {
+      throw die();
+    }
+    flush();
+    return state.exceptions;
+  }
+
+  /**
+   * Registers a finish object to be notified when its state is complete.
+   *
+   * @param finish
+   *          the finish object
+   */
+  void addListener(ResilientFinish finish) {
+    waiters.put(finish.id, finish);
+  }
+
+  /**
+   * Deregisters a finish object.
+   *
+   * @param finish
+   *          the finish object
+   */
+  void removeListener(ResilientFinish finish) {
+    waiters.remove(finish.id);
+  }
+
+  /**
+   * Processes the death of a place.
+   * <p>
+   * Takes over the states of the dead place if this place was its backup,
+   * purges the dead place from the mastered states, replicates to a new backup
+   * if needed, and sends the requests pending at the dead place again.
+   *
+   * @param d
+   *          the dead place ID
+   */
+  void purge(int d) {
+    final Map<GlobalID, GlobalID> completed = new LinkedHashMap<GlobalID, GlobalID>();
+    final List<Op> acked = new ArrayList<Op>();
+    final List<Op> resend = new ArrayList<Op>();
+    synchronized (this) {
+      if (!dead.add(d)) {
+        return;
+      }
+      final Replica replica = replicas.remove(d);
+      final boolean promoted = replica != null && owner(d) == here;
+      if (promoted) {
+        states.putAll(replica.states);
+      }
+      final Op op = new Op(PURGE, null, d, d, null);
+      op.src = here;
+      op.result = apply(op, states, completed);
+      next.add(op);
+      if (promoted || backupOf(here) != backup) {
+        snapshot(acked);
+      }
+      final ArrayList<Op> parked = this.parked;
+      this.parked = new ArrayList<Op>();
+      for (final Op o : parked) {
+        process(o, completed);
+      }
+      for (final Op o : pending.values()) {
+        if (o.target == d) {
+          o.target = owner(o.id.home.id);
+          if (o.target == here) {
+            o.low = pending.firstKey();
+            process(o, completed);
+          } else {
+            resend.add(o);
+          }
+        }
+      }
+    }
+    reply(acked);
+    for (final Op o : resend) {
+      outbox(requests, o.target, false).post(o);
+    }
+    done(completed);
+    flush();
+  }
+
+  /**
+   * Applies an update at the master of the state and returns its outcome.
+   * <p>
+   * Blocks until the master has replicated a synchronous remote update or a
+   * finish creation.
+   *
+   * @param op
+   *          the update
+   * @param sync
+   *          whether to wait for the outcome of a remote update
+   * @return the outcome
+   */
+  private int request(Op op, boolean sync) {
+    final Map<GlobalID, GlobalID> completed = new LinkedHashMap<GlobalID, GlobalID>();
+    final int owner;
+    op.src = here;
+    synchronized (this) {
+      owner = owner(op.id.home.id);
+      if (owner == here) {
+        op.sync = op.kind == CREATE;
+        op.result = apply(op, states, completed);
+        next.add(op);
+      } else {
+        op.sync = sync;
+        op.seq = ++seq;
+        op.target = owner;
+        pending.put(op.seq, op);
+      }
+    }
+    if (owner == here) {
+      done(completed);
+      flush();
+      if (!op.sync) {
+        return op.result;
+      }
+    } else {
+      outbox(requests, owner, false).post(op);
+      if (!op.sync) {
+        return OK;
+      }
+    }
+    synchronized (op) {
+      while (!op.done) {
+        try {
+          op.wait();
+        } catch (final InterruptedException e) {
+        }
+      }
+    }
+    return op.result;
+  }
+
+  /**
+   * Applies updates requested by a remote place.
+   *
+   * @param src
+   *          the requesting place
+   * @param low
+   *          the lowest unacknowledged request number of the requesting place
+   * @param ops
+   *          the updates
+   */
+  void receive(int src, long low, Op[] ops) {
+    final Map<GlobalID, GlobalID> completed = new LinkedHashMap<GlobalID, GlobalID>();
+    synchronized (this) {
+      for (final Op op : ops) {
+        op.low = low;
+        process(op, completed);
+      }
+    }
+    done(completed);
+    flush();
+  }
+
+  /**
+   * Applies a remote request unless already applied by a previous master.
+   * <p>
+   * Requests are parked if this place is not their master yet.
+   *
+   * @param op
+   *          the update
+   * @param completed
+   *          collects the states that completed
+   */
+  private void process(Op op, Map<GlobalID, GlobalID> completed) {
+    if (owner(op.id.home.id) != here) {
+      parked.add(op);
+      return;
+    }
+    final Outcomes o = outcomes.get(op.src);
+    final int result = o == null ? 0 : o.results.get(op.seq);
+    if (result != 0) {
+      op.result = result;
+      op.replayed = true;
+    } else {
+      op.result = apply(op, states, completed);
+    }
+    next.add(op);
+  }
+
+  /**
+   * Processes outcomes received from masters.
+   *
+   * @param seqs
+   *          the request numbers
+   * @param results
+   *          the outcomes
+   */
+  void replied(long[] seqs, int[] results) {
+    final Op[] ops = new Op[seqs.length];
+    synchronized (this) {
+      for (int i = 0; i < seqs.length; i++) {
+        ops[i] = pending.remove(seqs[i]);
+      }
+    }
+    for (int i = 0; i < ops.length; i++) {
+      if (ops[i] != null) {
+        complete(ops[i], results[i]);
+      }
+    }
+  }
+
+  /**
+   * Delivers the outcome of an update to the requesting thread.
+   *
+   * @param op
+   *          the update
+   * @param result
+   *          the outcome
+   */
+  private void complete(Op op, int result) {
+    if (op.sync) {
+      synchronized (op) {
+        op.result = result;
+        op.done = true;
+        op.notifyAll();
+      }
+    } else if (result == ERROR) {
+      throw die();
+    }
+  }
+
+  /**
+   * Replies to the requesters of replicated updates.
+   *
+   * @param ops
+   *          the updates
+   */
+  private void reply(List<Op> ops) {
+    for (final Op op : ops) {
+      if (op.src != here) {
+        outbox(replies, op.src, true).post(op);
+      } else if (op.seq > 0) {
+        replied(new long[] { op.seq }, new int[] { op.result });
+      } else if (op.sync) {
+        complete(op, op.result);
+      }
+    }
+  }
+
+  /**
+   * Ships the pending updates to the backup.
+   * <p>
+   * A single thread ships at a time and coalesces the updates applied while
+   * the previous batch is being sent.
+   */
+  private void flush() {
+    synchronized (this) {
+      if (shipping) {
+        return;
+      }
+      shipping = true;
+    }
+    while (true) {
+      final List<Op> acked = new ArrayList<Op>();
+      final boolean more;
+      final int b;
+      Batch batch = null;
+      synchronized (this) {
+        if (backupOf(here) != backup) {
+          snapshot(acked);
+        }
+        b = backup;
+        more = !next.isEmpty();
+        if (!more) {
+          shipping = false;
+        } else if (b < 0) {
+          acked.addAll(next);
+          next = new ArrayList<Op>();
+        } else {
+          batch = new Batch(here, ++number,
+              next.toArray(new Op[next.size()]));
+          unacked.put(number, next);
+          next = new ArrayList<Op>();
+        }
+      }
+      reply(acked);
+      if (batch != null) {
+        try {
+          transport.send(b, batch);
+        } catch (final DeadPlaceException e) {
+          // a snapshot is sent to the new backup when the death is processed
+        }
+      }
+      if (!more) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Sends all the mastered states to the current backup.
+   * <p>
+   * Subsumes the unacknowledged batches. Must be called while holding the lock
+   * of this store.
+   *
+   * @param acked
+   *          collects the updates to acknowledge if there is no backup
+   */
+  private void snapshot(List<Op> acked) {
+    backup = backupOf(here);
+    final ArrayList<Op> ops = new ArrayList<Op>();
+    for (final ArrayList<Op> list : unacked.values()) {
+      ops.addAll(list);
+    }
+    ops.addAll(next);
+    unacked.clear();
+    next = new ArrayList<Op>();
+    if (backup < 0) {
+      acked.addAll(ops);
+      return;
+    }
+    unacked.put(++number, ops);
+    try {
+      transport.send(backup,
+          new Snapshot(here, number,
+              new HashMap<GlobalID, ResilientFinishState>(states), outcomes,
+              ops.toArray(new Op[ops.size()])));
+    } catch (final DeadPlaceException e) {
+      // a snapshot is sent to the new backup when the death is processed
+    }
+  }
+
+  /**
+   * Processes an acknowledgment from the backup.
+   *
+   * @param from
+   *          the backup place
+   * @param n
+   *          the number of the last batch applied by the backup
+   */
+  void acked(int from, long n) {
+    final List<Op> acked = new ArrayList<Op>();
+    synchronized (this) {
+      if (from != backup) {
+        return;
+      }
+      final Iterator<ArrayList<Op>> it = unacked.headMap(n, true).values()
+          .iterator();
+      while (it.hasNext()) {
+        acked.addAll(it.next());
+        it.remove();
+      }
+    }
+    reply(acked);
+  }
+
+  /**
+   * Applies a batch of updates to the replica of a master.
+   *
+   * @param master
+   *          the master place
+   * @param n
+   *          the batch number
+   * @param ops
+   *          the updates
+   */
+  void replicate(int master, long n, Op[] ops) {
+    final long last;
+    synchronized (this) {
+      if (dead.contains(master)) {
+        return;
+      }
+      Replica replica = replicas.get(master);
+      if (replica == null) {
+        replica = new Replica();
+        replicas.put(master, replica);
+      }
+      if (replica.expected > n) {
+        return; // superseded by a snapshot
+      }
+      replica.early.put(n, ops);
+      last = drain(master, replica);
+    }
+    if (last > 0) {
+      ack(master, last);
+    }
+  }
+
+  /**
+   * Replaces the replica of a master.
+   *
+   * @param master
+   *          the master place
+   * @param n
+   *          the snapshot number
+   * @param states
+   *          the states of the master
+   * @param outcomes
+   *          the outcomes of updates known to the master
+   * @param ops
+   *          the updates of the master not yet acknowledged
+   */
+  void restore(int master, long n,
+      HashMap<GlobalID, ResilientFinishState> states,
+      HashMap<Integer, Outcomes> outcomes, Op[] ops) {
+    final long last;
+    synchronized (this) {
+      if (dead.contains(master)) {
+        return;
+      }
+      Replica replica = replicas.get(master);
+      if (replica == null) {
+        replica = new Replica();
+        replicas.put(master, replica);
+      }
+      if (replica.expected > n) {
+        return; // stale snapshot
+      }
+      replica.states = states;
+      replica.expected = n + 1;
+      replica.early.headMap(n, true).clear();
+      for (final Map.Entry<Integer, Outcomes> entry : outcomes.entrySet()) {
+        final Outcomes o = outcomes(entry.getKey());
+        final long low = entry.getValue().low;
+        entry.getValue().results
+            .forEach((seq, result) -> o.record(seq, result, low));
+      }
+      for (final Op op : ops) {
+        record(master, op);
+      }
+      last = Math.max(n, drain(master, replica));
+    }
+    ack(master, last);
+  }
+
+  /**
+   * Applies the batches received in order.
+   *
+   * @param master
+   *          the master place
+   * @param replica
+   *          the replica
+   * @return the number of the last batch applied or 0 if none
+   */
+  private long drain(int master, Replica replica) {
+    long last = 0;
+    while (replica.expected > 0 && !replica.early.isEmpty()
+        && replica.early.firstKey() == replica.expected) {
+      for (final Op op : replica.early.pollFirstEntry().getValue()) {
+        if (!op.replayed) {
+          apply(op, replica.states, null);
+        }
+        record(master, op);
+      }
+      last = replica.expected++;
+    }
+    return last;
+  }
+
+  /**
+   * Records the outcome of a replicated update.
+   *
+   * @param master
+   *          the master place
+   * @param op
+   *          the update
+   */
+  private void record(int master, Op op) {
+    if (op.src != master && op.seq > 0) {
+      outcomes(op.src).record(op.seq, op.result, op.low);
+    }
+  }
+
+  /**
+   * Returns the outcomes of the updates requested by a place.
+   *
+   * @param src
+   *          the requesting place
+   * @return the outcomes
+   */
+  private Outcomes outcomes(int src) {
+    Outcomes o = outcomes.get(src);
+    if (o == null) {
+      o = new Outcomes();
+      outcomes.put(src, o);
+    }
+    return o;
+  }
+
+  /**
+   * Acknowledges batches to a master.
+   *
+   * @param master
+   *          the master place
+   * @param n
+   *          the number of the last batch applied
+   */
+  private void ack(int master, long n) {
+    try {
+      transport.send(master, new Ack(here, n));
+    } catch (final DeadPlaceException e) {
+    }
+  }
+
+  /**
+   * Notifies the blocked finish objects and the parents of the completed
+   * states.
+   *
+   * @param completed
+   *          the completed states and their parents
+   */
+  private void done(Map<GlobalID, GlobalID> completed) {
+    for (final Map.Entry<GlobalID, GlobalID> entry : completed.entrySet()) {
+      final ResilientFinish finish = waiters.get(entry.getKey());
+      if (finish != null) {
+        synchronized (finish) {
+          finish.notifyAll();
+        }
+      }
+      if (entry.getValue() != null) {
+        request(new Op(CHILD_DONE, entry.getValue(), here, here,
+            entry.getKey()), false);
+      }
+    }
+  }
+
+  /**
+   * Returns the first unacknowledged request number of this place.
+   *
+   * @return the request number
+   */
+  private synchronized long low() {
+    return pending.isEmpty() ? seq + 1 : pending.firstKey();
+  }
+
+  /**
+   * Returns the outbox for a place, creating it if needed.
+   *
+   * @param outboxes
+   *          the outboxes
+   * @param place
+   *          the place
+   * @param replies
+   *          whether the outbox carries replies
+   * @return the outbox
+   */
+  private Outbox outbox(Map<Integer, Outbox> outboxes, int place,
+      boolean replies) {
+    return outboxes.computeIfAbsent(place, p -> new Outbox(p, replies));
+  }
+
+  /**
+   * Returns the current master of the states created by a place.
+   *
+   * @param p
+   *          the place that created the states
+   * @return the master place
+   */
+  private int owner(int p) {
+    return dead.contains(p) ? backupOf(p) : p;
+  }
+
+  /**
+   * Returns the backup of a place: the highest live place ID below its own or
+   * else the lowest live place ID above it.
+   *
+   * @param p
+   *          a place ID
+   * @return the backup or -1 if none
+   */
+  private int backupOf(int p) {
+    for (int q = p - 1; q >= 0; q--) {
+      if (!dead.contains(q)) {
+        return q;
+      }
+    }
+    final int max = runtime.maxPlace();
+    for (int q = p + 1; q < max; q++) {
+      if (!dead.contains(q)) {
+        return q;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Throws an exception if the outcome is not successful.
+   *
+   * @param result
+   *          the outcome
+   */
+  private static void check(int result) {
+    if (result == ERROR) {
+      throw die();
+    }
+    if (result < 0) {
+      throw new DeadPlaceException(new Place(-result - 1));
+    }
+  }
+
+  /**
+   * Terminates this place as it is considered dead by the rest of the world.
+   *
+   * @return never returns
+   */
+  private static DeadPlaceError die() {
+    System.exit(42);
+    return new DeadPlaceError();
+  }
+
+  /**
+   * Applies an update to a map of states.
+   *
+   * @param op
+   *          the update
+   * @param map
+   *          the states
+   * @param completed
+   *          collects the states that completed and their parents or null
+   * @return the outcome
+   */
+  private static int apply(Op op, Map<GlobalID, ResilientFinishState> map,
+      Map<GlobalID, GlobalID> completed) {
+    if (op.kind == PURGE) {
+      final Iterator<Map.Entry<GlobalID, ResilientFinishState>> it = map
+          .entrySet().iterator();
+      while (it.hasNext()) {
+        final Map.Entry<GlobalID, ResilientFinishState> entry = it.next();
+        if (entry.getValue().kill(op.p)) {
+          if (check(entry.getKey(), entry.getValue(), completed)) {
+            it.remove();
+          }
+        }
+      }
+      return OK;
+    }
+    final ResilientFinishState state = map.get(op.id);
+    if (op.kind == CREATE) {
+      map.put(op.id, new ResilientFinishState((GlobalID) op.arg, op.p));
+      return OK;
+    }
+    if (op.kind == CHILD_DONE) {
+      if (state == null) {
+        // parent has been purged already, stop propagating termination
+        return OK;
+      }
+      state.removeChild((GlobalID) op.arg);
+    } else {
+      if (state == null || state.isDead(op.p)) {
+        // finish thinks this place is dead
+        return ERROR;
+      }
+      final boolean dead = state.isDead(op.q);
+      switch (op.kind) {
+      case ADD_CHILD:
+        state.addChild((GlobalID) op.arg);
+        return OK;
+      case SUBMIT:
+        if (dead) {
+          // source place has died, refuse task but keep place alive
+          return -op.q - 1;
+        }
+        state.decr(op.q, op.p);
+        state.incr(op.p, op.p);
+        return OK;
+      case SPAWN:
+        if (dead) {
+          // destination place has died, reject task
+          return -op.q - 1;
+        }
+        state.incr(op.p, op.q);
+        return OK;
+      case UNSPAWN:
+        if (dead) {
+          // destination place has died, return
+          return OK;
+        }
+        state.decr(op.p, op.q);
+        break;
+      case TELL:
+        state.decr(op.p, op.p);
+        break;
+      case EXCEPTION:
+        if (state.exceptions == null) {
+          state.exceptions = new ArrayList<SerializableThrowable>();
+        }
+        state.exceptions.add((SerializableThrowable) op.arg);
+        return OK;
+      case REMOVE:
+        map.remove(op.id);
+        return OK;
+      }
+    }
+    if (check(op.id, state, completed)) {
+      map.remove(op.id);
+    }
+    return OK;
+  }
+
+  /**
+   * Collects a state if complete.
+   *
+   * @param id
+   *          the finish ID
+   * @param state
+   *          the state
+   * @param completed
+   *          collects the states that completed and their parents or null
+   * @return true if the state is complete and its place has died, hence the
+   *         state may be discarded
+   */
+  private static boolean check(GlobalID id, ResilientFinishState state,
+      Map<GlobalID, GlobalID> completed) {
+    if (!state.isDone()) {
+      return false;
+    }
+    if (completed != null) {
+      completed.put(id, state.pid);
+    }
+    return state.isDead(id.home.id);
+  }
+}
@@ -1,5 +1,7 @@
 package apgas.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
@@ -7,6 +9,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.KryoSerializable;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -55,24 +58,32 @@ final class SerializableThrowable implements Serializable, KryoSerializable {
     }
   }
 
+  /**
+   * Serializes the exception using Java serialization.
+   * <p>
+   * Kryo does not restore the internal state of {@link Throwable} properly,
+   * hence exceptions deserialized by Kryo cannot be serialized again.
+   */
   @Override
   public void write(Kryo kryo, Output output) {
-    final NotSerializableException e = new NotSerializableException(
-        t.getClass().getCanonicalName());
-    e.setStackTrace(t.getStackTrace());
-    kryo.writeClassAndObject(output, e);
-    try {
-      kryo.writeClassAndObject(output, t);
-    } catch (final Throwable x) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      writeObject(out);
+    } catch (final IOException e) {
+      throw new KryoException(e);
     }
+    output.writeInt(bytes.size(), true);
+    output.writeBytes(bytes.toByteArray());
   }
 
   @Override
   public void read(Kryo kryo, Input input) {
-    t = (Throwable) kryo.readClassAndObject(input);
-    try {
-      t = (Throwable) kryo.readClassAndObject(input);
-    } catch (final Throwable x) {
+    final byte[] bytes = input.readBytes(input.readInt(true));
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes))) {
+      readObject(in);
+    } catch (IOException | ClassNotFoundException e) {
+      throw new KryoException(e);
     }
   }
 }
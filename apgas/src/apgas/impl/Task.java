@@ -119,6 +119,11 @@ final class Task extends RecursiveAction
           && finish == t.finish && t.tryUnfork()) {
         t.compute();
       }
+      final Aggregator aggregator = GlobalRuntimeImpl.getRuntime().aggregator;
+      if (aggregator != null && !finish.isReleasable()) {
+        // do not let buffered tasks delay the termination of this finish
+        aggregator.flush();
+      }
       try {
         ForkJoinPool.managedBlock(finish);
       } catch (final InterruptedException e) {
@@ -0,0 +1,428 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import apgas.SerializableJob;
+import apgas.util.GlobalID;
+
+/**
+ * The {@link TreeFinish} class implements the distributed termination
+ * semantics of the finish construct for large place counts.
+ * <p>
+ * Like {@link DefaultFinish}, a dynamic finish instance is implemented by one
+ * {@link TreeFinish} object per place, identified by a {@link GlobalID}, and a
+ * remote finish object reports its task counts once its place becomes
+ * quiescent. But:
+ * <ul>
+ * <li>the report only contains the non-zero counters as (place, delta) pairs,
+ * so its size and the cost to build and apply it does not depend on the number
+ * of places;</li>
+ * <li>the report is sent to the parent of the place in a tree rooted at the
+ * home place of the finish (see {@link Config#APGAS_FINISH_ARITY}). A parent still running tasks for this finish merges the reports of
+ * its children into its own and forwards the sum once quiescent. A quiescent
+ * parent forwards reports immediately.</li>
+ * </ul>
+ * <p>
+ * Merging complete reports preserves the invariant DefaultFinish relies on: the
+ * increment for a task reaches the root no later than the decrement for the
+ * task that spawned it.
+ * <p>
+ * Selected with {@code -Dapgas.finish=apgas.impl.TreeFinish}.
+ */
+final class TreeFinish implements Serializable, Finish {
+  private static final long serialVersionUID = -2117425427036637049L;
+
+  /**
+   * The arity of the aggregation tree.
+   */
+  private static final int ARITY = Math.max(1,
+      Integer.getInteger(Config.APGAS_FINISH_ARITY, 8));
+
+  /**
+   * A factory producing {@link TreeFinish} instances.
+   */
+  static class Factory extends Finish.Factory {
+    @Override
+    TreeFinish make(Finish parent) {
+      return new TreeFinish();
+    }
+  }
+
+  /**
+   * The {@link GlobalID} instance for this finish construct.
+   * <p>
+   * Null until the finish object is first serialized.
+   */
+  GlobalID id;
+
+  /**
+   * A multi-purpose task counter.
+   * <p>
+   * This counter counts:
+   * <ul>
+   * <li>all tasks for a local finish</li>
+   * <li>places with non-zero task counts for a root finish</li>
+   * <li>local task count for a remote finish</li>
+   * </ul>
+   */
+  private transient int count;
+
+  /**
+   * Per-place count of task spawned minus count of terminated tasks.
+   * <p>
+   * For a remote finish, the counts not yet reported.
+   */
+  private transient int counts[];
+
+  /**
+   * For a remote finish, the places with counts not yet reported.
+   */
+  private transient int dirty[];
+
+  /**
+   * For a remote finish, marks the places in {@link #dirty}.
+   */
+  private transient boolean marked[];
+
+  /**
+   * For a remote finish, the number of places in {@link #dirty}.
+   */
+  private transient int size;
+
+  /**
+   * Uncaught exceptions collected by this finish construct.
+   */
+  private transient List<Throwable> exceptions;
+
+  /**
+   * Constructs a finish instance.
+   */
+  TreeFinish() {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    spawn(here);
+  }
+
+  @Override
+  public synchronized void submit(int p) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id != null && id.home.id != here) {
+      // remote finish
+      count++;
+    }
+  }
+
+  @Override
+  public synchronized void spawn(int p) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id == null || id.home.id == here) {
+      // local or root finish
+      if (counts == null) {
+        if (here == p) {
+          count++;
+          return;
+        }
+        counts = new int[GlobalRuntimeImpl.getRuntime().maxPlace()];
+        counts[here] = count;
+        count = 1;
+      }
+      if (p >= counts.length) {
+        resize(p + 1);
+      }
+      if (counts[p]++ == 0) {
+        count++;
+      }
+      if (counts[p] == 0) {
+        --count;
+      }
+    } else {
+      // remote finish
+      add(p, 1);
+    }
+  }
+
+  @Override
+  public synchronized void unspawn(int p) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id == null || id.home.id == here) {
+      // root finish
+      if (counts == null) {
+        // task must have been local
+        --count;
+      } else {
+        if (counts[p] == 0) {
+          count++;
+        }
+        if (--counts[p] == 0) {
+          --count;
+        }
+      }
+    } else {
+      // remote finish
+      add(p, -1);
+    }
+  }
+
+  @Override
+  public synchronized void tell() {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id == null || id.home.id == here) {
+      // local or root finish
+      if (counts != null) {
+        if (counts[here] == 0) {
+          count++;
+        }
+        if (--counts[here] != 0) {
+          return;
+        }
+      }
+      if (--count == 0) {
+        notifyAll();
+      }
+    } else {
+      // remote finish
+      add(here, -1);
+      if (--count == 0) {
+        report();
+      }
+    }
+  }
+
+  /**
+   * Updates the unreported counter of place p of a remote finish.
+   *
+   * @param p
+   *          a place
+   * @param delta
+   *          the increment
+   */
+  private void add(int p, int delta) {
+    if (p >= counts.length) {
+      resize(p + 1);
+    }
+    if (!marked[p]) {
+      marked[p] = true;
+      dirty[size++] = p;
+    }
+    counts[p] += delta;
+  }
+
+  /**
+   * Returns the number of places spanned by the aggregation tree.
+   *
+   * @return the number of places
+   */
+  private int span() {
+    return Math.max(counts.length, GlobalRuntimeImpl.getRuntime().maxPlace());
+  }
+
+  /**
+   * Returns the rank of place p in the aggregation tree of this finish.
+   *
+   * @param p
+   *          a place
+   * @param n
+   *          the number of places spanned by the tree
+   * @return the rank
+   */
+  private int rank(int p, int n) {
+    return (p - id.home.id + n) % n;
+  }
+
+  /**
+   * Sends the unreported counters of a remote finish to the parent place in
+   * the aggregation tree and clears them.
+   */
+  private void report() {
+    int k = 0;
+    for (int i = 0; i < size; i++) {
+      if (counts[dirty[i]] != 0) {
+        k++;
+      }
+    }
+    final int _places[] = new int[k];
+    final int _deltas[] = new int[k];
+    k = 0;
+    for (int i = 0; i < size; i++) {
+      final int p = dirty[i];
+      if (counts[p] != 0) {
+        _places[k] = p;
+        _deltas[k++] = counts[p];
+        counts[p] = 0;
+      }
+      marked[p] = false;
+    }
+    size = 0;
+    if (k == 0) {
+      // nothing to report
+      return;
+    }
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    final int n = span();
+    final int rank = rank(here, n);
+    final int parent = ((rank - 1) / ARITY + id.home.id) % n;
+    final TreeFinish that = this;
+    GlobalRuntimeImpl.getRuntime().transport.send(parent,
+        () -> that.merge(_places, _deltas, rank));
+  }
+
+  /**
+   * Applies a report from a child place.
+   * <p>
+   * A root finish applies the report to its counters. A remote finish merges
+   * the report into its unreported counters and reports them if its place is
+   * quiescent.
+   *
+   * @param _places
+   *          the places with non-zero counters
+   * @param _deltas
+   *          the counter increments
+   * @param _rank
+   *          the rank of the sending place in the aggregation tree
+   */
+  synchronized void merge(int _places[], int _deltas[], int _rank) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id.home.id == here) {
+      // root finish
+      for (int i = 0; i < _places.length; i++) {
+        final int p = _places[i];
+        if (p >= counts.length) {
+          resize(p + 1);
+        }
+        if (counts[p] != 0) {
+          --count;
+        }
+        counts[p] += _deltas[i];
+        if (counts[p] != 0) {
+          count++;
+        }
+      }
+      if (count == 0) {
+        notifyAll();
+      }
+      return;
+    }
+    if (rank(here, span()) >= _rank) {
+      // the tree changed shape as places were added, bypass it
+      final TreeFinish that = this;
+      GlobalRuntimeImpl.getRuntime().transport.send(id.home.id,
+          () -> that.merge(_places, _deltas, _rank));
+      return;
+    }
+    for (int i = 0; i < _places.length; i++) {
+      add(_places[i], _deltas[i]);
+    }
+    if (count == 0) {
+      report();
+    }
+  }
+
+  @Override
+  public synchronized void addSuppressed(Throwable exception) {
+    final int here = GlobalRuntimeImpl.getRuntime().here;
+    if (id == null || id.home.id == here) {
+      // root finish
+      if (exceptions == null) {
+        exceptions = new ArrayList<Throwable>();
+      }
+      exceptions.add(exception);
+    } else {
+      // remote finish: spawn remote task to transfer exception to root finish
+      final SerializableThrowable t = new SerializableThrowable(exception);
+      final TreeFinish that = this;
+      spawn(id.home.id);
+      new Task(this, (SerializableJob) () -> {
+        that.addSuppressed(t.t);
+      }, here).asyncAt(id.home.id);
+    }
+  }
+
+  @Override
+  public synchronized boolean isReleasable() {
+    return count == 0;
+  }
+
+  @Override
+  public synchronized List<Throwable> exceptions() {
+    return exceptions;
+  }
+
+  @Override
+  public synchronized boolean block() {
+    while (count != 0) {
+      try {
+        wait();
+      } catch (final InterruptedException e) {
+      }
+    }
+    return count == 0;
+  }
+
+  /**
+   * Reallocates the {@link #counts} array to account for larger place counts.
+   *
+   * @param min
+   *          a minimal size for the reallocation
+   */
+  private void resize(int min) {
+    final int n = Math.max(min, GlobalRuntimeImpl.getRuntime().maxPlace());
+    final int[] tmp = new int[n];
+    System.arraycopy(counts, 0, tmp, 0, counts.length);
+    counts = tmp;
+    if (marked != null) {
+      final boolean[] _marked = new boolean[n];
+      System.arraycopy(marked, 0, _marked, 0, marked.length);
+      marked = _marked;
+      final int[] _dirty = new int[n];
+      System.arraycopy(dirty, 0, _dirty, 0, size);
+      dirty = _dirty;
+    }
+  }
+
+  /**
+   * Prepares the finish object for serialization.
+   *
+   * @return this
+   */
+  public synchronized Object writeReplace() {
+    if (id == null) {
+      id = new GlobalID();
+      id.putHere(this);
+    }
+    return this;
+  }
+
+  /**
+   * Deserializes the finish object.
+   *
+   * @return the finish object
+   */
+  public Object readResolve() {
+    TreeFinish me = (TreeFinish) id.putHereIfAbsent(this);
+    if (me == null) {
+      me = this;
+    }
+    synchronized (me) {
+      final int here = GlobalRuntimeImpl.getRuntime().here;
+      if (id.home.id != here && me.counts == null) {
+        final int n = GlobalRuntimeImpl.getRuntime().maxPlace();
+        me.counts = new int[n];
+        me.dirty = new int[n];
+        me.marked = new boolean[n];
+      }
+      return me;
+    }
+  }
+}
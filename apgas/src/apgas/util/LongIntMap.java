@@ -0,0 +1,440 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * The {@link LongIntMap} class implements a sparse map from {@code long} keys
+ * to {@code int} values without boxing.
+ * <p>
+ * Keys absent from the map are mapped to zero and storing zero removes the key,
+ * hence the map behaves as a sparse vector of counters. Entries are kept in a
+ * pair of arrays indexed by open addressing with linear probing. Removal shifts
+ * subsequent entries back so no tombstones are needed.
+ * <p>
+ * The map is serialized as its entry count followed by its entries. Kryo uses
+ * variable-length encodings and writes the two halves of each key separately,
+ * which suits keys packing pairs of small {@code int} values such as place
+ * IDs. The tables are only allocated when the
+ * first entry is added so empty maps are cheap to create and ship.
+ * <p>
+ * Storing the value one makes this map usable as a set of {@code long} keys.
+ */
+public final class LongIntMap implements Serializable, KryoSerializable {
+  private static final long serialVersionUID = 3442563380796016522L;
+
+  /**
+   * The minimal capacity of the tables.
+   */
+  private static final int MIN_CAPACITY = 8;
+
+  /**
+   * The shared tables of empty maps.
+   */
+  private static final long[] NO_KEYS = new long[0];
+
+  private static final int[] NO_VALUES = new int[0];
+
+  /**
+   * The keys, zero denoting a free slot.
+   */
+  private transient long[] keys;
+
+  /**
+   * The values.
+   */
+  private transient int[] values;
+
+  /**
+   * The value associated with key zero.
+   */
+  private transient int zero;
+
+  /**
+   * The number of entries.
+   */
+  private transient int size;
+
+  /**
+   * A function to visit map entries.
+   */
+  @FunctionalInterface
+  public static interface Visitor {
+    /**
+     * The function.
+     *
+     * @param key
+     *          the key
+     * @param value
+     *          the value
+     */
+    void visit(long key, int value);
+  }
+
+  /**
+   * Constructs an empty map.
+   */
+  public LongIntMap() {
+    keys = NO_KEYS;
+    values = NO_VALUES;
+  }
+
+  /**
+   * Allocates the tables.
+   *
+   * @param capacity
+   *          the capacity (a power of two)
+   */
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+  }
+
+  /**
+   * Returns the preferred slot for a nonzero key.
+   *
+   * @param key
+   *          the key
+   * @return the slot
+   */
+  private int slot(long key) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ h >>> 32) & keys.length - 1;
+  }
+
+  /**
+   * Returns the slot holding a nonzero key or the free slot where it belongs.
+   *
+   * @param key
+   *          the key
+   * @return the slot
+   */
+  private int find(long key) {
+    final int mask = keys.length - 1;
+    int i = slot(key);
+    while (keys[i] != 0 && keys[i] != key) {
+      i = i + 1 & mask;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the number of nonzero entries.
+   *
+   * @return the entry count
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns true if all keys are mapped to zero.
+   *
+   * @return true if the map is empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the value associated with the given key.
+   *
+   * @param key
+   *          the key
+   * @return the value or zero if the key is absent
+   */
+  public int get(long key) {
+    if (key == 0) {
+      return zero;
+    }
+    if (keys.length == 0) {
+      return 0;
+    }
+    return values[find(key)];
+  }
+
+  /**
+   * Returns true if the given key is mapped to a nonzero value.
+   *
+   * @param key
+   *          the key
+   * @return true if the key is present
+   */
+  public boolean contains(long key) {
+    return get(key) != 0;
+  }
+
+  /**
+   * Associates a value with the given key.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the value, zero to remove the key
+   */
+  public void put(long key, int value) {
+    if (key == 0) {
+      if (zero == 0 && value != 0) {
+        size++;
+      } else if (zero != 0 && value == 0) {
+        size--;
+      }
+      zero = value;
+      return;
+    }
+    if (keys.length == 0) {
+      if (value == 0) {
+        return;
+      }
+      allocate(MIN_CAPACITY);
+    }
+    final int i = find(key);
+    if (keys[i] == 0) {
+      if (value == 0) {
+        return;
+      }
+      keys[i] = key;
+      values[i] = value;
+      if (++size > keys.length >> 1) {
+        rehash(keys.length << 1);
+      }
+    } else if (value == 0) {
+      removeAt(i);
+    } else {
+      values[i] = value;
+    }
+  }
+
+  /**
+   * Adds a delta to the value associated with the given key.
+   *
+   * @param key
+   *          the key
+   * @param delta
+   *          the delta
+   * @return the updated value
+   */
+  public int add(long key, int delta) {
+    final int v = get(key) + delta;
+    put(key, v);
+    return v;
+  }
+
+  /**
+   * Removes the given key.
+   *
+   * @param key
+   *          the key
+   * @return the removed value or zero if the key was absent
+   */
+  public int remove(long key) {
+    final int v = get(key);
+    if (v != 0) {
+      put(key, 0);
+    }
+    return v;
+  }
+
+  /**
+   * Removes the keys matching a predicate.
+   *
+   * @param predicate
+   *          the predicate
+   * @return the number of removed keys
+   */
+  public int removeIf(LongPredicate predicate) {
+    final long[] removed = new long[size];
+    int n = 0;
+    if (zero != 0 && predicate.test(0)) {
+      removed[n++] = 0;
+    }
+    for (final long key : keys) {
+      if (key != 0 && predicate.test(key)) {
+        removed[n++] = key;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      put(removed[i], 0);
+    }
+    return n;
+  }
+
+  /**
+   * Visits all nonzero entries.
+   *
+   * @param visitor
+   *          the function to apply to each entry
+   */
+  public void forEach(Visitor visitor) {
+    if (zero != 0) {
+      visitor.visit(0, zero);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        visitor.visit(keys[i], values[i]);
+      }
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    if (keys.length > MIN_CAPACITY) {
+      keys = NO_KEYS;
+      values = NO_VALUES;
+    } else {
+      Arrays.fill(keys, 0);
+      Arrays.fill(values, 0);
+    }
+    zero = 0;
+    size = 0;
+  }
+
+  /**
+   * Frees a slot by shifting back the entries of its probe sequence.
+   *
+   * @param i
+   *          the slot to free
+   */
+  private void removeAt(int i) {
+    final int mask = keys.length - 1;
+    int last = i;
+    for (int j = i + 1 & mask; keys[j] != 0; j = j + 1 & mask) {
+      final int s = slot(keys[j]);
+      // entry j may stay if its preferred slot is cyclically in (last, j]
+      if (last <= j ? last < s && s <= j : last < s || s <= j) {
+        continue;
+      }
+      keys[last] = keys[j];
+      values[last] = values[j];
+      last = j;
+    }
+    keys[last] = 0;
+    values[last] = 0;
+    size--;
+  }
+
+  /**
+   * Reallocates the tables and reinserts the entries.
+   *
+   * @param capacity
+   *          the new capacity (a power of two)
+   */
+  private void rehash(int capacity) {
+    final long[] k = keys;
+    final int[] v = values;
+    allocate(capacity);
+    for (int i = 0; i < k.length; i++) {
+      if (k[i] != 0) {
+        final int j = find(k[i]);
+        keys[j] = k[i];
+        values[j] = v[i];
+      }
+    }
+  }
+
+  /**
+   * Empties this map and allocates tables suitable for the given number of
+   * entries.
+   *
+   * @param size
+   *          the number of entries
+   */
+  private void reserve(int size) {
+    this.zero = 0;
+    this.size = 0;
+    if (size == 0) {
+      keys = NO_KEYS;
+      values = NO_VALUES;
+      return;
+    }
+    int capacity = MIN_CAPACITY;
+    while (capacity >> 1 < size) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.writeInt(size);
+    if (zero != 0) {
+      out.writeLong(0);
+      out.writeInt(zero);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        out.writeLong(keys[i]);
+        out.writeInt(values[i]);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException {
+    final int n = in.readInt();
+    reserve(n);
+    for (int i = 0; i < n; i++) {
+      final long key = in.readLong();
+      put(key, in.readInt());
+    }
+  }
+
+  @Override
+  public void write(Kryo kryo, Output output) {
+    output.writeInt(size, true);
+    if (zero != 0) {
+      writeKey(output, 0);
+      output.writeInt(zero, false);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        writeKey(output, keys[i]);
+        output.writeInt(values[i], false);
+      }
+    }
+  }
+
+  @Override
+  public void read(Kryo kryo, Input input) {
+    final int n = input.readInt(true);
+    reserve(n);
+    for (int i = 0; i < n; i++) {
+      final long key = (long) input.readInt(true) << 32
+          | input.readInt(true) & 0xFFFFFFFFL;
+      put(key, input.readInt(false));
+    }
+  }
+
+  /**
+   * Writes the high and low halves of a key as variable-length integers.
+   *
+   * @param output
+   *          the output
+   * @param key
+   *          the key
+   */
+  private static void writeKey(Output output, long key) {
+    output.writeInt((int) (key >>> 32), true);
+    output.writeInt((int) key, true);
+  }
+}
@@ -0,0 +1,434 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.util;
+
+import static apgas.Constructs.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+
+import apgas.Place;
+
+/**
+ * The {@link Team} class implements collective operations over a group of
+ * places.
+ * <p>
+ * A team is a place local object. Collective operations are invoked by one
+ * task at each member place, in the same order at all places. They return once
+ * the local part of the operation is complete. Members are numbered by their
+ * rank in the collection of places used to construct the team.
+ * <p>
+ * All operations use binomial trees rooted at the given member or member 0 and
+ * complete in a logarithmic number of steps. Barrier and allreduce combine a
+ * reduction with a broadcast. Messages between members are uncounted since
+ * each message is awaited by a member task.
+ */
+public final class Team extends PlaceLocalObject {
+  private static final long serialVersionUID = 7518091427774168859L;
+
+  /**
+   * The IDs of the member places indexed by rank.
+   */
+  private final int[] members;
+
+  /**
+   * The rank of this place.
+   */
+  private final int rank;
+
+  /**
+   * The sequence number of the current collective operation at this place.
+   */
+  private long seq;
+
+  /**
+   * The messages received and not yet consumed indexed by sequence number and
+   * sender rank.
+   */
+  private final HashMap<Long, Object> mailbox = new HashMap<Long, Object>();
+
+  private Team(int[] members) {
+    this.members = members;
+    int rank = -1;
+    for (int i = 0; i < members.length; i++) {
+      if (members[i] == here().id) {
+        rank = i;
+      }
+    }
+    this.rank = rank;
+  }
+
+  /**
+   * Constructs a {@link Team} instance.
+   * <p>
+   * The current place does not have to be a member of the team but only
+   * members can take part in collective operations.
+   *
+   * @param places
+   *          a collection of places with no repetition
+   * @return the team
+   */
+  public static Team make(Collection<? extends Place> places) {
+    final int[] members = new int[places.size()];
+    int i = 0;
+    for (final Place p : places) {
+      members[i++] = p.id;
+    }
+    final ArrayList<Place> all = new ArrayList<Place>(places);
+    if (!all.contains(here())) {
+      all.add(here());
+    }
+    return PlaceLocalObject.make(all, () -> new Team(members));
+  }
+
+  /**
+   * Returns the number of members of this team.
+   *
+   * @return the size of the team
+   */
+  public int size() {
+    return members.length;
+  }
+
+  /**
+   * Returns the rank of the current place in this team.
+   *
+   * @return the rank
+   */
+  public int rank() {
+    return rank;
+  }
+
+  /**
+   * Returns the member place with the given rank.
+   *
+   * @param rank
+   *          a rank
+   * @return the place
+   */
+  public Place place(int rank) {
+    return new Place(members[rank]);
+  }
+
+  /**
+   * Blocks until all members have entered the barrier.
+   */
+  public void barrier() {
+    final long seq = next();
+    final int n = members.length;
+    final int r = rank;
+    for (int m = 1; m < span(r); m <<= 1) {
+      if (r + m < n) {
+        receive(seq, r + m);
+      }
+    }
+    if (r != 0) {
+      send(parent(r), seq, null);
+      receive(seq, parent(r));
+    }
+    for (int m = span(r) >> 1; m > 0; m >>= 1) {
+      if (r + m < n) {
+        send(r + m, seq, null);
+      }
+    }
+  }
+
+  /**
+   * Broadcasts a value from the root to all members.
+   *
+   * @param <T>
+   *          the type of the value
+   * @param root
+   *          the rank of the root
+   * @param value
+   *          the value to broadcast (ignored except at the root)
+   * @return the value of the root
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Serializable> T broadcast(int root, T value) {
+    final int r = relative(root);
+    final long seq = next();
+    final int n = members.length;
+    if (r != 0) {
+      value = (T) receive(seq, absolute(root, parent(r)));
+    }
+    for (int m = span(r) >> 1; m > 0; m >>= 1) {
+      if (r + m < n) {
+        send(absolute(root, r + m), seq, value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Reduces the values of all members to the root.
+   *
+   * @param <T>
+   *          the type of the values
+   * @param root
+   *          the rank of the root
+   * @param value
+   *          the value of this member
+   * @param op
+   *          an associative and commutative operator
+   * @return the reduced value at the root, null elsewhere
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Serializable> T reduce(int root, T value,
+      BinaryOperator<T> op) {
+    final int r = relative(root);
+    final long seq = next();
+    final int n = members.length;
+    for (int m = 1; m < span(r); m <<= 1) {
+      if (r + m < n) {
+        value = op.apply(value, (T) receive(seq, absolute(root, r + m)));
+      }
+    }
+    if (r == 0) {
+      return value;
+    }
+    send(absolute(root, parent(r)), seq, value);
+    return null;
+  }
+
+  /**
+   * Reduces the values of all members and returns the result to all members.
+   *
+   * @param <T>
+   *          the type of the values
+   * @param value
+   *          the value of this member
+   * @param op
+   *          an associative and commutative operator
+   * @return the reduced value
+   */
+  public <T extends Serializable> T allreduce(T value, BinaryOperator<T> op) {
+    return broadcast(0, reduce(0, value, op));
+  }
+
+  /**
+   * Gathers the values of all members at the root.
+   *
+   * @param <T>
+   *          the type of the values
+   * @param root
+   *          the rank of the root
+   * @param value
+   *          the value of this member
+   * @return the values indexed by rank at the root, null elsewhere
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Serializable> List<T> gather(int root, T value) {
+    final int r = relative(root);
+    final long seq = next();
+    final int n = members.length;
+    // collect the values of the subtree indexed by relative rank
+    final Object[] values = new Object[Math.min(span(r), n - r)];
+    values[0] = value;
+    for (int m = 1; m < values.length; m <<= 1) {
+      final Object[] child = (Object[]) receive(seq, absolute(root, r + m));
+      System.arraycopy(child, 0, values, m, child.length);
+    }
+    if (r != 0) {
+      send(absolute(root, parent(r)), seq, values);
+      return null;
+    }
+    final ArrayList<T> result = new ArrayList<T>(n);
+    for (int i = 0; i < n; i++) {
+      result.add((T) values[(i - root + n) % n]);
+    }
+    return result;
+  }
+
+  /**
+   * Scatters values from the root to all members.
+   *
+   * @param <T>
+   *          the type of the values
+   * @param root
+   *          the rank of the root
+   * @param values
+   *          the values indexed by rank (ignored except at the root)
+   * @return the value for this member
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Serializable> T scatter(int root, List<? extends T> values) {
+    final int r = relative(root);
+    final long seq = next();
+    final int n = members.length;
+    // the values of the subtree indexed by relative rank
+    Object[] local;
+    if (r == 0) {
+      if (values.size() != n) {
+        throw new IllegalArgumentException(
+            "Expected " + n + " values, got " + values.size());
+      }
+      local = new Object[n];
+      for (int i = 0; i < n; i++) {
+        local[i] = values.get(absolute(root, i));
+      }
+    } else {
+      local = (Object[]) receive(seq, absolute(root, parent(r)));
+    }
+    for (int m = span(r) >> 1; m > 0; m >>= 1) {
+      if (m < local.length) {
+        send(absolute(root, r + m), seq,
+            Arrays.copyOfRange(local, m, Math.min(2 * m, local.length)));
+        local = Arrays.copyOf(local, m);
+      }
+    }
+    return (T) local[0];
+  }
+
+  /**
+   * Returns the sequence number of the next collective operation.
+   *
+   * @return the sequence number
+   * @throws BadPlaceException
+   *           if the current place is not a member of this team
+   */
+  private synchronized long next() {
+    if (rank < 0) {
+      throw new BadPlaceException();
+    }
+    return seq++;
+  }
+
+  /**
+   * Returns the rank of this place relative to the given root.
+   *
+   * @param root
+   *          the rank of the root
+   * @return the relative rank
+   */
+  private int relative(int root) {
+    if (root < 0 || root >= members.length) {
+      throw new IllegalArgumentException("Invalid root: " + root);
+    }
+    return (rank - root + members.length) % members.length;
+  }
+
+  /**
+   * Converts a relative rank into a rank.
+   *
+   * @param root
+   *          the rank of the root
+   * @param r
+   *          a rank relative to the root
+   * @return the rank
+   */
+  private int absolute(int root, int r) {
+    return (r + root) % members.length;
+  }
+
+  /**
+   * Returns the parent of a relative rank in the binomial tree.
+   *
+   * @param r
+   *          a nonzero relative rank
+   * @return the relative rank of the parent
+   */
+  private static int parent(int r) {
+    return r & (r - 1);
+  }
+
+  /**
+   * Returns the span of the subtree of a relative rank in the binomial tree.
+   * <p>
+   * The subtree of r contains the relative ranks in [r, r + span(r)) less than
+   * the size of the team and its children are r + m for m a power of two less
+   * than span(r).
+   *
+   * @param r
+   *          a relative rank
+   * @return the span of the subtree
+   */
+  private int span(int r) {
+    if (r != 0) {
+      return Integer.lowestOneBit(r);
+    }
+    return members.length <= 1 ? 1
+        : Integer.highestOneBit(members.length - 1) << 1;
+  }
+
+  /**
+   * Sends a message to a member.
+   *
+   * @param to
+   *          the rank of the destination
+   * @param seq
+   *          the sequence number of the operation
+   * @param value
+   *          the message
+   */
+  private void send(int to, long seq, Object value) {
+    final Team team = this;
+    final long key = seq << 32 | rank;
+    uncountedAsyncAt(new Place(members[to]), () -> team.deliver(key, value));
+  }
+
+  /**
+   * Stores a message and wakes up the receiver.
+   *
+   * @param key
+   *          the sequence number and sender rank
+   * @param value
+   *          the message
+   */
+  private synchronized void deliver(long key, Object value) {
+    mailbox.put(key, value);
+    notifyAll();
+  }
+
+  /**
+   * Waits for a message from a member.
+   *
+   * @param seq
+   *          the sequence number of the operation
+   * @param from
+   *          the rank of the sender
+   * @return the message
+   */
+  private Object receive(long seq, int from) {
+    final long key = seq << 32 | from;
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean isReleasable() {
+          synchronized (Team.this) {
+            return mailbox.containsKey(key);
+          }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+          synchronized (Team.this) {
+            while (!mailbox.containsKey(key)) {
+              Team.this.wait();
+            }
+          }
+          return true;
+        }
+      });
+    } catch (final InterruptedException e) {
+    }
+    synchronized (this) {
+      return mailbox.remove(key);
+    }
+  }
+}
@@ -19,26 +19,36 @@ import java.util.List;
 import java.util.Stack;
 
 import polyglot.ast.Assign;
+import polyglot.ast.Binary;
 import polyglot.ast.Block;
+import polyglot.ast.Branch;
 import polyglot.ast.Call;
 import polyglot.ast.CanonicalTypeNode;
 import polyglot.ast.Catch;
+import polyglot.ast.Conditional;
+import polyglot.ast.Empty;
 import polyglot.ast.Eval;
 import polyglot.ast.Expr;
 import polyglot.ast.Field;
 import polyglot.ast.FieldAssign;
+import polyglot.ast.FlagsNode;
 import polyglot.ast.FloatLit;
 import polyglot.ast.For;
 import polyglot.ast.Formal;
 import polyglot.ast.Id;
+import polyglot.ast.If;
 import polyglot.ast.IntLit;
 import polyglot.ast.IntLit_c;
+import polyglot.ast.Lit;
 import polyglot.ast.Local;
 import polyglot.ast.LocalAssign;
 import polyglot.ast.LocalDecl;
+import polyglot.ast.Loop;
 import polyglot.ast.Node;
 import polyglot.ast.NodeFactory;
+import polyglot.ast.Receiver;
 import polyglot.ast.Return;
+import polyglot.ast.Special;
 import polyglot.ast.Stmt;
 import polyglot.ast.Throw;
 import polyglot.ast.Try;
@@ -173,6 +183,8 @@ public class Lowerer extends ContextVisitor {
     private static final Name ENTER_ATOMIC = Name.make("enterAtomic");
     private static final Name ENSURE_NOT_IN_ATOMIC = Name.make("ensureNotInAtomic");
     private static final Name EXIT_ATOMIC = Name.make("exitAtomic");
+    private static final Name START_OPTIMISTIC_ATOMIC = Name.make("startOptimisticAtomic");
+    private static final Name VALIDATE_OPTIMISTIC_ATOMIC = Name.make("validateOptimisticAtomic");
     
     private static final Name START_FINISH = Name.make("startFinish");
     private static final Name PUSH_EXCEPTION = Name.make("pushException");
@@ -863,11 +875,176 @@ public class Lowerer extends ContextVisitor {
     }
 
     // atomic S; -> try { Runtime.enterAtomic(); S } finally { Runtime.exitAtomic(); }
+    // or, if S only accesses fields of an object k (see AtomicKeyFinder),
+    // atomic S; -> try { Runtime.enterAtomic(k); S } finally { Runtime.exitAtomic(k); }
+    // and if S also only reads them, to store the results in local vars,
+    // atomic S; -> var stamp:Long = Runtime.startOptimisticAtomic(k);
+    //              while (true) {
+    //                  if (stamp == -1L) { try { Runtime.enterAtomic(k); S } finally { Runtime.exitAtomic(k); } break; }
+    //                  S
+    //                  stamp = Runtime.validateOptimisticAtomic(k, stamp);
+    //                  if (stamp == -2L) break;
+    //              }
     private Stmt visitAtomic(Atomic a) throws SemanticException {
         Position pos = a.position();
-        Block tryBlock = nf.Block(pos, nf.Eval(pos, call(pos, ENTER_ATOMIC, ts.Void())), a.body());
-        Block finallyBlock = nf.Block(pos, nf.Eval(pos, call(pos, EXIT_ATOMIC, ts.Void())));
-        return nf.Try(pos, tryBlock, Collections.<Catch>emptyList(), finallyBlock);
+        AtomicKeyFinder finder = new AtomicKeyFinder(ts);
+        a.body().visit(finder);
+        Expr key = finder.key();
+        if (key == null) {
+            Block tryBlock = nf.Block(pos, nf.Eval(pos, call(pos, ENTER_ATOMIC, ts.Void())), a.body());
+            Block finallyBlock = nf.Block(pos, nf.Eval(pos, call(pos, EXIT_ATOMIC, ts.Void())));
+            return nf.Try(pos, tryBlock, Collections.<Catch>emptyList(), finallyBlock);
+        }
+        Block tryBlock = nf.Block(pos, nf.Eval(pos, call(pos, ENTER_ATOMIC, key, ts.Void())), a.body());
+        Block finallyBlock = nf.Block(pos, nf.Eval(pos, call(pos, EXIT_ATOMIC, key, ts.Void())));
+        Stmt locked = nf.Try(pos, tryBlock, Collections.<Catch>emptyList(), finallyBlock);
+        if (!finder.isOptimistic()) {
+            return locked;
+        }
+
+        Type type = ts.Long();
+        Name varName = Name.makeFresh("stamp");
+        LocalDef li = ts.localDef(pos, Flags.NONE, Types.ref(type), varName);
+        Id varId = nf.Id(pos, varName);
+        LocalDecl ld = nf.LocalDecl(pos, nf.FlagsNode(pos, Flags.NONE), nf.CanonicalTypeNode(pos, type), varId,
+                                    call(pos, START_OPTIMISTIC_ATOMIC, key, type)).localDef(li).type(nf.CanonicalTypeNode(pos, type));
+        Local stamp = (Local) nf.Local(pos, varId).localInstance(li.asInstance()).type(type);
+        Expr validate = synth.makeStaticCall(pos, ts.Runtime(), VALIDATE_OPTIMISTIC_ATOMIC, Arrays.<Expr>asList(key, stamp), type, context());
+        Expr giveUp = nf.Binary(pos, stamp, Binary.EQ, nf.IntLit(pos, IntLit.LONG, -1L).type(type)).type(ts.Boolean());
+        Expr valid = nf.Binary(pos, stamp, Binary.EQ, nf.IntLit(pos, IntLit.LONG, -2L).type(type)).type(ts.Boolean());
+        Block loop = nf.Block(pos,
+                nf.If(pos, giveUp, nf.Block(pos, locked, nf.Break(pos))),
+                a.body(),
+                nf.Eval(pos, nf.LocalAssign(pos, stamp, Assign.ASSIGN, validate).type(type)),
+                nf.If(pos, valid, nf.Break(pos)));
+        return nf.Block(pos, ld, nf.While(pos, getLiteral(pos, ts.Boolean(), true), loop));
+    }
+
+    /**
+     * Finds the object whose fields an atomic section accesses, if the section could
+     * not access any other shared state: every field it accesses belongs to the same
+     * object, denoted by this or by a final local, and it does nothing else than
+     * computing with locals, literals and the operators of primitive types.  Any other
+     * section that accesses the fields of that object is then either keyed by the same
+     * object or unkeyed, so when X10_ATOMIC_STRIPES is set, a keyed section may lock the
+     * stripe of its key instead of the whole place.
+     *
+     * A keyed section is also optimistic if it only reads the fields, assigns the results
+     * to local vars that it does not read, and cannot throw or loop.  It is then safe to
+     * run it without the lock and run it again if a concurrent section invalidated it.
+     * The assignments must not be conditional, since a run that took another branch than
+     * the valid run would leave its assignments behind.
+     */
+    private static final class AtomicKeyFinder extends NodeVisitor {
+        private final TypeSystem ts;
+        private Expr key;
+        private boolean keyed = true;
+        private boolean optimistic = true;
+        private int conditional = 0; // the number of enclosing branches
+        private final List<LocalDef> assigned = new ArrayList<LocalDef>();
+        private final List<LocalDef> read = new ArrayList<LocalDef>();
+
+        AtomicKeyFinder(TypeSystem ts) {
+            this.ts = ts;
+        }
+
+        /** The key of the section, or null if it must lock the whole place. */
+        Expr key() {
+            return keyed ? key : null;
+        }
+
+        boolean isOptimistic() {
+            if (!optimistic) return false;
+            for (LocalDef def : assigned) {
+                if (read.contains(def)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Node override(Node parent, Node n) {
+            if (!keyed) {
+                return n; // give up
+            }
+            if (n instanceof Field) {
+                Field f = (Field) n;
+                receiver(f.target(), f.fieldInstance().flags());
+            } else if (n instanceof FieldAssign) {
+                FieldAssign fa = (FieldAssign) n;
+                receiver(fa.target(), fa.fieldInstance().flags());
+                optimistic = false;
+            } else if (n instanceof LocalAssign) {
+                LocalAssign la = (LocalAssign) n;
+                LocalDef def = la.local().localInstance().def();
+                if (la.operator() != Assign.ASSIGN || def.flags().isFinal() || conditional > 0) optimistic = false;
+                assigned.add(def);
+                la.right().visit(this);
+                return n;
+            } else if (n instanceof Local) {
+                read.add(((Local) n).localInstance().def());
+            } else if (n instanceof Unary) {
+                Unary u = (Unary) n;
+                primitive(u.expr().type());
+                Unary.Operator op = u.operator();
+                if (op == Unary.PRE_INC || op == Unary.PRE_DEC || op == Unary.POST_INC || op == Unary.POST_DEC) optimistic = false;
+            } else if (n instanceof Binary) {
+                Binary b = (Binary) n;
+                primitive(b.left().type());
+                primitive(b.right().type());
+                primitive(b.type());
+                if (b.operator() == Binary.DIV || b.operator() == Binary.MOD) optimistic = false;
+                if (b.operator() == Binary.COND_AND || b.operator() == Binary.COND_OR) return branches(n);
+            } else if (n instanceof If || n instanceof Conditional) {
+                return branches(n);
+            } else if (n instanceof Return || n instanceof Throw || n instanceof Branch || n instanceof Loop || n instanceof LocalDecl) {
+                optimistic = false;
+            } else if (!(n instanceof Block || n instanceof Eval || n instanceof Empty || n instanceof Lit
+                         || n instanceof Special || n instanceof Id || n instanceof TypeNode || n instanceof FlagsNode)) {
+                keyed = false;
+            }
+            return null;
+        }
+
+        private Node branches(Node n) {
+            conditional++;
+            n.del().visitChildren(this);
+            conditional--;
+            return n;
+        }
+
+        private void primitive(Type t) {
+            if (!ts.isNumeric(t) && !ts.isBoolean(t) && !ts.isChar(t)) keyed = false;
+        }
+
+        private void receiver(Receiver target, Flags flags) {
+            if (flags.isStatic() || !(target instanceof Expr)) {
+                keyed = false;
+                return;
+            }
+            Expr e = (Expr) target;
+            if (e instanceof Special) {
+                Special s = (Special) e;
+                if (s.kind() != Special.THIS || s.qualifier() != null) keyed = false;
+            } else if (e instanceof Local) {
+                if (!((Local) e).localInstance().flags().isFinal()) keyed = false;
+            } else {
+                keyed = false;
+            }
+            if (!keyed) return;
+            Type t = Types.baseType(e.type());
+            if (!t.isClass() || ts.isStructType(t) || ts.isInterfaceType(t) || ts.isParameterType(t)) {
+                keyed = false;
+            } else if (key == null) {
+                key = e;
+            } else if (!sameVariable(key, e)) {
+                keyed = false;
+            }
+        }
+
+        private static boolean sameVariable(Expr a, Expr b) {
+            if (a instanceof Special && b instanceof Special) return true; // both unqualified this
+            return a instanceof Local && b instanceof Local && ((Local) a).localInstance().def() == ((Local) b).localInstance().def();
+        }
     }
 
     private Stmt wrap(Position pos, Stmt s) {
@@ -889,17 +1066,24 @@ public class Lowerer extends ContextVisitor {
     //    try { Runtime.enterAtomic();
     //          while (true) { if (E1) { S1; break; } if (E2) { S2; break; } ... Runtime.awaitAtomic(); }
     //    finally { Runtime.exitAtomic(); }
+    // with the key of the Ei and Si, if any, passed to enterAtomic, awaitAtomic and exitAtomic
     private Stmt visitWhen(When w) throws SemanticException {
         Position pos = w.position();
+        AtomicKeyFinder finder = new AtomicKeyFinder(ts);
+        w.expr().visit(finder);
+        w.stmt().visit(finder);
         Block body = nf.Block(pos, nf.If(pos, w.expr(), wrap(pos, w.stmt())));
         for(int i=0; i<w.stmts().size(); i++) {
+            ((Expr) w.exprs().get(i)).visit(finder);
+            ((Stmt) w.stmts().get(i)).visit(finder);
             body = body.append(nf.If(pos, (Expr) w.exprs().get(i), wrap(pos, (Stmt) w.stmts().get(i))));
         }
-        body = body.append(nf.Eval(pos, call(pos, AWAIT_ATOMIC, ts.Void())));
+        Expr key = finder.key();
+        body = body.append(nf.Eval(pos, key == null ? call(pos, AWAIT_ATOMIC, ts.Void()) : call(pos, AWAIT_ATOMIC, key, ts.Void())));
         Block tryBlock = nf.Block(pos, 
-        		nf.Eval(pos, call(pos, ENTER_ATOMIC, ts.Void())),
+        		nf.Eval(pos, key == null ? call(pos, ENTER_ATOMIC, ts.Void()) : call(pos, ENTER_ATOMIC, key, ts.Void())),
         		nf.While(pos, getLiteral(pos, ts.Boolean(), true), body));
-        Block finallyBlock = nf.Block(pos, nf.Eval(pos, call(pos, EXIT_ATOMIC, ts.Void())));
+        Block finallyBlock = nf.Block(pos, nf.Eval(pos, key == null ? call(pos, EXIT_ATOMIC, ts.Void()) : call(pos, EXIT_ATOMIC, key, ts.Void())));
         return nf.Block(pos, 
         		nf.Eval(pos, call(pos, ENSURE_NOT_IN_ATOMIC, ts.Void())),
         		nf.Try(pos, 
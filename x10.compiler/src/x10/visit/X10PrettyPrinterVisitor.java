@@ -268,6 +268,8 @@ public class X10PrettyPrinterVisitor extends X10DelegatingVisitor {
 
     private static final QName ASYNC_CLOSURE = QName.make("x10.compiler.AsyncClosure");
     private static final QName REMOTE_INVOCATION = QName.make("x10.compiler.RemoteInvocation");
+    private static final QName NO_ALIASING = QName.make("x10.compiler.NoAliasing");
+    private static final String X10_SERIALIZATION_NO_ALIASING = "x10.serialization.NoAliasing";
 
     private static int nextId_;
 
@@ -527,6 +529,11 @@ public class X10PrettyPrinterVisitor extends X10DelegatingVisitor {
         w.begin(0);
         w.write("@"+X10_RUNTIME_IMPL_JAVA_X10GENERATED);
         w.allowBreak(0);
+        // closures of @NoAliasing asyncs are serialized without identity tracking
+        if (AnnotationUtils.hasAnnotation(xts, n, NO_ALIASING)) {
+            w.write("@"+X10_SERIALIZATION_NO_ALIASING);
+            w.allowBreak(0);
+        }
         if (flags.isInterface()) {
             w.write(flags.clearInterface().clearAbstract().translateJava());
         } else {
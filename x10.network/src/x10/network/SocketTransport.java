@@ -26,10 +26,13 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -52,6 +55,8 @@ public class SocketTransport {
 	public static final String X10_NOWRITEBUFFER = "X10_NOWRITEBUFFER"; // turns off non-blocking sockets
 	public static final String X10_SOCKET_TIMEOUT = "X10_SOCKET_TIMEOUT"; // milliseconds, used to set socket.soTimeout()
 	public static final String X10_CONNECTION_TIMEOUT = "X10_CONNECTION_TIMEOUT"; // milliseconds, time allowed before we declare a place dead while attempting initial communication
+	public static final String X10_IO_THREADS = "X10_IO_THREADS"; // number of dedicated threads reading from the links to other places.  0 (default) reads in the probing thread
+	public static final String X10_IO_QUEUE_SIZE = "X10_IO_QUEUE_SIZE"; // number of messages read by the I/O threads that may wait for a probe before the I/O threads stop reading
 	public static final String UTF8 = "UTF-8";
 	private static final String DEAD = "DEAD";
 	public static enum PROBE_TYPE {ACCEPT, ACCEPTORWRITE, ALL};
@@ -61,7 +66,7 @@ public class SocketTransport {
 	    private MSGTYPE(int value) {this.value = value;}
 	    public int getValue(){return this.value;}
 	}; // note that GET_PLACE_REQUEST does not overlap with CTRL_MSG_TYPE
-	public static enum CALLBACKID {closureMessageID, simpleAsyncMessageID, getID, getCompletedID, putID};
+	public static enum CALLBACKID {closureMessageID, simpleAsyncMessageID, getID, getCompletedID, putID, remoteOpID, teamMessageID};
 	public static enum RETURNCODE { // see matching list of error codes "x10rt_error" in x10rt_types.h 
 	    X10RT_ERR_OK,   /* No error */
 	    X10RT_ERR_MEM,   /* Out of memory error */
@@ -71,6 +76,13 @@ public class SocketTransport {
 	    X10RT_ERR_OTHER /* Other unclassified runtime error */
 	};
 	
+	private static final int HEADER_SIZE = 12; // type, callback id, length
+	private static final int MAX_GATHER = 64; // most buffers handed to a single gathering write
+	private static final int STAGING_SIZE = 64*1024; // queued messages up to this size are coalesced into the staging buffer
+	
+	// Outgoing messages are written straight to the socket when the link is idle.  Otherwise they are
+	// queued on the lock-free outbound queue, and whichever thread holds the writeLock drains the queue,
+	// writing many messages at once with a single gathering write.
 	private class CommunicationLink {
     	private CommunicationLink(SocketChannel sc, int placeId, String portInfo) {
 			super();
@@ -84,7 +96,12 @@ public class SocketTransport {
     	final String portInfo;
 		final SocketChannel sc;
 		final ReentrantLock writeLock;
-		LinkedList<ByteBuffer> pendingWrites;
+		final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>(); // framed messages waiting for the writeLock holder
+		// the fields below are guarded by the writeLock
+		ByteBuffer[] pendingWrites; // the current batch, partially written
+		int pendingOffset; // the first buffer of the batch not yet fully written
+		ByteBuffer staging; // direct buffer the small queued messages are copied into, allocated on first use
+		boolean writeInterest; // true if registered on the selector for OP_WRITE
     }
 	
 	public class Message {
@@ -113,8 +130,23 @@ public class SocketTransport {
 	private int connectionTimeout = 30000;
 	private volatile boolean shuttingDown = false;
 	private volatile boolean allowBlockingProbe = true;
+	private IOThread[] ioThreads = null; // null unless X10_IO_THREADS is set
+	private ArrayBlockingQueue<Message> inbound = null; // messages read by the I/O threads, waiting for a probe
+	private volatile boolean probeBlocked = false; // true while a probe blocks on the selector, and must be woken up by the I/O threads
 	private byte[] dataStoreLocation = null;
 	private final NetworkTransportCallbacks runtimeLink; // API to notify the runtime of places added, etc.  Can be null
+	private final ThreadLocal<ByteBuffer> headerBuffer = new ThreadLocal<ByteBuffer>() { // reused for messages written out immediately
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(HEADER_SIZE);
+		}
+	};
+	private final ThreadLocal<ByteBuffer> compressionBuffer = new ThreadLocal<ByteBuffer>() { // reused when compressing direct buffers
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(4096);
+		}
+	};
 	
 	public SocketTransport(NetworkTransportCallbacks runtimeLink) {
 		this.runtimeLink = runtimeLink;
@@ -161,10 +193,46 @@ public class SocketTransport {
 			connectionTimeout = Integer.parseInt(System.getProperty(X10_CONNECTION_TIMEOUT));
 		}
 		catch (NumberFormatException e){} // not set.
+		int ioThreadCount = getIntFlag(X10_IO_THREADS, 0);
+		if (ioThreadCount > 0) {
+			IOThread[] threads = new IOThread[ioThreadCount];
+			int created = 0;
+			try {
+				for (; created<ioThreadCount; created++)
+					threads[created] = new IOThread(created);
+			} catch (IOException e) {
+				// fall back to doing all I/O in the probing threads
+				System.err.println("Unable to start the I/O threads, probing threads will do all I/O: "+e);
+				for (int i=0; i<created; i++) {
+					try {threads[i].selector.close();}
+					catch (IOException e2){}
+				}
+				threads = null;
+			}
+			if (threads != null) {
+				inbound = new ArrayBlockingQueue<Message>(getIntFlag(X10_IO_QUEUE_SIZE, 1024));
+				ioThreads = threads;
+				for (IOThread t : ioThreads)
+					t.start();
+			}
+		}
 				
 		if (DEBUG) System.err.println("Socket library initialized. myPlaceid="+this.myPlaceId+" nplaces="+this.nplaces);
 	}
 	
+	// reads an integer flag from the system properties, or else from the environment
+	private static int getIntFlag(String name, int defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null)
+			value = System.getenv(name);
+		try {
+			if (value != null)
+				return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e){} // malformed.  Use the default
+		return defaultValue;
+	}
+	
 	public String getLocalConnectionInfo() {
 		int port = localListenSocket.socket().getLocalPort();
 		String hostname;
@@ -376,6 +444,10 @@ public class SocketTransport {
     public synchronized int shutdown() {
     	if (DEBUG) System.err.println("shutting down");
     	shuttingDown = true;
+    	if (ioThreads != null) {
+    		for (IOThread t : ioThreads)
+    			t.selector.wakeup();
+    	}
    		try {
    			if (localListenSocket != null)
     			localListenSocket.close();
@@ -387,8 +459,9 @@ public class SocketTransport {
 	    		}
 	    		catch (Exception e){}// ignore... shutting down
 	    		finally {
-	    			channel.writeLock.unlock();
 	    			channel.pendingWrites = null;
+	    			channel.outbound.clear();
+	    			channel.writeLock.unlock();
 	    		}
    			}
    			channels.clear();
@@ -415,7 +488,13 @@ public class SocketTransport {
     	selector.wakeup();
     }
     
-    private void registerOnSelector(SocketChannel sc, int ops, Object att) throws ClosedChannelException {
+    // links to other places are registered on the selector of their I/O thread, if there are I/O threads.
+    // the listen socket and the link to the launcher always use the probe's selector
+    private void registerOnSelector(SocketChannel sc, int ops, Object att, int place) throws ClosedChannelException {
+    	if (ioThreads != null && place >= 0 && place != myPlaceId) {
+    		ioThreads[place % ioThreads.length].register(sc, ops, att);
+    		return;
+    	}
     	// if anything is blocked on the selector, kick it out
     	allowBlockingProbe = false;
     	selector.wakeup();
@@ -449,9 +528,15 @@ public class SocketTransport {
     	if (!onlyProcessAccept && nplaces == 1)
     		return false;
 */    	
+		// with I/O threads, messages from other places are already read in.  Only accepts and the launcher link are left to the selector
+		boolean takeInbound = inbound != null && probeType == PROBE_TYPE.ALL;
+		if (takeInbound) {
+			Message m = inbound.poll();
+			if (m != null) return m;
+		}
     	int eventCount = 0;
+    	SelectionKey key;
     	try {
-    		SelectionKey key;
     		if (blocking && allowBlockingProbe) // blocking probe, wait for the selector to become available
     			selectorLock.lock();
     		else if (!selectorLock.tryLock()) // non-blocking probe, return immediately if selector is busy
@@ -463,12 +548,21 @@ public class SocketTransport {
 	    			events.remove();
     			}
 	    		else {
-	    			if (blocking && allowBlockingProbe)
-	    				eventCount = selector.select();
+	    			if (blocking && allowBlockingProbe) {
+	    				probeBlocked = takeInbound; // ask the I/O threads to wake us up when they queue a message
+	    				try {
+	    					if (takeInbound && !inbound.isEmpty())
+	    						eventCount = selector.selectNow();
+	    					else
+	    						eventCount = selector.select();
+	    				} finally {
+	    					probeBlocked = false;
+	    				}
+	    			}
 	    			else
 	    				eventCount = selector.selectNow();
 	    			
-	    			if (eventCount == 0) return null;
+	    			if (eventCount == 0) return takeInbound ? inbound.poll() : null;
 	    			
 	    			events = selector.selectedKeys().iterator();
 	    			key = events.next();
@@ -477,6 +571,17 @@ public class SocketTransport {
     		} finally {
     			selectorLock.unlock();
     		}
+    	} catch (Exception e1) {
+    		e1.printStackTrace();
+    		return null;
+    	}
+    	return processKey(key, probeType);
+    }
+    
+    // handles one selected key: accepts a connection, flushes pending writes, or reads in a message.
+    // returns the message read in, a blank message if a connection was processed, or null
+    private Message processKey(SelectionKey key, PROBE_TYPE probeType) {
+    	try {
 			if (key.isAcceptable()) {
 				if (DEBUG) System.err.println("Place "+myPlaceId+" detected a connection request");
 
@@ -520,7 +625,7 @@ public class SocketTransport {
 						writeNBytes(sc, controlMsg);
 						channels.put(remote, new CommunicationLink(sc, remote, linkString));
 						setSocketOptions(sc);
-						registerOnSelector(sc, SelectionKey.OP_READ, null);
+						registerOnSelector(sc, SelectionKey.OP_READ, null, remote);
 						if (DEBUG) System.err.println("Place "+myPlaceId+" accepted a connection from place "+remote);
 
                         // tell the new place to connect to the hazelcast cluster
@@ -589,7 +694,7 @@ public class SocketTransport {
 								writeNBytes(sc, controlMsg);
 								channels.put(remote, new CommunicationLink(sc, remote, linkString));
 								setSocketOptions(sc);
-								registerOnSelector(sc, SelectionKey.OP_READ, null);
+								registerOnSelector(sc, SelectionKey.OP_READ, null, remote);
 								if (DEBUG) System.err.println("Place "+myPlaceId+" initialized new place "+remote);
 								
 								// tell the new place to connect to the hazelcast cluster
@@ -606,9 +711,9 @@ public class SocketTransport {
 									pendingJoins.add(new CommunicationLink(sc, remote, linkString));
 								}
 								// send the place request to the lowest place
-								if (sendMessage(MSGTYPE.GET_PLACE_REQUEST, lowestValidPlaceId, this.myPlaceId, null) != RETURNCODE.X10RT_ERR_OK.ordinal() &&
+								if (sendMessage(MSGTYPE.GET_PLACE_REQUEST, lowestValidPlaceId, this.myPlaceId, (byte[]) null) != RETURNCODE.X10RT_ERR_OK.ordinal() &&
 									    // try again.  Maybe the place died while transmitting
-									    sendMessage(MSGTYPE.GET_PLACE_REQUEST, lowestValidPlaceId, this.myPlaceId, null) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+									    sendMessage(MSGTYPE.GET_PLACE_REQUEST, lowestValidPlaceId, this.myPlaceId, (byte[]) null) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
 										    System.err.println("Error sending place request to "+lowestValidPlaceId);
 								}
 								else
@@ -737,7 +842,7 @@ public class SocketTransport {
 									writeNBytes(newPlace.sc, controlMsg);
 									channels.put(remote, new CommunicationLink(newPlace.sc, remote, newPlace.portInfo));
 									setSocketOptions(newPlace.sc);
-									registerOnSelector(newPlace.sc, SelectionKey.OP_READ, null);
+									registerOnSelector(newPlace.sc, SelectionKey.OP_READ, null, remote);
 									if (DEBUG) System.err.println("Place "+myPlaceId+" initialized new place "+remote);
 									
 									// tell the new place to connect to the hazelcast cluster
@@ -772,6 +877,7 @@ public class SocketTransport {
 									if (DEBUG) System.err.println("Place "+myPlaceId+" discovered link to place "+place+" is broken in probe");
 									markPlaceDead(place);
 									cl.pendingWrites = null;
+									cl.outbound.clear();
 									break;
 								}
 							} catch (NullPointerException e2){} // channels[i] can become null after we check for null
@@ -805,6 +911,12 @@ public class SocketTransport {
     	return sendMessage(MSGTYPE.STANDARD, place, msg_id, bytes);
     }
     
+    // sends the bytes between the position and the limit of the buffer, without copying them into a byte array first.
+    // the buffer remains owned by the caller, and may be reused as soon as this method returns
+    public int sendMessage(int place, int msg_id, ByteBuffer bytes) {
+    	return sendMessage(MSGTYPE.STANDARD, place, msg_id, bytes);
+    }
+    
     public int sendMessage(MSGTYPE msgtype, int place, int msg_id, byte[] incomingBuffer) {
     	if (isPlaceDead(place)) // don't send messages to dead or uninitialized places
     		return RETURNCODE.X10RT_ERR_OTHER.ordinal();
@@ -828,29 +940,76 @@ public class SocketTransport {
         else
         	outgoingBuffer = incomingBuffer;
     	
-    	// write out the x10SocketMessage data
-    	// Format: type, p.type, p.len, p.msg
-    	ByteBuffer controlData = ByteBuffer.allocateDirect(12);
-    	controlData.putInt(msgtype.getValue());
-    	controlData.putInt(msg_id);
+    	return writeMessage(msgtype, place, msg_id, outgoingBuffer == null ? null : ByteBuffer.wrap(outgoingBuffer));
+    }
+    
+    public int sendMessage(MSGTYPE msgtype, int place, int msg_id, ByteBuffer incomingBuffer) {
+    	if (isPlaceDead(place)) // don't send messages to dead or uninitialized places
+    		return RETURNCODE.X10RT_ERR_OTHER.ordinal();
+
+    	// connect to remote place, if not already connected
+    	try {
+			initLink(place, null);
+		} catch (IOException e) {
+			return RETURNCODE.X10RT_ERR_OTHER.ordinal();
+		}
+    	
+    	// compress the buffer.  Direct buffers are compressed into a reusable per-thread direct buffer
+    	ByteBuffer outgoingBuffer = incomingBuffer;
+        if (incomingBuffer != null && msgtype.compareTo(MSGTYPE.GET) <= 0 && runtimeLink.useCompressionCodec() == compressionCodec.SNAPPY) {
+        	try {
+        		int maxLength = Snappy.maxCompressedLength(incomingBuffer.remaining());
+        		if (incomingBuffer.isDirect()) {
+        			ByteBuffer compressed = compressionBuffer.get();
+        			if (compressed.capacity() < maxLength) {
+        				compressed = ByteBuffer.allocateDirect(Math.max(maxLength, 2*compressed.capacity()));
+        				compressionBuffer.set(compressed);
+        			}
+        			compressed.clear();
+        			Snappy.compress(incomingBuffer, compressed); // sets the limit of compressed, leaves incomingBuffer untouched
+        			outgoingBuffer = compressed;
+        		}
+        		else {
+        			byte[] compressed = new byte[maxLength];
+        			int len = Snappy.compress(incomingBuffer.array(), incomingBuffer.arrayOffset()+incomingBuffer.position(), incomingBuffer.remaining(), compressed, 0);
+        			outgoingBuffer = ByteBuffer.wrap(compressed, 0, len);
+        		}
+        	} catch (Exception e) {
+        		outgoingBuffer = incomingBuffer;
+        	}
+        }
+    	
+    	return writeMessage(msgtype, place, msg_id, outgoingBuffer);
+    }
+    
+    // write out the x10SocketMessage header and data.
+    // the data buffer belongs to the caller, and is copied along with the header if it can not be written out immediately
+    private int writeMessage(MSGTYPE msgtype, int place, int msg_id, ByteBuffer outgoingBuffer) {
     	int len = 0; 
     	if (outgoingBuffer != null)
-    		len = outgoingBuffer.length;
-    	controlData.putInt(len);
-    	controlData.flip();
+    		len = outgoingBuffer.remaining();
     	if (DEBUG) System.err.print("Place "+myPlaceId+" sending a message to place "+place+" of type "+msg_id+" and size "+len+"...");
     	CommunicationLink cl = channels.get(place);
     	try {
-	    	cl.writeLock.lock();
-	    	try {
-		    	writeBytes(cl, controlData);
-		    	if (len > 0)
-	    			writeBytes(cl, ByteBuffer.wrap(outgoingBuffer));
-				if (DEBUG) System.err.println("Sent");
-	    	} 
-	    	finally {
-	    		cl.writeLock.unlock();
-	    	}
+    		if (!bufferedWrites) {
+    			cl.writeLock.lock();
+    			try {
+    				writeNBytes(cl.sc, header(headerBuffer.get(), msgtype, msg_id, len), outgoingBuffer);
+    			}
+    			finally {
+    				cl.writeLock.unlock();
+    			}
+    		}
+    		else if (!shuttingDown) {
+    			// fast path: nothing queued, so write directly from the caller's buffer
+    			if (!cl.outbound.isEmpty() || !cl.writeLock.tryLock() || !writeImmediately(cl, msgtype, msg_id, outgoingBuffer, len)) {
+    				cl.outbound.offer(frame(msgtype, msg_id, outgoingBuffer, len));
+    				flushOutbound(cl);
+    			}
+    			else if (!cl.outbound.isEmpty())
+    				flushOutbound(cl); // messages queued by other threads while we held the lock
+    		}
+			if (DEBUG) System.err.println("Sent");
     	}
     	catch (IOException e) {
     		if (DEBUG) System.err.println("Place "+myPlaceId+" discovered link to place "+place+" is broken in send");
@@ -858,12 +1017,64 @@ public class SocketTransport {
     		catch (Exception e2){}
     		markPlaceDead(place);
     		cl.pendingWrites = null;
+    		cl.outbound.clear();
     		return RETURNCODE.X10RT_ERR_OTHER.ordinal();
     	}
 		
     	return RETURNCODE.X10RT_ERR_OK.ordinal();
     }
     
+    // called with the writeLock held, which is released on return.  Returns false, without writing anything, if
+    // an earlier batch is still pending.  Otherwise writes the header and data with one gathering write, and 
+    // stashes whatever the channel did not accept as the pending batch
+    private boolean writeImmediately(CommunicationLink link, MSGTYPE msgtype, int msg_id, ByteBuffer data, int len) throws IOException {
+    	try {
+    		if (link.pendingWrites != null)
+    			return false;
+    		ByteBuffer header = header(headerBuffer.get(), msgtype, msg_id, len);
+    		if (len == 0)
+    			link.sc.write(header);
+    		else
+    			link.sc.write(new ByteBuffer[] {header, data});
+    		if (header.hasRemaining() || (len > 0 && data.hasRemaining())) {
+    			// the channel is full.  Keep a copy of the rest, and flush it when the channel becomes writable
+    			ByteBuffer rest = ByteBuffer.allocateDirect(header.remaining()+(len > 0 ? data.remaining() : 0));
+    			rest.put(header);
+    			if (len > 0) rest.put(data);
+    			rest.flip();
+    			link.pendingWrites = new ByteBuffer[] {rest};
+    			link.pendingOffset = 0;
+    			awaitWritable(link);
+    		}
+    		return true;
+    	}
+    	finally {
+    		link.writeLock.unlock();
+    	}
+    }
+    
+    // fills in a header buffer with the x10SocketMessage header.  Format: type, p.type, p.len
+    private static ByteBuffer header(ByteBuffer header, MSGTYPE msgtype, int msg_id, int len) {
+    	header.clear();
+    	header.putInt(msgtype.getValue());
+    	header.putInt(msg_id);
+    	header.putInt(len);
+    	header.flip();
+    	return header;
+    }
+    
+    // copies a message and its header into a single buffer, to be queued on a link
+    private static ByteBuffer frame(MSGTYPE msgtype, int msg_id, ByteBuffer data, int len) {
+    	ByteBuffer frame = HEADER_SIZE+len > STAGING_SIZE ? ByteBuffer.allocateDirect(HEADER_SIZE+len) : ByteBuffer.allocate(HEADER_SIZE+len);
+    	frame.putInt(msgtype.getValue());
+    	frame.putInt(msg_id);
+    	frame.putInt(len);
+    	if (len > 0)
+    		frame.put(data.duplicate());
+    	frame.flip();
+    	return frame;
+    }
+    
 	private void initLink(int remotePlace, String connectionInfo) throws IOException{
     	if (shuttingDown || channels.containsKey(remotePlace)) return;
     	
@@ -974,7 +1185,7 @@ public class SocketTransport {
 			writeNBytes(sc, controlMsg);
 			channels.put(myPlaceId, new CommunicationLink(sc, myPlaceId, getLocalConnectionInfo()));
 			sc.configureBlocking(false);
-			registerOnSelector(sc, SelectionKey.OP_READ, null);
+			registerOnSelector(sc, SelectionKey.OP_READ, null, -1);
 			if (DEBUG) System.err.println("Place "+myPlaceId+" established a link to local launcher, sent local port="+myPort);
 		}
 		else {
@@ -997,7 +1208,7 @@ public class SocketTransport {
 					
 					channels.put(remotePlace, new CommunicationLink(sc, remotePlace, connectionInfo));
 					setSocketOptions(sc);
-					registerOnSelector(sc, SelectionKey.OP_READ, null);
+					registerOnSelector(sc, SelectionKey.OP_READ, null, remotePlace);
 					if (DEBUG) System.err.println("Place "+this.myPlaceId+" established a link to place "+remotePlace+" of "+this.nplaces+" places at "+connectionInfo);
 					int datalen = controlMsg.getInt() - 8;
 					
@@ -1041,7 +1252,7 @@ public class SocketTransport {
 				else {
 					channels.put(remotePlace, new CommunicationLink(sc, remotePlace, connectionInfo));
 					setSocketOptions(sc);
-					registerOnSelector(sc, SelectionKey.OP_READ, null);
+					registerOnSelector(sc, SelectionKey.OP_READ, null, remotePlace);
 					if (runtimeLink != null) runtimeLink.runPlaceAddedHandler(remotePlace);
 					if (DEBUG) System.err.println("Place "+this.myPlaceId+" established a link to place "+remotePlace+" of "+this.nplaces+" places at "+connectionInfo);
 				}
@@ -1075,72 +1286,118 @@ public class SocketTransport {
 		return true;
     }
 
-    private void writeBytes(CommunicationLink link, ByteBuffer data) throws IOException {
-    	if (!bufferedWrites) writeNBytes(link.sc, data);
-    	else if (!shuttingDown) {
-    		if (link.pendingWrites != null) {
-    			// data is already pending.  Add this new data to the back of the queue
-    			link.pendingWrites.addLast(data); // store the current write request at the end of the queue
+    // writes out the queued messages of a link, for as long as the channel accepts them.  Does nothing if another 
+    // thread holds the writeLock, since that thread checks the queue again after releasing the lock
+    private void flushOutbound(CommunicationLink link) throws IOException {
+    	while (!shuttingDown && !link.outbound.isEmpty() && link.writeLock.tryLock()) {
+    		boolean full;
+    		try {
+    			full = writePending(link);
     		}
-    		else { // nothing pending.  Write immediately
-    			link.sc.write(data);
-    			// Did we get the whole message out?
-    			if (data.hasRemaining()) {
-    				// nope.  Set the buffer aside and register with the selector to write when ready
-    				link.pendingWrites = new LinkedList<ByteBuffer>();
-    				link.pendingWrites.addLast(data);
-    				registerOnSelector(link.sc, (SelectionKey.OP_WRITE | SelectionKey.OP_READ), link.placeid);
-    				if (DEBUG) System.err.println("Stashed "+data.remaining()+" bytes in the buffer for place "+link.placeid);
-    				// poke the selector if there is a thread already waiting on it which does not include the new registration
-    				selector.wakeup();
+    		finally {
+    			link.writeLock.unlock();
+    		}
+    		if (full) return; // the selector calls us back once the channel is writable
+    	}
+    }
+    
+    // called with the writeLock held.  Writes the pending batch, then batches of queued messages, until either
+    // the queue is empty or the channel is full.  Returns true if the channel is full
+    private boolean writePending(CommunicationLink link) throws IOException {
+    	for (;;) {
+    		if (link.pendingWrites == null && !nextBatch(link)) {
+    			if (link.writeInterest) {
+    				// all data has been written out.  Remove the OP_WRITE selector key
+    				link.writeInterest = false;
+    				registerOnSelector(link.sc, SelectionKey.OP_READ, null, link.placeid);
+    			}
+    			return false;
+    		}
+    		ByteBuffer[] batch = link.pendingWrites;
+    		long bytesWritten = link.sc.write(batch, link.pendingOffset, batch.length-link.pendingOffset);
+    		if (DEBUG) System.err.println("Flushed "+bytesWritten+" bytes in the buffer to place "+link.placeid);
+    		while (link.pendingOffset < batch.length && !batch[link.pendingOffset].hasRemaining())
+    			batch[link.pendingOffset++] = null;
+    		if (link.pendingOffset < batch.length) {
+    			// data remains, but the channel is not accepting more
+    			awaitWritable(link);
+    			return true;
+    		}
+    		link.pendingWrites = null;
+    	}
+    }
+    
+    // called with the writeLock held.  Drains up to MAX_GATHER queued messages into the pending batch, 
+    // coalescing consecutive small messages into the staging buffer.  Returns false if the queue is empty
+    private boolean nextBatch(CommunicationLink link) {
+    	if (link.outbound.isEmpty()) return false;
+    	if (link.staging == null)
+    		link.staging = ByteBuffer.allocateDirect(STAGING_SIZE);
+    	ByteBuffer staging = link.staging;
+    	staging.clear();
+    	ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+    	int count = 0;
+    	int staged = 0; // start of the staged data not yet in the batch
+    	ByteBuffer frame;
+    	while (count < MAX_GATHER-1 && (frame = link.outbound.peek()) != null) {
+    		if (!frame.isDirect() && frame.remaining() <= staging.remaining()) {
+    			staging.put(frame);
+    		}
+    		else if (frame.isDirect()) {
+    			if (staging.position() > staged) {
+    				batch[count++] = slice(staging, staged);
+    				staged = staging.position();
     			}
+    			batch[count++] = frame;
     		}
+    		else break; // the staging buffer is full
+    		link.outbound.poll();
     	}
+    	if (staging.position() > staged)
+    		batch[count++] = slice(staging, staged);
+    	link.pendingWrites = count == batch.length ? batch : Arrays.copyOf(batch, count);
+    	link.pendingOffset = 0;
+    	return true;
+    }
+    
+    // returns the bytes of the staging buffer between start and its current position
+    private static ByteBuffer slice(ByteBuffer staging, int start) {
+    	ByteBuffer slice = staging.duplicate();
+    	slice.limit(staging.position());
+    	slice.position(start);
+    	return slice;
     }
     
-    // returns true if at least some data was sent out
+    // called with the writeLock held.  Registers the link for OP_WRITE, so that the selector flushes it
+    private void awaitWritable(CommunicationLink link) throws ClosedChannelException {
+    	if (link.writeInterest) return;
+    	link.writeInterest = true;
+    	registerOnSelector(link.sc, (SelectionKey.OP_WRITE | SelectionKey.OP_READ), link.placeid, link.placeid);
+    	if (DEBUG) System.err.println("Stashed data in the buffer for place "+link.placeid);
+    }
+    
+    // called by the selector once a link with pending data becomes writable
     private void flushBufferedBytes(CommunicationLink link) {
     	if (DEBUG) System.err.println("Flushing data");
     	
     	if (!shuttingDown && !isPlaceDead(link.placeid) && link.writeLock.tryLock()) {
     		try {
-    			if (link.pendingWrites == null) return;
-    	    	
-    			while (!shuttingDown && link.pendingWrites != null && !link.pendingWrites.isEmpty()) {
-    				ByteBuffer data = link.pendingWrites.peekFirst();
-    				try {
-    					//long startRemain = data.remaining();
-	    				long bytesWrittenThisRound;
-	        			do { bytesWrittenThisRound=link.sc.write(data);
-	        			} while (!shuttingDown && bytesWrittenThisRound > 0 && data.hasRemaining());
-	        			
-	        			if (DEBUG) System.err.println("Flushed "+bytesWrittenThisRound+" bytes in the buffer to place "+link.placeid);
-	        			
-	        			if (!shuttingDown && !data.hasRemaining()) // all data was written out
-	        				link.pendingWrites.removeFirst();
-	        			else // data remains, but the channel is not accepting more
-	        				return;
-    				}
-    				catch (IOException e) {
-    					if (DEBUG) System.err.println("Place "+myPlaceId+" discovered link to place "+link.placeid+" is broken in buffer flush");
-    		    		try {link.sc.close();}
-    		    		catch (Exception e2){}
-    		    		markPlaceDead(link.placeid);
-    		    		link.pendingWrites = null;
-    				}
-    				catch (NullPointerException e){} // the remote place died and link was closed by another thread 
-    			}
-				// at this point, all data has been written out.  Remove the OP_WRITE selector key
+    			boolean full;
     			try {
-    				registerOnSelector(link.sc, SelectionKey.OP_READ, null);
-				} catch (ClosedChannelException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				link.pendingWrites = null;
+    				full = writePending(link);
+    			}
+    			finally {
+    				link.writeLock.unlock();
+    			}
+    			if (!full) flushOutbound(link); // pick up messages queued while we held the lock
     		}
-    		finally {
-    			link.writeLock.unlock();
+    		catch (IOException e) {
+    			if (DEBUG) System.err.println("Place "+myPlaceId+" discovered link to place "+link.placeid+" is broken in buffer flush");
+	    		try {link.sc.close();}
+	    		catch (Exception e2){}
+	    		markPlaceDead(link.placeid);
+	    		link.pendingWrites = null;
+	    		link.outbound.clear();
     		}
     	}
     }
@@ -1152,6 +1409,70 @@ public class SocketTransport {
 		} while (!shuttingDown && data.hasRemaining());
     }
     
+    // forces out a header, followed by the data if any
+    private void writeNBytes(SocketChannel sc, ByteBuffer header, ByteBuffer data) throws IOException {
+    	writeNBytes(sc, header);
+    	if (data != null && data.hasRemaining())
+    		writeNBytes(sc, data);
+    }
+    
+    
+    // A dedicated thread reading from, and flushing writes to, the links to a subset of the places. 
+    // Messages read in are handed to the probing threads through the inbound queue
+    private class IOThread extends Thread {
+    	final Selector selector;
+    	final ReentrantLock registrationLock = new ReentrantLock(); // held while registering a channel, so that the thread does not block in select meanwhile
+    	
+    	IOThread(int id) throws IOException {
+    		super("X10 I/O thread "+id);
+    		setDaemon(true);
+    		selector = Selector.open();
+    	}
+    	
+    	void register(SocketChannel sc, int ops, Object att) throws ClosedChannelException {
+    		registrationLock.lock();
+    		try {
+    			selector.wakeup();
+    			sc.register(selector, ops, att);
+    		}
+    		finally {
+    			registrationLock.unlock();
+    		}
+    	}
+    	
+    	@Override
+    	public void run() {
+    		try {
+    			while (!shuttingDown) {
+    				// wait for pending registrations
+    				registrationLock.lock();
+    				registrationLock.unlock();
+    				selector.select();
+    				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    				while (keys.hasNext()) {
+    					SelectionKey key = keys.next();
+    					keys.remove();
+    					Message m = processKey(key, PROBE_TYPE.ALL);
+    					if (m != null && m.callbackId != -1)
+    						deliver(m);
+    				}
+    			}
+    		} catch (Exception e) {
+    			if (!shuttingDown) e.printStackTrace();
+    		}
+    		try {selector.close();}
+    		catch (IOException e){}
+    	}
+    	
+    	// queues a message for the probing threads.  Blocks while the queue is full, which stops reading and
+    	// eventually pushes back on the senders
+    	private void deliver(Message m) throws InterruptedException {
+    		while (!inbound.offer(m, 100, TimeUnit.MILLISECONDS))
+    			if (shuttingDown) return;
+    		if (probeBlocked)
+    			SocketTransport.this.selector.wakeup();
+    	}
+    }
     
     private class BackgroundLinkInitializer implements Runnable {
     	private int placeId;
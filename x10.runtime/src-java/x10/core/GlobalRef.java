@@ -518,6 +518,10 @@ public final class GlobalRef<T> extends Struct implements X10JavaSerializable {
         return this.id;
     }
 
+    public static Object getLocalObject(long id) { // Backdoor for the remote operations on GlobalRails, the inverse of getId at the home place
+        return GlobalizedObjectTracker.getObject(id);
+    }
+
     @Override
     final public String toString() {
         globalize(); // necessary to decide the id for this object
@@ -185,10 +185,10 @@ public final class Rail<T> extends Ref implements x10.lang.Iterable,
         serializer.write(T);
         serializer.write(size);
 
-        // If the T is a java primitive type, we use default java serialization here
+        // If the T is a java primitive type, we write the backing array in bulk
         // cause its much faster than writing a single element at a time
         if (Types.isPrimitiveType(T)) {
-            serializer.writeUsingObjectOutputStream(value);
+            serializer.writePrimitiveArray(value);
         } else if (Types.isStringType(T)) {
             String[] castValue = (String[]) value;
             for (String v : castValue) {
@@ -218,10 +218,10 @@ public final class Rail<T> extends Ref implements x10.lang.Iterable,
         obj.T = deserializer.readObject();
         obj.size = deserializer.readLong();
 
-        // If the T is a java primitive type, we use default java serialization here
+        // If the T is a java primitive type, we read the backing array in bulk
         // cause its much faster than reading a single element at a time
         if (Types.isPrimitiveType(obj.T)) {
-            obj.value = deserializer.readUsingObjectInputStream(false);
+            obj.value = deserializer.readPrimitiveArray();
         } else if (Types.isStringType(obj.T)) {
             String[] values = (String[]) obj.T.makeArray(allocCheckSize(obj.size));
             for (int i = 0; i < (int)obj.size; i++) {
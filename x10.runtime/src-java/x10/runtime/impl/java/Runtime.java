@@ -32,6 +32,8 @@ import x10.rtt.Type;
 import x10.rtt.Types;
 import x10.xrx.GetRegistry;
 import x10.xrx.GetRegistry.GetHandle;
+import x10.serialization.ByteBufferOutputStream;
+import x10.serialization.NoAliasing;
 import x10.serialization.X10JavaDeserializer;
 import x10.serialization.X10JavaSerializer;
 import x10.x10rt.NativeTransport;
@@ -319,23 +321,59 @@ public abstract class Runtime implements VoidFun_0_0 {
     }
 
     
+    // with JavaSockets, messages are serialized into a reusable direct buffer of the sending thread,
+    // which the transport writes out or copies before sendMessage returns.
+    // They start with a link header so that classes are named only in the first messages to a place.
+    // Callers release the serializer in a finally block once the message is sent, or serialization failed.
+    private static X10JavaSerializer newSerializer(int place) throws IOException {
+        if (X10RT.javaSockets != null) {
+            X10JavaSerializer serializer = new X10JavaSerializer(ByteBufferOutputStream.acquire());
+            try {
+                serializer.writeLinkHeader(place);
+            } catch (IOException e) {
+                serializer.release();
+                throw e;
+            }
+            return serializer;
+        }
+        return new X10JavaSerializer();
+    }
+    
+    // the receiver side of newSerializer
+    private static X10JavaDeserializer newDeserializer(InputStream input) throws IOException {
+        X10JavaDeserializer deserializer = new X10JavaDeserializer(new DataInputStream(input));
+        if (X10RT.javaSockets != null) {
+            deserializer.readLinkHeader();
+        }
+        return deserializer;
+    }
+    
+    private static int sendMessage(int place, int callbackId, X10JavaSerializer serializer) {
+        return X10RT.javaSockets.sendMessage(place, callbackId, serializer.getDataBuffer());
+    }
+    
+    // the object graph of a body whose class is annotated @NoAliasing is written without identity tracking
+    private static void writeBody(X10JavaSerializer serializer, Object body) throws IOException {
+        serializer.setTrackAliasing(!body.getClass().isAnnotationPresent(NoAliasing.class));
+        serializer.write(body);
+    }
+    
     // TODO: add epoch to x10rt native transports
     public static void runAsyncAt(long epoch, int place, VoidFun_0_0 body, FinishState finishState, 
                                   x10.xrx.Runtime.Profile prof, VoidFun_0_0 preSendAction) {
-		// TODO: bherta - all of this serialization needs to be reworked to write directly to the network (when possible), 
-		// skipping the intermediate buffers contained within the X10JavaSerializer class.
+        X10JavaSerializer serializer = null;
         try {
             if (TRACE_SER_DETAIL) {
             	System.out.println("Starting serialization for runAsyncAt  " + body.getClass());
             }
             long start = prof!=null ? System.nanoTime() : 0;
-            X10JavaSerializer serializer = new X10JavaSerializer();
+            serializer = newSerializer(place);
             
             serializer.write(finishState);
             serializer.write(X10RT.here());
             if (X10RT.javaSockets != null) serializer.write(epoch);
             long before_bytes = serializer.dataBytesWritten();
-            serializer.write(body);
+            writeBody(serializer, body);
             long ser_bytes = serializer.dataBytesWritten() - before_bytes;
             
             if (prof != null) {
@@ -354,7 +392,7 @@ public abstract class Runtime implements VoidFun_0_0 {
             
             start = prof!=null ? System.nanoTime() : 0;
             if (X10RT.javaSockets != null) {
-            	if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.simpleAsyncMessageID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+            	if (sendMessage(place, SocketTransport.CALLBACKID.simpleAsyncMessageID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
             		throw new DeadPlaceException(new Place(place), "Unable to send an async to "+place);
             	}
             } else {
@@ -371,6 +409,8 @@ public abstract class Runtime implements VoidFun_0_0 {
             java.lang.RuntimeException xe = x10.runtime.impl.java.ThrowableUtils.ensureX10Exception(e);
             xe.printStackTrace();
             throw xe;
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
     
@@ -380,7 +420,7 @@ public abstract class Runtime implements VoidFun_0_0 {
 
         try {
             long start = Runtime.PROF_SER ? System.nanoTime() : 0;
-            X10JavaDeserializer deserializer = new X10JavaDeserializer(new DataInputStream(input));
+            X10JavaDeserializer deserializer = newDeserializer(input);
             if (x10.runtime.impl.java.Runtime.TRACE_SER_DETAIL) {
                 System.out.println("Starting deserialization ");
             }
@@ -421,15 +461,14 @@ public abstract class Runtime implements VoidFun_0_0 {
      * execute a closure at the target place (closure means it is not an activity with exposed finish state processing)
      */
     public static void runClosureAt(int place, VoidFun_0_0 body, x10.xrx.Runtime.Profile prof, VoidFun_0_0 preSendAction) {
+		X10JavaSerializer serializer = null;
 		try {
-			// TODO: bherta - all of this serialization needs to be reworked to write directly to the network (when possible), 
-			// skipping the intermediate buffers contained within the X10JavaSerializer class.
 			if (TRACE_SER_DETAIL) {
 				System.out.println("Starting serialization for runAt  " + body.getClass());
 			}
 			long start = prof!=null ? System.nanoTime() : 0;
-			X10JavaSerializer serializer = new X10JavaSerializer();
-			serializer.write(body);
+			serializer = newSerializer(place);
+			writeBody(serializer, body);
 			if (prof!=null) {
 				long stop = System.nanoTime();
 				long duration = stop-start;
@@ -446,7 +485,7 @@ public abstract class Runtime implements VoidFun_0_0 {
 
 			start = prof!=null ? System.nanoTime() : 0;
 			if (X10RT.javaSockets != null) {
-				if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.closureMessageID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+				if (sendMessage(place, SocketTransport.CALLBACKID.closureMessageID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
             		throw new DeadPlaceException(new Place(place), "Unable to send a closure to "+place);
 				}
 			} else {
@@ -466,6 +505,8 @@ public abstract class Runtime implements VoidFun_0_0 {
                 System.out.println("WARNING: "+X10RT.here()+" ignoring uncaught exception in sending of @Immediate async.");
 			    e.printStackTrace();
             }
+		} finally {
+			if (serializer != null) serializer.release();
 		}
 	}
 	
@@ -475,7 +516,7 @@ public abstract class Runtime implements VoidFun_0_0 {
 
         try{
             long start = Runtime.PROF_SER ? System.nanoTime() : 0;
-            X10JavaDeserializer deserializer = new X10JavaDeserializer(new DataInputStream(input));
+            X10JavaDeserializer deserializer = newDeserializer(input);
             if (x10.runtime.impl.java.Runtime.TRACE_SER_DETAIL) {
                 System.out.println("Starting deserialization ");
             }
@@ -518,32 +559,37 @@ public abstract class Runtime implements VoidFun_0_0 {
         FinishState fs = x10.xrx.Runtime.activity().finishState();
         fs.notifySubActivitySpawn(dst.rail.home); // must be non-local, so don't need explicit notifyRemoteContinuationCreated call
 
-        X10JavaSerializer serializer = new X10JavaSerializer();
+        int place = (int)dst.rail.home.id;
+        X10JavaSerializer serializer = null;
         try {
-            serializer.write(fs);
-            serializer.write(X10RT.hereId());
-            serializer.write(numElems);
-            if (numElems > 0) {
-                serializer.write(dst);
-                serializer.write(dstIndex);
-                serializer.write(dataToCopy);
-            }
-        } catch (IOException e) {
-            if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
-                System.out.println("WARNING: "+X10RT.here()+" error serializing data for asyncCopyTo message");
-                e.printStackTrace();
+            try {
+                serializer = newSerializer(place);
+                serializer.write(fs);
+                serializer.write(X10RT.hereId());
+                serializer.write(numElems);
+                if (numElems > 0) {
+                    serializer.write(dst);
+                    serializer.write(dstIndex);
+                    serializer.write(dataToCopy);
+                }
+            } catch (IOException e) {
+                if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
+                    System.out.println("WARNING: "+X10RT.here()+" error serializing data for asyncCopyTo message");
+                    e.printStackTrace();
+                }
+                return;
             }
-            return;
-        }
 
-        int place = (int)dst.rail.home.id;
-        if (X10RT.javaSockets != null) {
-            if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.putID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
-                throw new DeadPlaceException(new Place(place), "Unable to initiate asyncCopyTo "+place);
+            if (X10RT.javaSockets != null) {
+                if (sendMessage(place, SocketTransport.CALLBACKID.putID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+                    throw new DeadPlaceException(new Place(place), "Unable to initiate asyncCopyTo "+place);
+                }
+            } else {
+                byte[] rawBytes = serializer.getDataBytes();
+                NativeTransport.sendMessage(place, NativeTransport.putMessageID, rawBytes.length, rawBytes);                
             }
-        } else {
-            byte[] rawBytes = serializer.getDataBytes();
-            NativeTransport.sendMessage(place, NativeTransport.putMessageID, rawBytes.length, rawBytes);                
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
     
@@ -564,32 +610,37 @@ public abstract class Runtime implements VoidFun_0_0 {
             System.arraycopy(src.getBackingArray(), srcIndex, dataToCopy, 0, numElems);
         }
 
-        X10JavaSerializer serializer = new X10JavaSerializer();
+        int place = (int)dst.rail.home.id;
+        X10JavaSerializer serializer = null;
         try {
-            serializer.write(notifier);
-            serializer.write(X10RT.hereId());
-            serializer.write(numElems);
-            if (numElems > 0) {
-                serializer.write(dst);
-                serializer.write(dstIndex);
-                serializer.write(dataToCopy);
-            }
-        } catch (IOException e) {
-            if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
-                System.out.println("WARNING: "+X10RT.here()+" ignoring uncaught exception in serialization of uncountedCopyTo message");
-                e.printStackTrace();
+            try {
+                serializer = newSerializer(place);
+                serializer.write(notifier);
+                serializer.write(X10RT.hereId());
+                serializer.write(numElems);
+                if (numElems > 0) {
+                    serializer.write(dst);
+                    serializer.write(dstIndex);
+                    serializer.write(dataToCopy);
+                }
+            } catch (IOException e) {
+                if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
+                    System.out.println("WARNING: "+X10RT.here()+" ignoring uncaught exception in serialization of uncountedCopyTo message");
+                    e.printStackTrace();
+                }
+                return;
             }
-            return;
-        }
 
-        int place = (int)dst.rail.home.id;
-        if (X10RT.javaSockets != null) {
-            if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.putID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
-                throw new DeadPlaceException(new Place(place), "Unable to initiate uncountedCopyTo "+place);
+            if (X10RT.javaSockets != null) {
+                if (sendMessage(place, SocketTransport.CALLBACKID.putID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+                    throw new DeadPlaceException(new Place(place), "Unable to initiate uncountedCopyTo "+place);
+                }
+            } else {
+                byte[] rawBytes = serializer.getDataBytes();
+                NativeTransport.sendMessage(place, NativeTransport.putMessageID, rawBytes.length, rawBytes);                
             }
-        } else {
-            byte[] rawBytes = serializer.getDataBytes();
-            NativeTransport.sendMessage(place, NativeTransport.putMessageID, rawBytes.length, rawBytes);                
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
     
@@ -597,11 +648,10 @@ public abstract class Runtime implements VoidFun_0_0 {
     public static void putReceive(InputStream input) {
         if (X10RT.VERBOSE) System.out.println("putReceive is called");
 
-        DataInputStream objStream = new DataInputStream(input);
-        X10JavaDeserializer deserializer = new X10JavaDeserializer(objStream);
         Object fsOrNotif = null;
         int srcPlace = 0;
         try {
+            X10JavaDeserializer deserializer = newDeserializer(input);
             fsOrNotif = deserializer.readObject();
             srcPlace = deserializer.readInt();
             int numElems = deserializer.readInt();
@@ -650,27 +700,32 @@ public abstract class Runtime implements VoidFun_0_0 {
         fs.notifyRemoteContinuationCreated();
 
         int getId = GetRegistry.registerGet$O(src.home(), dst, dstIndex, numElems, fs, null);
-        X10JavaSerializer serializer = new X10JavaSerializer();
+        int place = (int)src.rail.home.id;
+        X10JavaSerializer serializer = null;
         try {
-            serializer.write(X10RT.hereId());
-            serializer.write(getId);
-            serializer.write(src);
-            serializer.write(srcIndex);
-            serializer.write(numElems);
-        } catch (IOException e) {
-            fs.notifyActivityCreationFailed(X10RT.here(), new SerializationException(e));
-            GetRegistry.squashGet(getId);
-            return;
-        }
+            try {
+                serializer = newSerializer(place);
+                serializer.write(X10RT.hereId());
+                serializer.write(getId);
+                serializer.write(src);
+                serializer.write(srcIndex);
+                serializer.write(numElems);
+            } catch (IOException e) {
+                fs.notifyActivityCreationFailed(X10RT.here(), new SerializationException(e));
+                GetRegistry.squashGet(getId);
+                return;
+            }
         
-        int place = (int)src.rail.home.id;
-        if (X10RT.javaSockets != null) {
-            if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.getID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
-                throw new DeadPlaceException(new Place(place), "Unable to initiate asyncCopyFrom "+place);
+            if (X10RT.javaSockets != null) {
+                if (sendMessage(place, SocketTransport.CALLBACKID.getID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+                    throw new DeadPlaceException(new Place(place), "Unable to initiate asyncCopyFrom "+place);
+                }
+            } else {
+                byte[] rawBytes = serializer.getDataBytes();
+                NativeTransport.sendMessage(place, NativeTransport.getMessageID, rawBytes.length, rawBytes);                
             }
-        } else {
-            byte[] rawBytes = serializer.getDataBytes();
-            NativeTransport.sendMessage(place, NativeTransport.getMessageID, rawBytes.length, rawBytes);                
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
     
@@ -681,39 +736,44 @@ public abstract class Runtime implements VoidFun_0_0 {
         fs.notifyRemoteContinuationCreated();
 
         int getId = GetRegistry.registerGet$O(src.home(), dst, dstIndex, numElems, null, notifier);
-        X10JavaSerializer serializer = new X10JavaSerializer();
+        int place = (int)src.rail.home.id;
+        X10JavaSerializer serializer = null;
         try {
-            serializer.write(X10RT.hereId());
-            serializer.write(getId);
-            serializer.write(src);
-            serializer.write(srcIndex);
-            serializer.write(numElems);
-        } catch (IOException e) {
-            if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
-                System.out.println("WARNING: "+X10RT.here()+" uncountedCopyFrom: exception while serializing message");
-                e.printStackTrace();
+            try {
+                serializer = newSerializer(place);
+                serializer.write(X10RT.hereId());
+                serializer.write(getId);
+                serializer.write(src);
+                serializer.write(srcIndex);
+                serializer.write(numElems);
+            } catch (IOException e) {
+                if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
+                    System.out.println("WARNING: "+X10RT.here()+" uncountedCopyFrom: exception while serializing message");
+                    e.printStackTrace();
+                }
+                GetRegistry.squashGet(getId);
+                return;
             }
-            GetRegistry.squashGet(getId);
-            return;
-        }
         
-        int place = (int)src.rail.home.id;
-        if (X10RT.javaSockets != null) {
-            if (X10RT.javaSockets.sendMessage(place, SocketTransport.CALLBACKID.getID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
-                throw new DeadPlaceException(new Place(place), "Unable to initiate uncountedCopyFrom "+place);
+            if (X10RT.javaSockets != null) {
+                if (sendMessage(place, SocketTransport.CALLBACKID.getID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+                    throw new DeadPlaceException(new Place(place), "Unable to initiate uncountedCopyFrom "+place);
+                }
+            } else {
+                byte[] rawBytes = serializer.getDataBytes();
+                NativeTransport.sendMessage(place, NativeTransport.getMessageID, rawBytes.length, rawBytes);                
             }
-        } else {
-            byte[] rawBytes = serializer.getDataBytes();
-            NativeTransport.sendMessage(place, NativeTransport.getMessageID, rawBytes.length, rawBytes);                
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
 
     public static void getReceive(InputStream input) {
         if (X10RT.VERBOSE) System.out.println("getReceive is called");
 
+        X10JavaSerializer serializer = null;
         try {
-            DataInputStream objStream = new DataInputStream(input);
-            X10JavaDeserializer deserializer = new X10JavaDeserializer(objStream);
+            X10JavaDeserializer deserializer = newDeserializer(input);
             int dstPlace = deserializer.readInt();
             int getId = deserializer.readInt();
             GlobalRail<?> src = deserializer.readObject();
@@ -730,13 +790,13 @@ public abstract class Runtime implements VoidFun_0_0 {
                 System.arraycopy(srcRail.getBackingArray(), srcIndex, dataToCopy, 0, numElems);
             }
             
-            X10JavaSerializer serializer = new X10JavaSerializer();
+            serializer = newSerializer(dstPlace);
             serializer.write(getId);
             serializer.write(dataToCopy);
             
             if (X10RT.VERBOSE) System.out.println("getReceive sending getCompleted message back to dstPlace");
             if (X10RT.javaSockets != null) {
-                if (X10RT.javaSockets.sendMessage(dstPlace, SocketTransport.CALLBACKID.getCompletedID.ordinal(), serializer.getDataBytes()) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+                if (sendMessage(dstPlace, SocketTransport.CALLBACKID.getCompletedID.ordinal(), serializer) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
                     if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
                         System.out.println("getCompleted error was not able to responde to initiating place");
                      }
@@ -751,6 +811,8 @@ public abstract class Runtime implements VoidFun_0_0 {
                 System.out.println("getReceive error");
                 ex.printStackTrace();
             }
+        } finally {
+            if (serializer != null) serializer.release();
         }
     }
     
@@ -758,8 +820,7 @@ public abstract class Runtime implements VoidFun_0_0 {
        if (X10RT.VERBOSE) System.out.println("getCompletedReceive is called");
 
        try {
-           DataInputStream objStream = new DataInputStream(input);
-           X10JavaDeserializer deserializer = new X10JavaDeserializer(objStream);
+           X10JavaDeserializer deserializer = newDeserializer(input);
 
            int getId = deserializer.readInt();
            Object dataToCopy = deserializer.readObject();
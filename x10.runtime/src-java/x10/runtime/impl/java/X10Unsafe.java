@@ -32,4 +32,98 @@ public class X10Unsafe {
 	public static void throwException(Throwable e) {
             unsafe.throwException(e);
 	}
+
+	// Raw access to instance fields for the serialization thunks
+
+	public static long objectFieldOffset(Field field) {
+	    return unsafe.objectFieldOffset(field);
+	}
+
+	public static boolean getBoolean(Object o, long offset) {
+	    return unsafe.getBoolean(o, offset);
+	}
+
+	public static void putBoolean(Object o, long offset, boolean x) {
+	    unsafe.putBoolean(o, offset, x);
+	}
+
+	public static byte getByte(Object o, long offset) {
+	    return unsafe.getByte(o, offset);
+	}
+
+	public static void putByte(Object o, long offset, byte x) {
+	    unsafe.putByte(o, offset, x);
+	}
+
+	public static short getShort(Object o, long offset) {
+	    return unsafe.getShort(o, offset);
+	}
+
+	public static void putShort(Object o, long offset, short x) {
+	    unsafe.putShort(o, offset, x);
+	}
+
+	public static char getChar(Object o, long offset) {
+	    return unsafe.getChar(o, offset);
+	}
+
+	public static void putChar(Object o, long offset, char x) {
+	    unsafe.putChar(o, offset, x);
+	}
+
+	public static int getInt(Object o, long offset) {
+	    return unsafe.getInt(o, offset);
+	}
+
+	public static void putInt(Object o, long offset, int x) {
+	    unsafe.putInt(o, offset, x);
+	}
+
+	public static long getLong(Object o, long offset) {
+	    return unsafe.getLong(o, offset);
+	}
+
+	public static void putLong(Object o, long offset, long x) {
+	    unsafe.putLong(o, offset, x);
+	}
+
+	public static float getFloat(Object o, long offset) {
+	    return unsafe.getFloat(o, offset);
+	}
+
+	public static void putFloat(Object o, long offset, float x) {
+	    unsafe.putFloat(o, offset, x);
+	}
+
+	public static double getDouble(Object o, long offset) {
+	    return unsafe.getDouble(o, offset);
+	}
+
+	public static void putDouble(Object o, long offset, double x) {
+	    unsafe.putDouble(o, offset, x);
+	}
+
+	public static Object getObject(Object o, long offset) {
+	    return unsafe.getObject(o, offset);
+	}
+
+	public static void putObject(Object o, long offset, Object x) {
+	    unsafe.putObject(o, offset, x);
+	}
+
+	public static long arrayBaseOffset(Class<?> arrayClass) {
+	    return unsafe.arrayBaseOffset(arrayClass);
+	}
+
+	public static int arrayIndexScale(Class<?> arrayClass) {
+	    return unsafe.arrayIndexScale(arrayClass);
+	}
+
+	public static long getAndAddLong(Object o, long offset, long delta) {
+	    return unsafe.getAndAddLong(o, offset, delta);
+	}
+
+	public static boolean compareAndSwapLong(Object o, long offset, long expected, long x) {
+	    return unsafe.compareAndSwapLong(o, offset, expected, x);
+	}
 }
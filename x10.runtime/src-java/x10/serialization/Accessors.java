@@ -0,0 +1,229 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+package x10.serialization;
+
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+
+import x10.io.SerializationException;
+import x10.runtime.impl.java.Runtime;
+import x10.runtime.impl.java.X10Unsafe;
+
+/**
+ * Fast replacements for the reflective operations used by the serialization thunks.<p>
+ *
+ * A FieldAccessor reads and writes an instance field at its raw offset instead of
+ * going through java.lang.reflect.Field, which checks access and boxes on every call.
+ * A MethodAccessor invokes a serialization method through a class spun at runtime
+ * by LambdaMetafactory, which the JIT compiles and inlines like a direct call,
+ * instead of going through Method.invoke. Accessors are created once per class
+ * together with the thunk that uses them.
+ *
+ * @see SerializerThunk
+ * @see DeserializerThunk
+ */
+final class Accessors {
+
+    private Accessors() {}
+
+    /**
+     * Reads and writes one instance field of a class.
+     */
+    static final class FieldAccessor {
+        private static final int BOOLEAN = 0;
+        private static final int BYTE = 1;
+        private static final int SHORT = 2;
+        private static final int CHAR = 3;
+        private static final int INT = 4;
+        private static final int LONG = 5;
+        private static final int FLOAT = 6;
+        private static final int DOUBLE = 7;
+        private static final int STRING = 8;
+        private static final int OBJECT = 9;
+
+        private final long offset;
+        private final int kind;
+
+        FieldAccessor(Field field) {
+            offset = X10Unsafe.objectFieldOffset(field);
+            Class<?> type = field.getType();
+            if (type == boolean.class) {
+                kind = BOOLEAN;
+            } else if (type == byte.class) {
+                kind = BYTE;
+            } else if (type == short.class) {
+                kind = SHORT;
+            } else if (type == char.class) {
+                kind = CHAR;
+            } else if (type == int.class) {
+                kind = INT;
+            } else if (type == long.class) {
+                kind = LONG;
+            } else if (type == float.class) {
+                kind = FLOAT;
+            } else if (type == double.class) {
+                kind = DOUBLE;
+            } else if (type == String.class) {
+                kind = STRING;
+            } else {
+                kind = OBJECT;
+            }
+        }
+
+        /**
+         * Write the value of this field of obj to xjs.
+         */
+        void write(Object obj, X10JavaSerializer xjs) throws IOException {
+            switch (kind) {
+            case BOOLEAN: xjs.write(X10Unsafe.getBoolean(obj, offset)); break;
+            case BYTE: xjs.write(X10Unsafe.getByte(obj, offset)); break;
+            case SHORT: xjs.write(X10Unsafe.getShort(obj, offset)); break;
+            case CHAR: xjs.write(X10Unsafe.getChar(obj, offset)); break;
+            case INT: xjs.write(X10Unsafe.getInt(obj, offset)); break;
+            case LONG: xjs.write(X10Unsafe.getLong(obj, offset)); break;
+            case FLOAT: xjs.write(X10Unsafe.getFloat(obj, offset)); break;
+            case DOUBLE: xjs.write(X10Unsafe.getDouble(obj, offset)); break;
+            default: xjs.write(X10Unsafe.getObject(obj, offset)); break;
+            }
+        }
+
+        /**
+         * Read the value of this field of obj from jds.
+         */
+        void read(Object obj, X10JavaDeserializer jds) throws IOException {
+            switch (kind) {
+            case BOOLEAN: X10Unsafe.putBoolean(obj, offset, jds.readBoolean()); break;
+            case BYTE: X10Unsafe.putByte(obj, offset, jds.readByte()); break;
+            case SHORT: X10Unsafe.putShort(obj, offset, jds.readShort()); break;
+            case CHAR: X10Unsafe.putChar(obj, offset, jds.readChar()); break;
+            case INT: X10Unsafe.putInt(obj, offset, jds.readInt()); break;
+            case LONG: X10Unsafe.putLong(obj, offset, jds.readLong()); break;
+            case FLOAT: X10Unsafe.putFloat(obj, offset, jds.readFloat()); break;
+            case DOUBLE: X10Unsafe.putDouble(obj, offset, jds.readDouble()); break;
+            case STRING: X10Unsafe.putObject(obj, offset, jds.readString()); break;
+            default: X10Unsafe.putObject(obj, offset, jds.readObject()); break;
+            }
+        }
+
+        static FieldAccessor[] toArray(Collection<Field> fields) {
+            FieldAccessor[] ans = new FieldAccessor[fields.size()];
+            int i = 0;
+            for (Field field : fields) {
+                ans[i++] = new FieldAccessor(field);
+            }
+            return ans;
+        }
+    }
+
+    /**
+     * Invokes a serialization method on an object, either an instance method
+     * taking arg or a static method taking the object and arg.
+     * The result of the method, if any, is discarded.
+     */
+    interface MethodAccessor<A> {
+        void invoke(Object obj, A arg) throws IOException;
+    }
+
+    /**
+     * Create a MethodAccessor for method.
+     *
+     * Falls back to reflection if the method cannot be linked from this class,
+     * e.g., because it is not public or is defined by another class loader.
+     *
+     * @param method An instance method with one parameter of type argType or a
+     *        static method with two parameters, the second of type argType
+     * @param argType The type of the argument of the accessor
+     */
+    @SuppressWarnings("unchecked")
+    static <A> MethodAccessor<A> bind(Method method, Class<A> argType) {
+        Class<?> owner = method.getDeclaringClass();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        try {
+            boolean visible = Modifier.isPublic(method.getModifiers()) && isVisible(owner) && isVisible(method.getReturnType());
+            for (Class<?> type : method.getParameterTypes()) {
+                visible &= isVisible(type);
+            }
+            if (visible) {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                Class<?> receiver = isStatic ? method.getParameterTypes()[0] : owner;
+                CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(MethodAccessor.class),
+                                                              MethodType.methodType(void.class, Object.class, Object.class),
+                                                              lookup.unreflect(method),
+                                                              MethodType.methodType(void.class, receiver, argType));
+                return (MethodAccessor<A>) site.getTarget().invoke();
+            }
+        } catch (Throwable e) {
+            if (Runtime.TRACE_SER) {
+                Runtime.printTraceMessage("Cannot generate accessor for "+method+": "+e);
+            }
+        }
+        return new ReflectiveMethodAccessor<A>(method, isStatic);
+    }
+
+    private static boolean isVisible(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        if (clazz.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(clazz.getName(), false, Accessors.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static final class ReflectiveMethodAccessor<A> implements MethodAccessor<A> {
+        private final Method method;
+        private final boolean isStatic;
+
+        ReflectiveMethodAccessor(Method method, boolean isStatic) {
+            method.setAccessible(true);
+            this.method = method;
+            this.isStatic = isStatic;
+        }
+
+        public void invoke(Object obj, A arg) throws IOException {
+            try {
+                if (isStatic) {
+                    method.invoke(null, obj, arg);
+                } else {
+                    method.invoke(obj, arg);
+                }
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause; // don't wrap
+                } else if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                } else {
+                    throw new SerializationException(cause != null ? cause : e);
+                }
+            } catch (IllegalAccessException e) {
+                throw new SerializationException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+package x10.serialization;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream writing into a growable direct ByteBuffer, so that
+ * serialized messages can be handed to the network transport without
+ * intermediate copies.<p>
+ * 
+ * Streams are pooled per thread: {@link #acquire()} hands out the cached
+ * stream of the current thread (or a fresh one if that stream is in use,
+ * e.g., by a message sent while serializing another one) and
+ * {@link #release()} returns it to the cache.
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static final ThreadLocal<ByteBufferOutputStream> cache = new ThreadLocal<ByteBufferOutputStream>();
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+    /**
+     * Get an empty stream for the current thread.
+     */
+    public static ByteBufferOutputStream acquire() {
+        ByteBufferOutputStream stream = cache.get();
+        if (stream == null) {
+            return new ByteBufferOutputStream();
+        }
+        cache.set(null);
+        stream.buffer.clear();
+        return stream;
+    }
+
+    /**
+     * Return this stream to the cache of the current thread.
+     * The buffer returned by {@link #flip()} must not be used afterwards.
+     */
+    public void release() {
+        cache.set(this);
+    }
+
+    /**
+     * Get the buffer ready to be read from the first to the last byte written.
+     */
+    public ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Copy the bytes written so far into a new array.
+     */
+    public byte[] toByteArray() {
+        ByteBuffer data = buffer.duplicate();
+        data.flip();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+    private void ensureRemaining(int n) {
+        if (buffer.remaining() < n) {
+            ByteBuffer tmp = ByteBuffer.allocateDirect(Math.max(buffer.position() + n, 2 * buffer.capacity()));
+            buffer.flip();
+            tmp.put(buffer);
+            buffer = tmp;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureRemaining(len);
+        buffer.put(b, off, len);
+    }
+}
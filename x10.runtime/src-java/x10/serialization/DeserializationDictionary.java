@@ -17,6 +17,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import x10.io.SerializationException;
 import x10.runtime.impl.java.Runtime;
 import x10.runtime.impl.java.Runtime.OSGI_MODES;
 
@@ -272,6 +273,9 @@ abstract class DeserializationDictionary implements SerializationConstants {
     static final class LocalDeserializationDictionary extends DeserializationDictionary {
         final private DeserializationDictionary shared;
 
+        // ids of the link from the source place, if any
+        LinkDeserializationDictionary link;
+
         LocalDeserializationDictionary(DeserializationDictionary parent) {
             super(new HashMap<Short, Method>(), new HashMap<Short, Class<?>>());
             this.shared = parent;
@@ -295,15 +299,26 @@ abstract class DeserializationDictionary implements SerializationConstants {
         }
 
         void deserializeIdAssignment(X10JavaDeserializer jds) throws IOException {
+            deserializeIdAssignment(jds, this);
+        }
+
+        void deserializeLinkIdAssignment(X10JavaDeserializer jds) throws IOException {
+            if (link == null) {
+                throw new SerializationException("link id assignment in a message without link header");
+            }
+            deserializeIdAssignment(jds, link);
+        }
+
+        private static void deserializeIdAssignment(X10JavaDeserializer jds, DeserializationDictionary target) throws IOException {
             short id = jds.readShort();
             String name = jds.readStringValue();
             if (Runtime.TRACE_SER) {
                 Runtime.printTraceMessage("\tserialization id: "+id+" = "+name);                
             }
             if (Runtime.OSGI != OSGI_MODES.DISABLED) {
-                addEntry(id, name, jds);
+                target.addEntry(id, name, jds);
             } else {
-                addEntry(id, name);
+                target.addEntry(id, name);
             }
         }
 
@@ -312,6 +327,9 @@ abstract class DeserializationDictionary implements SerializationConstants {
             if (sid < FIRST_DYNAMIC_ID) {
                 return shared.getClassForID(sid);
             }
+            if (sid >= FIRST_LINK_ID && link != null) {
+                return link.getClassForID(sid);
+            }
             Class<?> clazz = super.getClassForID(sid);
             assert clazz != null : "DeserializationDictionary: id "+sid+" is not mapped to a class!";
             return clazz;
@@ -321,9 +339,61 @@ abstract class DeserializationDictionary implements SerializationConstants {
         Method getMethod(short sid) {
             if (sid < FIRST_DYNAMIC_ID) {
                 return shared.getMethod(sid);
+            } else if (sid >= FIRST_LINK_ID && link != null) {
+                return link.getMethod(sid);
             } else {
                 return super.getMethod(sid);
             }
         }
     }
+
+    /**
+     * A DeserializationDictionary that is used to maintain the ids assigned to classes
+     * by one place for the messages it sends to this place.  Entries are added by
+     * the messages that name them, in any order, and never removed.
+     */
+    static final class LinkDeserializationDictionary extends DeserializationDictionary {
+        private volatile int known; // the number of consecutive link ids known, from FIRST_LINK_ID
+
+        LinkDeserializationDictionary() {
+            super(new ConcurrentHashMap<Short, Method>(), new ConcurrentHashMap<Short, Class<?>>());
+        }
+
+        // several messages from the source may name the same class concurrently
+        @Override
+        synchronized void addEntry(short id, String name) {
+            if (idsToClass.containsKey(Short.valueOf(id))) return;
+            super.addEntry(id, name);
+            advance();
+        }
+
+        @Override
+        synchronized void addEntry(short id, String name, X10JavaDeserializer jds) {
+            if (idsToClass.containsKey(Short.valueOf(id))) return;
+            super.addEntry(id, name, jds);
+            advance();
+        }
+
+        private void advance() {
+            int n = known;
+            while (FIRST_LINK_ID + n <= LAST_LINK_ID && idsToClass.containsKey(Short.valueOf((short) (FIRST_LINK_ID + n)))) {
+                n++;
+            }
+            known = n;
+        }
+
+        /**
+         * The number of link ids that the source place may use without naming the class.
+         */
+        int getKnownCount() {
+            return known;
+        }
+
+        @Override
+        Class<?> getClassForID(short sid) {
+            Class<?> clazz = super.getClassForID(sid);
+            assert clazz != null : "DeserializationDictionary: link id "+sid+" is not mapped to a class!";
+            return clazz;
+        }
+    }
 }
\ No newline at end of file
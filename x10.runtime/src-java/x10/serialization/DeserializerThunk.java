@@ -13,7 +13,6 @@ package x10.serialization;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.TypeVariable;
@@ -28,6 +27,8 @@ import x10.rtt.NamedType;
 import x10.rtt.RuntimeType;
 import x10.runtime.impl.java.Runtime;
 import x10.runtime.impl.java.X10Unsafe;
+import x10.serialization.Accessors.FieldAccessor;
+import x10.serialization.Accessors.MethodAccessor;
 
 /**
  * An instance of a DeserializerThunk knows how to deserialize a specific class.
@@ -166,13 +167,13 @@ abstract class DeserializerThunk {
      * A thunk for a vanilla X10 class (supports compiler-generated serialization code).
      */
     private static class X10JavaSerializableDeserializerThunk extends DeserializerThunk {
-        protected final Method deserializeBodyMethod;
+        protected final MethodAccessor<X10JavaDeserializer> deserializeBodyMethod;
 
         X10JavaSerializableDeserializerThunk(Class<? extends Object> clazz) {
             super(null);  // The compiler-generated serialization code will invoke the superclass deserializer directly
             
             try {
-                deserializeBodyMethod = clazz.getDeclaredMethod("$_deserialize_body", clazz, X10JavaDeserializer.class);
+                deserializeBodyMethod = Accessors.bind(clazz.getDeclaredMethod("$_deserialize_body", clazz, X10JavaDeserializer.class), X10JavaDeserializer.class);
             } catch (SecurityException e) {
                 System.err.println("DeserializerThunk: class "+clazz+" does not have a $_deserialize_body method");
                 throw new SerializationException(e);
@@ -180,31 +181,17 @@ abstract class DeserializerThunk {
                 System.err.println("DeserializerThunk: class "+clazz+" does not have a $_deserialize_body method");
                 throw new SerializationException(e);
             }
-            deserializeBodyMethod.setAccessible(true);
         }
 
         @Override
         protected <T> T deserializeBody(Class<?> clazz, T obj, int i, X10JavaDeserializer jds) throws IOException {
-            try {
-                deserializeBodyMethod.invoke(null, obj, jds);
-            } catch (InvocationTargetException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof RuntimeException) {
-                    throw (RuntimeException)cause; // don't wrap
-                } else {
-                    throw new SerializationException(cause != null ? cause : e);
-                }
-            } catch (RuntimeException e) {
-                throw e; // don't wrap
-            } catch (Throwable e) {
-                throw new SerializationException(e);
-            }
+            deserializeBodyMethod.invoke(obj, jds);
             return obj;
         }
     }
     
     private static class FieldBasedDeserializerThunk extends DeserializerThunk {
-        protected final Field[] fields;
+        protected final FieldAccessor[] fields;
 
         FieldBasedDeserializerThunk(Class<? extends Object> clazz, DeserializerThunk st) {
             super(st);
@@ -223,54 +210,22 @@ abstract class DeserializerThunk {
                 if (Modifier.isStatic(modifiers) || (Modifier.isTransient(modifiers) && readObjectMethod == null)) {
                     continue;
                 }
-                field.setAccessible(true);
                 flds.add(field);
             }
-            fields = flds.toArray(new Field[flds.size()]);
+            fields = FieldAccessor.toArray(flds);
         }
 
         protected <T> T deserializeBody(Class<?> clazz, T obj, int i, X10JavaDeserializer jds) throws IOException {
-            for (Field field : fields) {
-                try {
-                    Class<?> type = field.getType();
-                    if (type.isPrimitive()) {
-                        Class<?> type1 = field.getType();
-                        if ("int".equals(type1.getName())) {
-                            field.setInt(obj, jds.readInt());
-                        } else if ("double".equals(type1.getName())) {
-                            field.setDouble(obj, jds.readDouble());
-                        } else if ("float".equals(type1.getName())) {
-                            field.setFloat(obj, jds.readFloat());
-                        } else if ("boolean".equals(type1.getName())) {
-                            field.setBoolean(obj, jds.readBoolean());
-                        } else if ("byte".equals(type1.getName())) {
-                            field.setByte(obj, jds.readByte());
-                        } else if ("short".equals(type1.getName())) {
-                            field.setShort(obj, jds.readShort());
-                        } else if ("long".equals(type1.getName())) {
-                            field.setLong(obj, jds.readLong());
-                        } else if ("char".equals(type1.getName())) {
-                            field.setChar(obj, jds.readChar());
-                        }
-                    } else if ("java.lang.String".equals(type.getName())) {
-                        field.set(obj, jds.readString());
-                    } else {
-                        Object value = jds.readObject();
-                        field.set(obj, value);
-                    }
-                } catch (RuntimeException e) {
-                    throw e; // don't wrap
-                } catch (Throwable e) {
-                    throw new SerializationException(e);
-                }
+            for (FieldAccessor field : fields) {
+                field.read(obj, jds);
             }
             return obj;
         }
     }
 
     private static class CustomDeserializerThunk extends DeserializerThunk {
-        protected final Field[] fields;
-        protected final Method deserializationConstructor;
+        protected final FieldAccessor[] fields;
+        protected final MethodAccessor<Deserializer> deserializationConstructor;
 
         CustomDeserializerThunk(Class<? extends Object> clazz) {
             super(null);
@@ -285,21 +240,20 @@ abstract class DeserializerThunk {
                 for (TypeVariable<? extends Class<? extends Object>> typeParameter: typeParameters) {
                     try {
                         Field field = clazz.getDeclaredField(typeParameter.getName());
-                        field.setAccessible(true);
                         flds.add(field);
                     } catch (NoSuchFieldException e) {
                         throw new SerializationException(e);
                     }
                 }
-                fields = flds.toArray(new Field[flds.size()]); 
+                fields = FieldAccessor.toArray(flds);
             } else {
-                fields = new Field[0];
+                fields = new FieldAccessor[0];
             }
 
             // We can't use the same method name in all classes cause it creates an endless loop cause when super.init is called it calls back to this method
             try {
-                deserializationConstructor = clazz.getMethod(clazz.getName().replace(".", "$") + "$_deserialize_body", Deserializer.class);
-                deserializationConstructor.setAccessible(true);
+                Method method = clazz.getMethod(clazz.getName().replace(".", "$") + "$_deserialize_body", Deserializer.class);
+                deserializationConstructor = Accessors.bind(method, Deserializer.class);
             } catch (NoSuchMethodException e) {
                 throw new SerializationException(e);
             }
@@ -307,31 +261,11 @@ abstract class DeserializerThunk {
 
         @Override
         protected <T> T deserializeBody(Class<?> clazz, T obj, int i, X10JavaDeserializer jds) throws IOException {
-            for (Field field : fields) {
-                Object value = jds.readObject();
-                try {
-                    field.set(obj, value);
-                } catch (IllegalArgumentException e) {
-                    throw new SerializationException(e);
-                } catch (IllegalAccessException e) {
-                    throw new SerializationException(e);
-                }
+            for (FieldAccessor field : fields) {
+                field.read(obj, jds);
             }
 
-            try {
-                deserializationConstructor.invoke(obj, new Deserializer(jds));
-            } catch (InvocationTargetException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof RuntimeException) {
-                    throw (RuntimeException)cause; // don't wrap
-                } else {
-                    throw new SerializationException(cause != null ? cause : e);
-                }
-            } catch (RuntimeException e) {
-                throw e; // don't wrap
-            } catch (Throwable e) {
-                throw new SerializationException(e);
-            }
+            deserializationConstructor.invoke(obj, new Deserializer(jds));
             short marker = jds.readSerializationId();
             if (marker != SerializationConstants.CUSTOM_SERIALIZATION_END) {
                 X10JavaDeserializer.raiseSerializationProtocolError();
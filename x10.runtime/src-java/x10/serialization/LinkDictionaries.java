@@ -0,0 +1,69 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package x10.serialization;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import x10.serialization.DeserializationDictionary.LinkDeserializationDictionary;
+import x10.serialization.SerializationDictionary.LinkSerializationDictionary;
+
+/**
+ * Serialization ids negotiated between pairs of places.
+ * 
+ * The first message from place A to place B that contains an instance of
+ * a class without a shared id names the class together with a link id chosen by A.
+ * B remembers the assignment for the lifetime of the link and reports in the
+ * header of every message it sends back to A how many link ids it knows.  From then
+ * on A sends the bare 2-byte id, instead of the class name in every message.
+ * 
+ * Place ids are never reused, so a place added by addPlaces starts with fresh
+ * tables.  When a place dies only the table for messages to it is dropped, since
+ * messages from it may still be in flight.
+ */
+public final class LinkDictionaries {
+
+    private static final ConcurrentHashMap<Integer, LinkSerializationDictionary> outgoing = new ConcurrentHashMap<Integer, LinkSerializationDictionary>();
+    private static final ConcurrentHashMap<Integer, LinkDeserializationDictionary> incoming = new ConcurrentHashMap<Integer, LinkDeserializationDictionary>();
+
+    private LinkDictionaries() {}
+
+    static LinkSerializationDictionary getSerializationDictionary(int place) {
+        Integer key = Integer.valueOf(place);
+        LinkSerializationDictionary dict = outgoing.get(key);
+        if (dict == null) {
+            dict = new LinkSerializationDictionary();
+            LinkSerializationDictionary old = outgoing.putIfAbsent(key, dict);
+            if (old != null) dict = old;
+        }
+        return dict;
+    }
+
+    static LinkDeserializationDictionary getDeserializationDictionary(int place) {
+        Integer key = Integer.valueOf(place);
+        LinkDeserializationDictionary dict = incoming.get(key);
+        if (dict == null) {
+            dict = new LinkDeserializationDictionary();
+            LinkDeserializationDictionary old = incoming.putIfAbsent(key, dict);
+            if (old != null) dict = old;
+        }
+        return dict;
+    }
+
+    /**
+     * Forget the ids negotiated with a place that has died.
+     * Messages from the place may still be in flight, so only the outgoing
+     * table is dropped; the incoming table is only a few entries per class.
+     */
+    public static void placeRemoved(int place) {
+        outgoing.remove(Integer.valueOf(place));
+    }
+}
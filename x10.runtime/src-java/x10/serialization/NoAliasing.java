@@ -0,0 +1,31 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package x10.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose instances, when sent as the body of an async or a
+ * closure, reach an object graph with neither shared objects nor cycles.
+ * The runtime then serializes the body without tracking object identity.
+ * The Java backend puts this annotation on the closure class of asyncs
+ * annotated with the X10 annotation {@code x10.compiler.NoAliasing}.
+ * 
+ * @see X10JavaSerializer#setTrackAliasing(boolean)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NoAliasing {
+}
@@ -54,4 +54,9 @@ public interface SerializationConstants {
     public static final short CUSTOM_SERIALIZATION_END = REPEATED_OBJECT_ID - 3;
     public static final short DYNAMIC_ID_ID = REPEATED_OBJECT_ID - 4;
     public static final short RESET_OBJECT_GRAPH_BOUNDARY_ID = REPEATED_OBJECT_ID -5;
+    public static final short LINK_ID_ID = REPEATED_OBJECT_ID - 6;
+
+    // ids negotiated between pairs of places (see LinkDictionaries)
+    public static final short FIRST_LINK_ID = 16384;
+    public static final short LAST_LINK_ID = REPEATED_OBJECT_ID - 7;
 }
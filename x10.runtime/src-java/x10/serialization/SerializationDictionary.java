@@ -47,7 +47,11 @@ abstract class SerializationDictionary implements SerializationConstants {
     }
 
     void serializeIdAssignment(DataOutputStream dos, short id, Class<?> clazz) throws IOException {
-        dos.writeShort(DYNAMIC_ID_ID);
+        serializeIdAssignment(dos, DYNAMIC_ID_ID, id, clazz);
+    }
+
+    void serializeIdAssignment(DataOutputStream dos, short kind, short id, Class<?> clazz) throws IOException {
+        dos.writeShort(kind);
         dos.writeShort(id);
         String name = clazz.getName();
         dos.writeInt(name.length());
@@ -126,6 +130,9 @@ abstract class SerializationDictionary implements SerializationConstants {
     static final class LocalSerializationDictionary extends SerializationDictionary {
         final SerializationDictionary parent;
 
+        // ids of the link to the destination place, if any
+        LinkSerializationDictionary link;
+
         protected short nextId;
 
         public LocalSerializationDictionary(SerializationDictionary parent, short firstId) {
@@ -140,6 +147,16 @@ abstract class SerializationDictionary implements SerializationConstants {
                 if (sid != NO_PREASSIGNED_ID) return sid;
             }
             short sid = super.getSerializationId(clazz, obj, dos);
+            if (sid == NO_PREASSIGNED_ID && link != null) {
+                sid = link.getLinkId(clazz);
+                if (sid != NO_PREASSIGNED_ID) {
+                    // name the class until the destination confirms it knows the id
+                    if (!link.isAcknowledged(sid)) {
+                        serializeIdAssignment(dos, LINK_ID_ID, sid, clazz);
+                    }
+                    dict.put(clazz, sid);
+                }
+            }
             if (sid == NO_PREASSIGNED_ID) {
                 sid = Short.valueOf(nextId++);
                 serializeIdAssignment(dos, sid, clazz);
@@ -148,4 +165,54 @@ abstract class SerializationDictionary implements SerializationConstants {
             return sid;
         }
     }
+
+    /**
+     * A SerializationDictionary that is used to maintain the ids assigned to classes
+     * for the messages sent to one place.  Ids are assigned once and for all by the
+     * sending place; the class name is sent along with the id until the destination
+     * acknowledges (in the header of a message sent back) all ids up to this one.
+     */
+    static final class LinkSerializationDictionary extends SerializationDictionary {
+        private short nextId = FIRST_LINK_ID; // guarded by this
+        private volatile int acknowledged;
+
+        LinkSerializationDictionary() {
+            super(new ConcurrentHashMap<Class<?>, Short>());
+        }
+
+        /**
+         * Return the link id of clazz, assigning it if needed, or NO_PREASSIGNED_ID
+         * if the link ids are exhausted.
+         */
+        short getLinkId(Class<?> clazz) {
+            Short id = dict.get(clazz);
+            if (id != null) {
+                return id.shortValue();
+            }
+            synchronized (this) {
+                id = dict.get(clazz);
+                if (id == null) {
+                    if (nextId > LAST_LINK_ID) {
+                        return NO_PREASSIGNED_ID;
+                    }
+                    id = Short.valueOf(nextId++);
+                    dict.put(clazz, id);
+                }
+            }
+            return id.shortValue();
+        }
+
+        boolean isAcknowledged(short id) {
+            return id - FIRST_LINK_ID < acknowledged;
+        }
+
+        /**
+         * Record that the destination knows the first count link ids.
+         */
+        synchronized void acknowledge(int count) {
+            if (count > acknowledged) {
+                acknowledged = count;
+            }
+        }
+    }
 }
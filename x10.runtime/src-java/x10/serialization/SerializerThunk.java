@@ -21,6 +21,8 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import x10.io.CustomSerialization;
+import x10.serialization.Accessors.FieldAccessor;
+import x10.serialization.Accessors.MethodAccessor;
 import x10.runtime.impl.java.Runtime;
 
 /**
@@ -139,29 +141,28 @@ abstract class SerializerThunk {
      * A thunk for a vanilla X10 class (supports compiler-generated serialization code).
      */
     private static class X10JavaSerializableSerializerThunk extends SerializerThunk {
-        protected final Method serializeMethod;
+        protected final MethodAccessor<X10JavaSerializer> serializeMethod;
 
         public X10JavaSerializableSerializerThunk(Class<?> clazz) {
             super(null); // The compiler-generated serialization code will invoke the superclass serializer directly
             try {
-                serializeMethod = clazz.getMethod("$_serialize", X10JavaSerializer.class);
+                serializeMethod = Accessors.bind(clazz.getMethod("$_serialize", X10JavaSerializer.class), X10JavaSerializer.class);
             } catch (NoSuchMethodException e) {
                 String msg = "SerializerThunk: class "+clazz+" does not have a $_serialize method";
                 System.err.println(msg);
                 e.printStackTrace();
                 throw new RuntimeException(msg, e);
             }
-            serializeMethod.setAccessible(true);
         }
 
         @Override
-        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IOException {
             serializeMethod.invoke(obj, xjs);
         }
     }
     
     private static class FieldBasedSerializerThunk extends SerializerThunk {
-        protected final Field[] fields;
+        protected final FieldAccessor[] fields;
 
         FieldBasedSerializerThunk(Class<? extends Object> clazz, SerializerThunk st) {
             super(st);
@@ -180,43 +181,20 @@ abstract class SerializerThunk {
                 if (Modifier.isStatic(modifiers) || (Modifier.isTransient(modifiers) && readObjectMethod == null)) {
                     continue;
                 }
-                field.setAccessible(true);
                 flds.add(field);
             }
-            fields = flds.toArray(new Field[flds.size()]);
+            fields = FieldAccessor.toArray(flds);
         }
 
-        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IllegalAccessException, IOException {
-            for (Field field : fields) {
-                Class<?> type = field.getType();
-                if (type.isPrimitive()) {
-                    Class<?> type1 = field.getType();
-                    if ("int".equals(type1.getName())) {
-                        xjs.write(field.getInt(obj));
-                    } else if ("double".equals(type1.getName())) {
-                        xjs.write(field.getDouble(obj));
-                    } else if ("float".equals(type1.getName())) {
-                        xjs.write(field.getFloat(obj));
-                    } else if ("boolean".equals(type1.getName())) {
-                        xjs.write(field.getBoolean(obj));
-                    } else if ("byte".equals(type1.getName())) {
-                        xjs.write(field.getByte(obj));
-                    } else if ("short".equals(type1.getName())) {
-                        xjs.write(field.getShort(obj));
-                    } else if ("long".equals(type1.getName())) {
-                        xjs.write(field.getLong(obj));
-                    } else if ("char".equals(type1.getName())) {
-                        xjs.write(field.getChar(obj));
-                    }
-                } else {
-                    xjs.write(field.get(obj));
-                }
+        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IOException {
+            for (FieldAccessor field : fields) {
+                field.write(obj, xjs);
             }
         }
     }
     
     private static class CustomSerializerThunk extends SerializerThunk {
-        protected final Field[] fields;
+        protected final FieldAccessor[] fields;
 
         CustomSerializerThunk(Class<? extends Object> clazz) throws SecurityException, NoSuchFieldException {
             super(null);
@@ -230,18 +208,17 @@ abstract class SerializerThunk {
                 Set<Field> flds = new TreeSet<Field>(new FieldComparator());
                 for (TypeVariable<? extends Class<? extends Object>> typeParameter: typeParameters) {
                     Field field = clazz.getDeclaredField(typeParameter.getName());
-                    field.setAccessible(true);
                     flds.add(field);                  
                 }
-                fields = flds.toArray(new Field[flds.size()]);    
+                fields = FieldAccessor.toArray(flds);
             } else {
-                fields = new Field[0];
+                fields = new FieldAccessor[0];
             }                     
         }
 
-        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IllegalArgumentException, IOException, IllegalAccessException {
-            for (Field field: fields) {
-                xjs.write(field.get(obj));
+        <T> void serializeBody(T obj, Class<? extends Object> clazz, X10JavaSerializer xjs) throws IOException {
+            for (FieldAccessor field: fields) {
+                field.write(obj, xjs);
             }
             CustomSerialization cs = (CustomSerialization)obj;
             cs.serialize(new x10.io.Serializer(xjs));
@@ -357,6 +357,11 @@ class X10IdentityHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, C
         return new Entry[s];
     }
 
+    // the length of the element array, which clear() keeps
+    int capacity() {
+        return elementData.length;
+    }
+
     /**
      * Constructs a new empty instance of X10IdentityHashMap.
      * 
@@ -18,6 +18,7 @@ import java.io.ObjectInputStream;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import x10.core.Rail;
@@ -58,6 +59,18 @@ public final class X10JavaDeserializer implements SerializationConstants {
         init(js);
     }
     
+    /**
+     * Read the header written by X10JavaSerializer.writeLinkHeader and
+     * use the serialization ids negotiated with the sending place.
+     * @return the id of the sending place
+     */
+    public int readLinkHeader() throws IOException {
+        int source = in.readInt();
+        int ack = in.readShort() & 0xFFFF;
+        LinkDictionaries.getSerializationDictionary(source).acknowledge(ack);
+        dict.link = LinkDictionaries.getDeserializationDictionary(source);
+        return source;
+    }
 
     /*
      * Constructor/init for usage as the backing @NativeClass for x10.io.Deserializer
@@ -128,12 +141,19 @@ public final class X10JavaDeserializer implements SerializationConstants {
      */
     public short readSerializationId() throws IOException {
         short sid = in.readShort();
-        while (sid == DYNAMIC_ID_ID) {
+        while (sid == DYNAMIC_ID_ID || sid == LINK_ID_ID) {
             // A dictionary entry; process it and keep looking for the actual sid
-            if (Runtime.TRACE_SER) {
-                Runtime.printTraceMessage("Adding a dynamic serialization id to the dictionary");
+            if (sid == DYNAMIC_ID_ID) {
+                if (Runtime.TRACE_SER) {
+                    Runtime.printTraceMessage("Adding a dynamic serialization id to the dictionary");
+                }
+                dict.deserializeIdAssignment(this);
+            } else {
+                if (Runtime.TRACE_SER) {
+                    Runtime.printTraceMessage("Adding a link serialization id to the dictionary");
+                }
+                dict.deserializeLinkIdAssignment(this);
             }
-            dict.deserializeIdAssignment(this);
             sid = in.readShort();
         }
         if (Runtime.TRACE_SER) {
@@ -215,83 +235,140 @@ public final class X10JavaDeserializer implements SerializationConstants {
         }
         short componentTypeID = readSerializationId();
         int length = in.readInt();
-        if (componentTypeID == INTEGER_ID) {
-            int[] v = new int[length];
+        if (isPrimitiveArrayID(componentTypeID)) {
+            Object v = readPrimitiveArray(componentTypeID, length);
+            record_reference(v);
+            return v;
+        } else if (componentTypeID == STRING_ID) {
+            String[] v = new String[length];
             record_reference(v);
             for (int i = 0; i < length; i++) {
-                v[i] = in.readInt();
+                v[i] = readString();
             }
             return v;
-        } else if (componentTypeID == DOUBLE_ID) {
+        } else {
+            Class<?> componentType = getClassForID(componentTypeID);
+            Object obj = Array.newInstance(componentType, length);
+            record_reference(obj);
+            // avoid native method
+            //for (int i = 0; i < length; ++i) {
+            //    Array.set(obj, i, readObject());
+            //}
+            Object[] v = (Object[]) obj;
+            for (int i = 0; i < length; ++i) {
+                v[i] = readObject();
+            }
+            return obj;
+        }
+    }
+
+    private static boolean isPrimitiveArrayID(short componentTypeID) {
+        switch (componentTypeID) {
+        case INTEGER_ID: case DOUBLE_ID: case FLOAT_ID: case BOOLEAN_ID:
+        case BYTE_ID: case SHORT_ID: case LONG_ID: case CHARACTER_ID:
+            return true;
+        default:
+            return false;
+        }
+    }
+    
+    /*
+     * Read an array of a Java primitive type written by 
+     * X10JavaSerializer.writePrimitiveArray.
+     */
+    public Object readPrimitiveArray() throws IOException {
+        short componentTypeID = readSerializationId();
+        int length = in.readInt();
+        if (!isPrimitiveArrayID(componentTypeID)) {
+            throw new SerializationException("Not an array of a Java primitive type: " + componentTypeID);
+        }
+        return readPrimitiveArray(componentTypeID, length);
+    }
+    
+    // the elements are read in bulk, one chunk at a time, and converted through a ByteBuffer view
+    private Object readPrimitiveArray(short componentTypeID, int length) throws IOException {
+        switch (componentTypeID) {
+        case INTEGER_ID: {
+            int[] v = new int[length];
+            for (int i = 0; i < length; i += CHUNK_SIZE/4) {
+                int n = Math.min(CHUNK_SIZE/4, length - i);
+                readChunk(4*n).asIntBuffer().get(v, i, n);
+            }
+            return v;
+        }
+        case DOUBLE_ID: {
             double[] v = new double[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readDouble();
+            for (int i = 0; i < length; i += CHUNK_SIZE/8) {
+                int n = Math.min(CHUNK_SIZE/8, length - i);
+                readChunk(8*n).asDoubleBuffer().get(v, i, n);
             }
             return v;
-        } else if (componentTypeID == FLOAT_ID) {
+        }
+        case FLOAT_ID: {
             float[] v = new float[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readFloat();
+            for (int i = 0; i < length; i += CHUNK_SIZE/4) {
+                int n = Math.min(CHUNK_SIZE/4, length - i);
+                readChunk(4*n).asFloatBuffer().get(v, i, n);
             }
             return v;
-        } else if (componentTypeID == BOOLEAN_ID) {
+        }
+        case BOOLEAN_ID: {
             boolean[] v = new boolean[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readBoolean();
+            for (int i = 0; i < length; i += CHUNK_SIZE) {
+                int n = Math.min(CHUNK_SIZE, length - i);
+                byte[] bytes = readChunk(n).array();
+                for (int j = 0; j < n; j++) {
+                    v[i + j] = bytes[j] != 0;
+                }
             }
             return v;
-        } else if (componentTypeID == BYTE_ID) {
+        }
+        case BYTE_ID: {
             byte[] v = new byte[length];
-            record_reference(v);
             _readByteArray(length, v);
             return v;
-        } else if (componentTypeID == SHORT_ID) {
+        }
+        case SHORT_ID: {
             short[] v = new short[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readShort();
+            for (int i = 0; i < length; i += CHUNK_SIZE/2) {
+                int n = Math.min(CHUNK_SIZE/2, length - i);
+                readChunk(2*n).asShortBuffer().get(v, i, n);
             }
             return v;
-        } else if (componentTypeID == LONG_ID) {
+        }
+        case LONG_ID: {
             long[] v = new long[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readLong();
+            for (int i = 0; i < length; i += CHUNK_SIZE/8) {
+                int n = Math.min(CHUNK_SIZE/8, length - i);
+                readChunk(8*n).asLongBuffer().get(v, i, n);
             }
             return v;
-        } else if (componentTypeID == CHARACTER_ID) {
+        }
+        default: {
             char[] v = new char[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = in.readChar();
+            for (int i = 0; i < length; i += CHUNK_SIZE/2) {
+                int n = Math.min(CHUNK_SIZE/2, length - i);
+                readChunk(2*n).asCharBuffer().get(v, i, n);
             }
             return v;
-        } else if (componentTypeID == STRING_ID) {
-            String[] v = new String[length];
-            record_reference(v);
-            for (int i = 0; i < length; i++) {
-                v[i] = readString();
-            }
-            return v;
-        } else {
-            Class<?> componentType = getClassForID(componentTypeID);
-            Object obj = Array.newInstance(componentType, length);
-            record_reference(obj);
-            // avoid native method
-            //for (int i = 0; i < length; ++i) {
-            //    Array.set(obj, i, readObject());
-            //}
-            Object[] v = (Object[]) obj;
-            for (int i = 0; i < length; ++i) {
-                v[i] = readObject();
-            }
-            return obj;
+        }
         }
     }
-
+    
+    // scratch space for converting bytes to primitive arrays
+    private static final int CHUNK_SIZE = 8192;
+    private ByteBuffer chunk;
+    
+    private ByteBuffer readChunk(int bytes) throws IOException {
+        if (chunk == null) {
+            chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+        in.readFully(chunk.array(), 0, bytes);
+        chunk.clear();
+        chunk.limit(bytes);
+        return chunk;
+    }
+    
     private void _readByteArray(int length, byte[] v) throws IOException {
         int read = 0;
         while (read < length) {
@@ -20,6 +20,7 @@ import java.io.OutputStream;
 //import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 
 import x10.core.GlobalRef;
 import x10.core.Rail;
@@ -28,6 +29,7 @@ import x10.io.SerializationException;
 import x10.rtt.Types;
 import x10.runtime.impl.java.Runtime;
 import x10.serialization.SerializationDictionary.LocalSerializationDictionary;
+import x10.x10rt.X10RT;
 
 public final class X10JavaSerializer implements SerializationConstants {
     
@@ -44,20 +46,39 @@ public final class X10JavaSerializer implements SerializationConstants {
     
     /*
      * Alternative backing output streams.  
-     * Exactly one of these will be non-null.
+     * Exactly one of these will be non-null, until release() is called.
      */
     private ByteArrayOutputStream b_out;
     private OutputStream o_out;
+    private ByteBufferOutputStream bb_out;
         
     // When a Object is serialized record its position
     // N.B. use custom IdentityHashMap class, as standard one has poor performance on J9
-    final X10IdentityHashMap<Object, Integer> objectMap = new X10IdentityHashMap<Object, Integer>();
+    // Allocated on first use, or taken from the per-thread cache filled by release()
+    X10IdentityHashMap<Object, Integer> objectMap;
     int counter = 0;
     
+    // When false, objects are numbered but not recorded in objectMap (see setTrackAliasing)
+    private boolean trackAliasing = true;
+    
+    // Identity tables larger than this are not worth clearing for reuse
+    private static final int MAX_CACHED_OBJECT_MAP_CAPACITY = 4096;
+    private static final ThreadLocal<X10IdentityHashMap<Object, Integer>> objectMapCache = new ThreadLocal<X10IdentityHashMap<Object, Integer>>();
+    
     // [GlobalGC] Table to remember serialized GlobalRefs, set and used in GlobalRef.java and InitDispatcher.java
-    final X10IdentityHashMap<GlobalRef<?>, Integer> grefMap = new X10IdentityHashMap<GlobalRef<?>, Integer>(); // for GlobalGC
-    public void addToGrefMap(GlobalRef<?> gr, int weight) { grefMap.put(gr, weight); }
-    public java.util.Map<GlobalRef<?>, Integer> getGrefMap() { return grefMap; }
+    X10IdentityHashMap<GlobalRef<?>, Integer> grefMap; // for GlobalGC, allocated on first use
+    public void addToGrefMap(GlobalRef<?> gr, int weight) {
+        if (grefMap == null) {
+            grefMap = new X10IdentityHashMap<GlobalRef<?>, Integer>();
+        }
+        grefMap.put(gr, weight);
+    }
+    public java.util.Map<GlobalRef<?>, Integer> getGrefMap() {
+        if (grefMap == null) {
+            return java.util.Collections.emptyMap();
+        }
+        return grefMap;
+    }
     
     // per-message id dictionary
     protected LocalSerializationDictionary idDictionary;
@@ -73,6 +94,14 @@ public final class X10JavaSerializer implements SerializationConstants {
     public X10JavaSerializer(x10.io.OutputStreamWriter os) {
         x10$serialization$X10JavaSerializer$$init$S(os);
     }
+    /*
+     * Serialize into a pooled direct buffer, to be handed to the network
+     * with getDataBuffer() and returned to the pool with release()
+     */
+    public X10JavaSerializer(ByteBufferOutputStream os) {
+        this.bb_out = os;
+        initCommon(os);
+    }
     /*
      * for use by generated code in two-phase construction. 
      */
@@ -99,6 +128,18 @@ public final class X10JavaSerializer implements SerializationConstants {
     }
 
     
+    /**
+     * Write the header of a message to the given place and use the
+     * serialization ids negotiated with it.  Must be called before
+     * anything else is written; the receiver must call
+     * X10JavaDeserializer.readLinkHeader.
+     */
+    public void writeLinkHeader(int place) throws IOException {
+        out.writeInt(X10RT.hereId());
+        out.writeShort(LinkDictionaries.getDeserializationDictionary(place).getKnownCount());
+        idDictionary.link = LinkDictionaries.getSerializationDictionary(place);
+    }
+
     public Rail<x10.core.Byte> toRail() {
         byte[] dataBytes = getDataBytes();
         return new Rail<x10.core.Byte>(Types.BYTE, dataBytes.length, dataBytes);
@@ -117,6 +158,58 @@ public final class X10JavaSerializer implements SerializationConstants {
     }
     
     public byte[] getDataBytes() {
+        flush();
+        if (b_out != null) {
+            return b_out.toByteArray();
+        } else if (bb_out != null) {
+            return bb_out.toByteArray();
+        } else {
+            throw new java.lang.UnsupportedOperationException("Cannot call getDataBytes() on Serializer that is backed with an OutputStreamWriter");
+        }
+    }
+    
+    /*
+     * Get the serialized data in place, without copying it.  The buffer is
+     * only valid until release() is called.
+     */
+    public ByteBuffer getDataBuffer() {
+        flush();
+        if (bb_out == null) {
+            throw new java.lang.UnsupportedOperationException("Cannot call getDataBuffer() on Serializer that is not backed with a ByteBufferOutputStream");
+        }
+        return bb_out.flip();
+    }
+    
+    /*
+     * Return the backing buffer of this serializer to its pool, if any, and
+     * its identity table to the cache of the current thread.  The serializer
+     * must not be used afterwards.
+     */
+    public void release() {
+        if (bb_out != null) {
+            bb_out.release();
+            bb_out = null;
+        }
+        if (objectMap != null) {
+            if (objectMap.capacity() <= MAX_CACHED_OBJECT_MAP_CAPACITY) {
+                objectMap.clear();
+                objectMapCache.set(objectMap);
+            }
+            objectMap = null;
+        }
+    }
+    
+    /*
+     * Whether to preserve sharing and cycles among the objects written from now on
+     * (the default).  Turning this off skips the identity table, which is only safe
+     * for object graphs known to be trees: a shared object is then deserialized as
+     * several copies and a cycle overflows the stack.
+     */
+    public void setTrackAliasing(boolean track) {
+        trackAliasing = track;
+    }
+    
+    private void flush() {
         try {
             out.flush();
         } catch (IOException e) {
@@ -127,11 +220,6 @@ public final class X10JavaSerializer implements SerializationConstants {
                 }
             }
         }
-        if (b_out == null) {
-            throw new java.lang.UnsupportedOperationException("Cannot call getDataBytes() on Serializer that is backed with an OutputStreamWriter");
-        } else {
-            return b_out.toByteArray();
-        }
     }
     
     public void newObjectGraph() {
@@ -144,7 +232,9 @@ public final class X10JavaSerializer implements SerializationConstants {
             e.printStackTrace();
             throw new SerializationException(e);
         }
-        objectMap.clear();
+        if (objectMap != null) {
+            objectMap.clear();
+        }
         counter = 0;
     }
     
@@ -393,6 +483,19 @@ public final class X10JavaSerializer implements SerializationConstants {
     }
 
     private Integer previous_position(Object obj, boolean writeRef) throws IOException {
+        if (!trackAliasing) {
+            // keep numbering objects as the deserializer does, for references written later
+            counter++;
+            return null;
+        }
+        if (objectMap == null) {
+            objectMap = objectMapCache.get();
+            if (objectMap == null) {
+                objectMap = new X10IdentityHashMap<Object, Integer>();
+            } else {
+                objectMapCache.set(null);
+            }
+        }
         Integer pos = objectMap.get(obj);
         if (pos != null) {
             if (Runtime.TRACE_SER) {
@@ -449,64 +552,8 @@ public final class X10JavaSerializer implements SerializationConstants {
         writeSerializationId(JAVA_ARRAY_ID);
         Class<?> componentType = obj.getClass().getComponentType();
         if (componentType.isPrimitive()) {
-            if ("int".equals(componentType.getName())) {
-                writeSerializationId(INTEGER_ID);
-                int[] array = (int[])obj;
-                out.writeInt(array.length);
-                for (int elem : array) {
-                    out.writeInt(elem);
-                }
-            } else if ("double".equals(componentType.getName())) {
-                writeSerializationId(DOUBLE_ID);
-                double[] array = (double[])obj;
-                out.writeInt(array.length);
-                for (double elem : array) {
-                    out.writeDouble(elem);
-                }
-            } else if ("float".equals(componentType.getName())) {
-                writeSerializationId(FLOAT_ID);
-                float[] array = (float[])obj;
-                out.writeInt(array.length);
-                for (float elem : array) {
-                    out.writeFloat(elem);
-                }
-            } else if ("boolean".equals(componentType.getName())) {
-                writeSerializationId(BOOLEAN_ID);
-                boolean[] array = (boolean[])obj;
-                out.writeInt(array.length);
-                for (boolean elem : array) {
-                    out.writeBoolean(elem);
-                }
-            } else if ("byte".equals(componentType.getName())) {
-                writeSerializationId(BYTE_ID);
-                byte[] array = (byte[])obj;
-                out.writeInt(array.length);
-                for (byte elem : array) {
-                    out.writeByte(elem);
-                }
-            } else if ("short".equals(componentType.getName())) {
-                writeSerializationId(SHORT_ID);
-                short[] array = (short[])obj;
-                out.writeInt(array.length);
-                for (short elem : array) {
-                    out.writeShort(elem);
-                }
-            } else if ("long".equals(componentType.getName())) {
-                writeSerializationId(LONG_ID);
-                long[] array = (long[])obj;
-                out.writeInt(array.length);
-                for (long elem : array) {
-                    out.writeLong(elem);
-                }
-            } else if ("char".equals(componentType.getName())) {
-                writeSerializationId(CHARACTER_ID);
-                char[] array = (char[])obj;
-                out.writeInt(array.length);
-                for (char elem : array) {
-                    out.writeChar(elem);
-                }
-            }
-        } else if ("java.lang.String".equals(componentType.getName())) {
+            writePrimitiveArray(obj);
+        } else if (componentType == String.class) {
             writeSerializationId(STRING_ID);
             String [] array = (String[])obj;
             out.writeInt(array.length);
@@ -530,6 +577,102 @@ public final class X10JavaSerializer implements SerializationConstants {
         }
     }
     
+    /*
+     * Write the component type id, the length and the elements of an array
+     * of a Java primitive type.  The elements are converted to bytes in bulk,
+     * one chunk at a time, in the same big-endian format DataOutputStream uses.
+     * X10JavaDeserializer.readPrimitiveArray reads them back.
+     */
+    public void writePrimitiveArray(Object obj) throws IOException {
+        Class<?> componentType = obj.getClass().getComponentType();
+        if (componentType == int.class) {
+            writeSerializationId(INTEGER_ID);
+            int[] array = (int[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/4) {
+                int n = Math.min(CHUNK_SIZE/4, array.length - i);
+                chunk().asIntBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 4*n);
+            }
+        } else if (componentType == double.class) {
+            writeSerializationId(DOUBLE_ID);
+            double[] array = (double[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/8) {
+                int n = Math.min(CHUNK_SIZE/8, array.length - i);
+                chunk().asDoubleBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 8*n);
+            }
+        } else if (componentType == float.class) {
+            writeSerializationId(FLOAT_ID);
+            float[] array = (float[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/4) {
+                int n = Math.min(CHUNK_SIZE/4, array.length - i);
+                chunk().asFloatBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 4*n);
+            }
+        } else if (componentType == boolean.class) {
+            writeSerializationId(BOOLEAN_ID);
+            boolean[] array = (boolean[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE) {
+                int n = Math.min(CHUNK_SIZE, array.length - i);
+                byte[] bytes = chunk().array();
+                for (int j = 0; j < n; j++) {
+                    bytes[j] = array[i + j] ? (byte) 1 : (byte) 0;
+                }
+                out.write(bytes, 0, n);
+            }
+        } else if (componentType == byte.class) {
+            writeSerializationId(BYTE_ID);
+            byte[] array = (byte[])obj;
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (componentType == short.class) {
+            writeSerializationId(SHORT_ID);
+            short[] array = (short[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/2) {
+                int n = Math.min(CHUNK_SIZE/2, array.length - i);
+                chunk().asShortBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 2*n);
+            }
+        } else if (componentType == long.class) {
+            writeSerializationId(LONG_ID);
+            long[] array = (long[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/8) {
+                int n = Math.min(CHUNK_SIZE/8, array.length - i);
+                chunk().asLongBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 8*n);
+            }
+        } else if (componentType == char.class) {
+            writeSerializationId(CHARACTER_ID);
+            char[] array = (char[])obj;
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i += CHUNK_SIZE/2) {
+                int n = Math.min(CHUNK_SIZE/2, array.length - i);
+                chunk().asCharBuffer().put(array, i, n);
+                out.write(chunk.array(), 0, 2*n);
+            }
+        } else {
+            throw new SerializationException("Not an array of a Java primitive type: " + obj.getClass().getName());
+        }
+    }
+    
+    // scratch space for converting primitive arrays to bytes
+    private static final int CHUNK_SIZE = 8192;
+    private ByteBuffer chunk;
+    
+    private ByteBuffer chunk() {
+        if (chunk == null) {
+            chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+        chunk.clear();
+        return chunk;
+    }
+    
     private void serializeSpecialType(short sid, Object obj) throws IOException {
         switch (sid) {
         case STRING_ID:
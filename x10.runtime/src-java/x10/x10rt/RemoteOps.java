@@ -0,0 +1,275 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package x10.x10rt;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentHashMap;
+
+import x10.core.GlobalRef;
+import x10.core.Rail;
+import x10.lang.DeadPlaceException;
+import x10.lang.GlobalRail;
+import x10.lang.Place;
+import x10.network.SocketTransport.CALLBACKID;
+import x10.network.SocketTransport.RETURNCODE;
+import x10.runtime.impl.java.Runtime;
+import x10.runtime.impl.java.X10Unsafe;
+
+/**
+ * Remote atomic updates of the elements of a GlobalRail[Long] or GlobalRail[ULong]
+ * (GlobalRail.remoteAdd, remoteAnd, remoteOr and remoteXor).
+ *
+ * With JavaSockets, an update is encoded in 25 bytes and sent as an active message
+ * that is applied by the thread receiving it, without deserializing a closure or
+ * creating an activity.  Updates to a place may be batched (see X10_REMOTE_OPS_BATCH);
+ * a batch is sent when it is full or when GlobalRail.flushRemoteOps() is called.
+ * As in Native X10, the updates are not tracked by finish.
+ * Other transports send the update as an immediate closure.
+ */
+final class RemoteOps {
+    // the operations, in the same order as x10rt_op_type
+    static final int ADD = 0;
+    static final int AND = 1;
+    static final int OR = 2;
+    static final int XOR = 3;
+
+    // the number of updates to a place sent in one message.  1 (default) sends every update immediately
+    static final String X10_REMOTE_OPS_BATCH = "X10_REMOTE_OPS_BATCH";
+    private static final int BATCH = Math.max(1, getIntFlag(X10_REMOTE_OPS_BATCH, 1));
+
+    // an update is the id of the rail at its home place, the index, the operation and the operand
+    private static final int OP_BYTES = 8 + 8 + 1 + 8;
+
+    private static final long LONG_ARRAY_BASE = X10Unsafe.arrayBaseOffset(long[].class);
+    private static final int LONG_ARRAY_SHIFT = 31 - Integer.numberOfLeadingZeros(X10Unsafe.arrayIndexScale(long[].class));
+
+    // the message of an unbatched update, which the transport writes out or copies before sendMessage returns
+    private static final ThreadLocal<ByteBuffer> singleOp = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(OP_BYTES);
+        }
+    };
+
+    private static final ConcurrentHashMap<Integer, Batch> batches = new ConcurrentHashMap<Integer, Batch>();
+
+    private RemoteOps() {}
+
+    static void remoteOp(GlobalRail<?> target, long idx, int op, long val) {
+        GlobalRef<?> ref = target.rail;
+        int place = (int) ref.home.id;
+        if (place == X10RT.hereId()) {
+            apply(((Rail<?>) ref.$apply$G()).getBackingArray(), idx, op, val);
+        } else if (X10RT.javaSockets != null) {
+            long id = ref.getId();
+            if (BATCH > 1) {
+                getBatch(place).add(id, idx, op, val);
+            } else {
+                ByteBuffer bb = singleOp.get();
+                bb.clear();
+                put(bb, id, idx, op, val);
+                bb.flip();
+                send(place, bb);
+            }
+        } else {
+            Runtime.runClosureAt(place, new RemoteOpClosure(target, idx, op, val), null, null);
+        }
+    }
+
+    /**
+     * Send the updates batched so far to every place.
+     */
+    static void flush() {
+        DeadPlaceException dpe = null;
+        for (Batch batch : batches.values()) {
+            try {
+                batch.flush();
+            } catch (DeadPlaceException e) {
+                if (dpe == null) dpe = e;
+            }
+        }
+        if (dpe != null) throw dpe;
+    }
+
+    // drop the updates batched for a place that has died
+    static void placeRemoved(int place) {
+        batches.remove(Integer.valueOf(place));
+    }
+
+    /* the receiver side of remoteOp */
+    static void receive(ByteBuffer bb) {
+        bb.order(ByteOrder.BIG_ENDIAN); // the transport allocates received buffers in native order
+        try {
+            long lastId = 0;
+            Object array = null;
+            while (bb.remaining() >= OP_BYTES) {
+                long id = bb.getLong();
+                long idx = bb.getLong();
+                int op = bb.get();
+                long val = bb.getLong();
+                if (array == null || id != lastId) {
+                    array = ((Rail<?>) GlobalRef.getLocalObject(id)).getBackingArray();
+                    lastId = id;
+                }
+                apply(array, idx, op, val);
+            }
+        } catch (Throwable e) {
+            if (!x10.xrx.Configuration.silenceInternalWarnings$O()) {
+                System.out.println("WARNING: "+X10RT.here()+" ignoring uncaught exception in a remote operation.");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void apply(Object backingArray, long idx, int op, long val) {
+        long[] a = (long[]) backingArray;
+        if (idx < 0 || idx >= a.length) {
+            throw new ArrayIndexOutOfBoundsException("Index " + idx + " out of bounds for a remote operation on a rail of size " + a.length);
+        }
+        long offset = LONG_ARRAY_BASE + (idx << LONG_ARRAY_SHIFT);
+        if (op == ADD) {
+            X10Unsafe.getAndAddLong(a, offset, val);
+            return;
+        }
+        long old;
+        long x;
+        do {
+            old = X10Unsafe.getLong(a, offset);
+            switch (op) {
+            case AND: x = old & val; break;
+            case OR: x = old | val; break;
+            case XOR: x = old ^ val; break;
+            default: throw new IllegalArgumentException("Unknown remote operation " + op);
+            }
+        } while (!X10Unsafe.compareAndSwapLong(a, offset, old, x));
+    }
+
+    private static void put(ByteBuffer bb, long id, long idx, int op, long val) {
+        bb.putLong(id);
+        bb.putLong(idx);
+        bb.put((byte) op);
+        bb.putLong(val);
+    }
+
+    private static void send(int place, ByteBuffer bb) {
+        if (X10RT.javaSockets.sendMessage(place, CALLBACKID.remoteOpID.ordinal(), bb) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+            throw new DeadPlaceException(new Place(place), "Unable to send a remote operation to "+place);
+        }
+    }
+
+    private static Batch getBatch(int place) {
+        Integer key = Integer.valueOf(place);
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(place);
+            Batch old = batches.putIfAbsent(key, batch);
+            if (old != null) batch = old;
+        }
+        return batch;
+    }
+
+    // reads an integer flag from the system properties, or else from the environment
+    static int getIntFlag(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null)
+            value = System.getenv(name);
+        try {
+            if (value != null)
+                return Integer.parseInt(value);
+        } catch (NumberFormatException e) {} // malformed.  Use the default
+        return defaultValue;
+    }
+
+    // the updates to one place that have not been sent yet
+    private static final class Batch {
+        private final int place;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH * OP_BYTES);
+
+        Batch(int place) {
+            this.place = place;
+        }
+
+        synchronized void add(long id, long idx, int op, long val) {
+            put(buffer, id, idx, op, val);
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (buffer.position() == 0) return;
+            buffer.flip();
+            try {
+                send(place, buffer);
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    // an update sent through a transport without support for remote operations
+    static final class RemoteOpClosure extends x10.core.Ref implements x10.core.fun.VoidFun_0_0, x10.serialization.X10JavaSerializable {
+        private GlobalRail<?> target;
+        private long idx;
+        private int op;
+        private long val;
+
+        public RemoteOpClosure(GlobalRail<?> target, long idx, int op, long val) {
+            this.target = target;
+            this.idx = idx;
+            this.op = op;
+            this.val = val;
+        }
+
+        @SuppressWarnings("unchecked")
+        public static final x10.rtt.RuntimeType<RemoteOpClosure> $RTT =
+            x10.rtt.StaticVoidFunType.<RemoteOpClosure> make(RemoteOpClosure.class, new x10.rtt.Type[] { x10.core.fun.VoidFun_0_0.$RTT });
+
+        public x10.rtt.RuntimeType<?> $getRTT() { return $RTT; }
+
+        public x10.rtt.Type<?> $getParam(int i) { return null; }
+
+        private Object writeReplace() throws java.io.ObjectStreamException {
+            return new x10.serialization.SerializationProxy(this);
+        }
+
+        public static x10.serialization.X10JavaSerializable $_deserialize_body(x10.x10rt.RemoteOps.RemoteOpClosure $_obj, x10.serialization.X10JavaDeserializer $deserializer) throws java.io.IOException {
+            $_obj.target = $deserializer.readObject();
+            $_obj.idx = $deserializer.readLong();
+            $_obj.op = $deserializer.readInt();
+            $_obj.val = $deserializer.readLong();
+            return $_obj;
+        }
+
+        public static x10.serialization.X10JavaSerializable $_deserializer(x10.serialization.X10JavaDeserializer $deserializer) throws java.io.IOException {
+            x10.x10rt.RemoteOps.RemoteOpClosure $_obj = new x10.x10rt.RemoteOps.RemoteOpClosure((java.lang.System[]) null);
+            $deserializer.record_reference($_obj);
+            return $_deserialize_body($_obj, $deserializer);
+        }
+
+        public void $_serialize(x10.serialization.X10JavaSerializer $serializer) throws java.io.IOException {
+            $serializer.write(this.target);
+            $serializer.write(this.idx);
+            $serializer.write(this.op);
+            $serializer.write(this.val);
+        }
+
+        // constructor just for allocation
+        public RemoteOpClosure(final java.lang.System[] $dummy) {}
+
+        @Override
+        public void $apply() {
+            apply(((Rail<?>) target.rail.$apply$G()).getBackingArray(), idx, op, val);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package x10.x10rt;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x10.lang.DeadPlaceException;
+import x10.lang.Place;
+import x10.network.SocketTransport.CALLBACKID;
+import x10.network.SocketTransport.RETURNCODE;
+import x10.rtt.Type;
+import x10.rtt.Types;
+
+/**
+ * The barrier, broadcast and allreduce of x10.util.Team over JavaSockets.
+ *
+ * Without collective support in the transport, Team emulates its collectives on a
+ * binary tree with a finish and an at per hop.  Here the members exchange dedicated
+ * messages instead, which the probing thread leaves in a mailbox of the team, and
+ * each member waits in the collective call for the messages it needs: a dissemination
+ * barrier, a recursive-doubling allreduce and a binomial-tree broadcast that forwards
+ * large rails in segments (see X10_TEAM_BCAST_SEGMENT) so the levels of the tree overlap.
+ * No activity is created.
+ *
+ * As Team requires, all the members call the same collectives on a team in the same
+ * order.  A message is identified by the team, the number of the collective call on
+ * that team and the step of the algorithm, so messages that arrive early wait in the
+ * mailbox until the receiver gets to them.
+ */
+final class SocketCollectives {
+    // the operations, as in x10.util.Team
+    static final int ADD = 0;
+    static final int MUL = 1;
+    static final int AND = 3;
+    static final int OR = 4;
+    static final int XOR = 5;
+    static final int MAX = 6;
+    static final int MIN = 7;
+
+    // the largest number of bytes of a rail sent in one broadcast message (default 64KB)
+    static final String X10_TEAM_BCAST_SEGMENT = "X10_TEAM_BCAST_SEGMENT";
+    private static final int SEGMENT_BYTES = Math.max(1024, RemoteOps.getIntFlag(X10_TEAM_BCAST_SEGMENT, 64*1024));
+
+    // a message starts with the team, the number of the collective call and the step
+    private static final int HEADER_BYTES = 4 + 4 + 4;
+
+    // larger messages are sent from a buffer that is not kept for the next message
+    private static final int MAX_CACHED_BYTES = Math.max(1024*1024, HEADER_BYTES + SEGMENT_BYTES);
+
+    // the steps of allreduce that fold the members beyond the largest power of two into the others
+    private static final int FOLD = -1;
+    private static final int UNFOLD = -2;
+
+    private static final ThreadLocal<ByteBuffer> sendBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(HEADER_BYTES + SEGMENT_BYTES);
+        }
+    };
+
+    private static final ConcurrentHashMap<Integer, TeamState> teams = new ConcurrentHashMap<Integer, TeamState>();
+
+    private SocketCollectives() {}
+
+    /**
+     * Block until every member of the team has entered the barrier.
+     *
+     * @param team The id of the team
+     * @param rank The index of this place in the team
+     * @param members The place of each member of the team
+     */
+    static void barrier(int team, int rank, int[] members) {
+        int n = members.length;
+        TeamState state = getTeam(team);
+        int call = state.calls.getAndIncrement();
+        for (int step = 0, distance = 1; distance < n; step++, distance <<= 1) {
+            send(team, call, step, members[(rank + distance) % n], null, 0, 0);
+            await(state, call, step, members[(rank - distance + n) % n]);
+        }
+    }
+
+    /**
+     * Copy count elements of src at the root to dst at every member.
+     *
+     * @return false, without communicating, if the elements are not of a primitive type
+     */
+    static boolean bcast(int team, int rank, int[] members, int root, Object src, int srcOff, Object dst, int dstOff, int count) {
+        int elementBytes = elementBytes(dst);
+        if (elementBytes == 0) return false;
+        if (rank == root) {
+            System.arraycopy(src, srcOff, dst, dstOff, count);
+        }
+        int n = members.length;
+        TeamState state = getTeam(team);
+        int call = state.calls.getAndIncrement();
+
+        // binomial tree rooted at root: relative rank r receives from r with its lowest bit cleared
+        // and sends to r+m for every power of two m below the lowest bit of r, farthest first
+        int relative = (rank - root + n) % n;
+        int parent = relative == 0 ? -1 : members[((relative & (relative - 1)) + root) % n];
+        int span = relative != 0 ? Integer.lowestOneBit(relative) : n > 1 ? Integer.highestOneBit(n - 1) << 1 : 1;
+
+        int segment = Math.max(1, SEGMENT_BYTES / elementBytes);
+        for (int step = 0, done = 0; done < count; step++, done += segment) {
+            int length = Math.min(segment, count - done);
+            if (parent >= 0) {
+                get(await(state, call, step, parent), dst, dstOff + done, length);
+            }
+            for (int m = span >> 1; m > 0; m >>= 1) {
+                if (relative + m < n) {
+                    send(team, call, step, members[(relative + m + root) % n], dst, dstOff + done, length);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combine the count elements of src at every member with op, and store the
+     * result in dst at every member.
+     *
+     * Every member computes the same result: the elements are combined in pairs and
+     * both members of a pair compute the same commutative combination.
+     *
+     * @param unsigned Whether the elements are of an unsigned type (matters to MAX and MIN)
+     * @return false, without communicating, if the elements are not of a primitive
+     *         type or op does not apply to them
+     */
+    static boolean allreduce(int team, int rank, int[] members, Object src, int srcOff, Object dst, int dstOff, int count, int op, boolean unsigned) {
+        if (!canReduce(dst, op)) return false;
+        System.arraycopy(src, srcOff, dst, dstOff, count);
+        int n = members.length;
+        TeamState state = getTeam(team);
+        int call = state.calls.getAndIncrement();
+
+        // with n = 2^k + rem members, the first 2*rem members pair up: the even one
+        // hands its elements to the odd one and waits for the result
+        int powerOfTwo = Integer.highestOneBit(n);
+        int rem = n - powerOfTwo;
+        int newRank;
+        if (rank < 2 * rem) {
+            if ((rank & 1) == 0) {
+                send(team, call, FOLD, members[rank + 1], dst, dstOff, count);
+                get(await(state, call, UNFOLD, members[rank + 1]), dst, dstOff, count);
+                return true;
+            }
+            combine(dst, dstOff, await(state, call, FOLD, members[rank - 1]), count, op, unsigned);
+            newRank = rank / 2;
+        } else {
+            newRank = rank - rem;
+        }
+
+        for (int step = 0, mask = 1; mask < powerOfTwo; step++, mask <<= 1) {
+            int newPartner = newRank ^ mask;
+            int partner = members[newPartner < rem ? 2 * newPartner + 1 : newPartner + rem];
+            send(team, call, step, partner, dst, dstOff, count);
+            combine(dst, dstOff, await(state, call, step, partner), count, op, unsigned);
+        }
+
+        if (rank < 2 * rem) {
+            send(team, call, UNFOLD, members[rank - 1], dst, dstOff, count);
+        }
+        return true;
+    }
+
+    static boolean isUnsigned(Type<?> type) {
+        return type == Types.UBYTE || type == Types.USHORT || type == Types.UINT || type == Types.ULONG;
+    }
+
+    /* the receiver side of the team messages.  The buffer belongs to this message only */
+    static void receive(ByteBuffer bb) {
+        bb.order(ByteOrder.BIG_ENDIAN); // the transport allocates received buffers in native order
+        int team = bb.getInt();
+        int call = bb.getInt();
+        int step = bb.getInt();
+        getTeam(team).mailbox.put(key(call, step), bb);
+    }
+
+    // waits for the message of a step, processing incoming messages in the meantime
+    private static ByteBuffer await(TeamState state, int call, int step, int place) {
+        Long key = key(call, step);
+        ByteBuffer bb = state.mailbox.remove(key);
+        while (bb == null) {
+            if (X10RT.javaSockets.isPlaceDead(place)) {
+                throw new DeadPlaceException(new Place(place), "Team member "+place+" is dead");
+            }
+            X10RT.probe();
+            bb = state.mailbox.remove(key);
+            if (bb == null) {
+                Thread.yield();
+            }
+        }
+        return bb;
+    }
+
+    private static void send(int team, int call, int step, int place, Object array, int off, int count) {
+        int bytes = HEADER_BYTES + (array == null ? 0 : count * elementBytes(array));
+        ByteBuffer bb;
+        if (bytes <= MAX_CACHED_BYTES) {
+            bb = sendBuffer.get();
+            if (bb.capacity() < bytes) {
+                bb = ByteBuffer.allocateDirect(Math.min(MAX_CACHED_BYTES, Math.max(bytes, 2 * bb.capacity())));
+                sendBuffer.set(bb);
+            }
+            bb.clear();
+        } else {
+            bb = ByteBuffer.allocate(bytes);
+        }
+        bb.putInt(team);
+        bb.putInt(call);
+        bb.putInt(step);
+        if (array != null) {
+            put(bb, array, off, count);
+        }
+        bb.flip();
+        if (X10RT.javaSockets.sendMessage(place, CALLBACKID.teamMessageID.ordinal(), bb) != RETURNCODE.X10RT_ERR_OK.ordinal()) {
+            throw new DeadPlaceException(new Place(place), "Unable to send a team message to "+place);
+        }
+    }
+
+    private static Long key(int call, int step) {
+        return Long.valueOf(((long) call << 32) | (step & 0xFFFFFFFFL));
+    }
+
+    private static TeamState getTeam(int team) {
+        Integer key = Integer.valueOf(team);
+        TeamState state = teams.get(key);
+        if (state == null) {
+            state = new TeamState();
+            TeamState old = teams.putIfAbsent(key, state);
+            if (old != null) state = old;
+        }
+        return state;
+    }
+
+    // the size of the elements of a rail that can be sent as raw bytes, or 0
+    private static int elementBytes(Object array) {
+        if (array instanceof byte[] || array instanceof boolean[]) return 1;
+        if (array instanceof short[] || array instanceof char[]) return 2;
+        if (array instanceof int[] || array instanceof float[]) return 4;
+        if (array instanceof long[] || array instanceof double[]) return 8;
+        return 0;
+    }
+
+    // the same operations as TeamReductionHelper, except for the ones it reports as errors
+    private static boolean canReduce(Object array, int op) {
+        if (array instanceof boolean[]) {
+            return op == AND || op == OR || op == XOR;
+        }
+        if (array instanceof float[] || array instanceof double[]) {
+            return op == ADD || op == MUL || op == MAX || op == MIN;
+        }
+        return elementBytes(array) != 0 && (op == ADD || op == MUL || op == AND || op == OR || op == XOR || op == MAX || op == MIN);
+    }
+
+    private static void put(ByteBuffer bb, Object array, int off, int count) {
+        int end = bb.position() + count * elementBytes(array);
+        if (array instanceof byte[]) {
+            bb.put((byte[]) array, off, count);
+        } else if (array instanceof double[]) {
+            bb.asDoubleBuffer().put((double[]) array, off, count);
+        } else if (array instanceof long[]) {
+            bb.asLongBuffer().put((long[]) array, off, count);
+        } else if (array instanceof float[]) {
+            bb.asFloatBuffer().put((float[]) array, off, count);
+        } else if (array instanceof int[]) {
+            bb.asIntBuffer().put((int[]) array, off, count);
+        } else if (array instanceof short[]) {
+            bb.asShortBuffer().put((short[]) array, off, count);
+        } else if (array instanceof char[]) {
+            bb.asCharBuffer().put((char[]) array, off, count);
+        } else {
+            boolean[] a = (boolean[]) array;
+            for (int i = off; i < off + count; i++) {
+                bb.put(a[i] ? (byte) 1 : (byte) 0);
+            }
+        }
+        bb.position(end);
+    }
+
+    private static void get(ByteBuffer bb, Object array, int off, int count) {
+        int end = bb.position() + count * elementBytes(array);
+        if (array instanceof byte[]) {
+            bb.get((byte[]) array, off, count);
+        } else if (array instanceof double[]) {
+            bb.asDoubleBuffer().get((double[]) array, off, count);
+        } else if (array instanceof long[]) {
+            bb.asLongBuffer().get((long[]) array, off, count);
+        } else if (array instanceof float[]) {
+            bb.asFloatBuffer().get((float[]) array, off, count);
+        } else if (array instanceof int[]) {
+            bb.asIntBuffer().get((int[]) array, off, count);
+        } else if (array instanceof short[]) {
+            bb.asShortBuffer().get((short[]) array, off, count);
+        } else if (array instanceof char[]) {
+            bb.asCharBuffer().get((char[]) array, off, count);
+        } else {
+            boolean[] a = (boolean[]) array;
+            for (int i = off; i < off + count; i++) {
+                a[i] = bb.get() != 0;
+            }
+        }
+        bb.position(end);
+    }
+
+    // combines the elements in bb into array; unsigned elements narrower than a long are zero-extended
+    private static void combine(Object array, int off, ByteBuffer bb, int count, int op, boolean unsigned) {
+        int end = off + count;
+        if (array instanceof double[]) {
+            double[] a = (double[]) array;
+            for (int i = off; i < end; i++) a[i] = combine(a[i], bb.getDouble(), op);
+        } else if (array instanceof float[]) {
+            float[] a = (float[]) array;
+            for (int i = off; i < end; i++) a[i] = combine(a[i], bb.getFloat(), op);
+        } else if (array instanceof long[]) {
+            long[] a = (long[]) array;
+            for (int i = off; i < end; i++) a[i] = combine(a[i], bb.getLong(), op, unsigned);
+        } else if (array instanceof int[]) {
+            int[] a = (int[]) array;
+            long mask = unsigned ? 0xFFFFFFFFL : -1L;
+            for (int i = off; i < end; i++) a[i] = (int) combine(a[i] & mask, bb.getInt() & mask, op, false);
+        } else if (array instanceof short[]) {
+            short[] a = (short[]) array;
+            long mask = unsigned ? 0xFFFFL : -1L;
+            for (int i = off; i < end; i++) a[i] = (short) combine(a[i] & mask, bb.getShort() & mask, op, false);
+        } else if (array instanceof char[]) {
+            char[] a = (char[]) array;
+            for (int i = off; i < end; i++) a[i] = (char) combine(a[i], bb.getChar(), op, false);
+        } else if (array instanceof byte[]) {
+            byte[] a = (byte[]) array;
+            long mask = unsigned ? 0xFFL : -1L;
+            for (int i = off; i < end; i++) a[i] = (byte) combine(a[i] & mask, bb.get() & mask, op, false);
+        } else {
+            boolean[] a = (boolean[]) array;
+            for (int i = off; i < end; i++) a[i] = combine(a[i], bb.get() != 0, op);
+        }
+    }
+
+    private static long combine(long x, long y, int op, boolean unsigned) {
+        switch (op) {
+        case ADD: return x + y;
+        case MUL: return x * y;
+        case AND: return x & y;
+        case OR: return x | y;
+        case XOR: return x ^ y;
+        case MAX: return (unsigned ? Long.compareUnsigned(x, y) : Long.compare(x, y)) >= 0 ? x : y;
+        case MIN: return (unsigned ? Long.compareUnsigned(x, y) : Long.compare(x, y)) <= 0 ? x : y;
+        default: throw new IllegalArgumentException("Unknown reduction operation " + op);
+        }
+    }
+
+    private static double combine(double x, double y, int op) {
+        switch (op) {
+        case ADD: return x + y;
+        case MUL: return x * y;
+        case MAX: return Math.max(x, y);
+        case MIN: return Math.min(x, y);
+        default: throw new IllegalArgumentException("Unknown reduction operation " + op);
+        }
+    }
+
+    private static float combine(float x, float y, int op) {
+        switch (op) {
+        case ADD: return x + y;
+        case MUL: return x * y;
+        case MAX: return Math.max(x, y);
+        case MIN: return Math.min(x, y);
+        default: throw new IllegalArgumentException("Unknown reduction operation " + op);
+        }
+    }
+
+    private static boolean combine(boolean x, boolean y, int op) {
+        switch (op) {
+        case AND: return x & y;
+        case OR: return x | y;
+        case XOR: return x ^ y;
+        default: throw new IllegalArgumentException("Unknown reduction operation " + op);
+        }
+    }
+
+    // the messages of a team that have arrived but have not been consumed yet
+    private static final class TeamState {
+        final ConcurrentHashMap<Long, ByteBuffer> mailbox = new ConcurrentHashMap<Long, ByteBuffer>();
+        final AtomicInteger calls = new AtomicInteger();
+    }
+}
@@ -286,6 +286,31 @@ public class TeamSupport {
         }
     }
     
+    /*
+     * Collectives over JavaSockets messages, used by Team.x10 instead of its
+     * emulated collectives (see SocketCollectives).  The bcast and allreduce
+     * methods return false, without communicating, for rails they cannot handle.
+     */
+    public static boolean socketCollectives() {
+        return X10RT.javaSockets != null;
+    }
+
+    public static void socketBarrier(int id, int rank, Rail<x10.core.Int> members) {
+        SocketCollectives.barrier(id, rank, members.getIntArray());
+    }
+
+    public static boolean socketBcast(int id, int rank, Rail<x10.core.Int> members, int root, Rail<?> src, int src_off,
+                                      Rail<?> dst, int dst_off, int count) {
+        return SocketCollectives.bcast(id, rank, members.getIntArray(), root, rank == root ? src.getBackingArray() : null, src_off,
+                                       dst.getBackingArray(), dst_off, count);
+    }
+
+    public static boolean socketAllReduce(int id, int rank, Rail<x10.core.Int> members, Rail<?> src, int src_off,
+                                          Rail<?> dst, int dst_off, int count, int op) {
+        return SocketCollectives.allreduce(id, rank, members.getIntArray(), src.getBackingArray(), src_off,
+                                           dst.getBackingArray(), dst_off, count, op, SocketCollectives.isUnsigned(dst.$getParam(0)));
+    }
+
     private static native void nativeMakeImpl(int[] places, int count, int[] result, FinishState fs);
     
     private static native int nativeSizeImpl(int id);
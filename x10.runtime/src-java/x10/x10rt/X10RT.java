@@ -11,7 +11,7 @@
 
 package x10.x10rt;
 
-import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 
@@ -24,6 +24,7 @@ import x10.network.SocketTransport.Message;
 import x10.network.SocketTransport.PROBE_TYPE;
 import x10.network.SocketTransport.RETURNCODE;
 import x10.runtime.impl.java.Runtime;
+import x10.serialization.ByteBufferInputStream;
 import x10.xrx.Configuration;
 
 import com.hazelcast.core.HazelcastInstance;
@@ -253,25 +254,24 @@ public class X10RT {
     	return true;
     }
     
+    // deserializes in place from the received buffer, which belongs to this message only
     private static void runCallback(int callbackId, ByteBuffer bb) {
-        byte[] data;
-        if (bb.hasArray())
-            data = bb.array();
-        else {
-            data = new byte[bb.remaining()];
-            bb.get(data);
-        }
+        InputStream data = new ByteBufferInputStream(bb);
         
         if (callbackId == CALLBACKID.closureMessageID.ordinal()) {
-            Runtime.runClosureAtReceive(new ByteArrayInputStream(data));
+            Runtime.runClosureAtReceive(data);
         } else if (callbackId == CALLBACKID.simpleAsyncMessageID.ordinal()) {
-            Runtime.runSimpleAsyncAtReceive(new ByteArrayInputStream(data), true);
+            Runtime.runSimpleAsyncAtReceive(data, true);
         } else if (callbackId == CALLBACKID.putID.ordinal()) {
-            Runtime.putReceive(new ByteArrayInputStream(data));
+            Runtime.putReceive(data);
         } else if (callbackId == CALLBACKID.getID.ordinal()) {
-            Runtime.getReceive(new ByteArrayInputStream(data));
+            Runtime.getReceive(data);
         } else if (callbackId == CALLBACKID.getCompletedID.ordinal()) {
-            Runtime.getCompletedReceive(new ByteArrayInputStream(data));
+            Runtime.getCompletedReceive(data);
+        } else if (callbackId == CALLBACKID.remoteOpID.ordinal()) {
+            RemoteOps.receive(bb);
+        } else if (callbackId == CALLBACKID.teamMessageID.ordinal()) {
+            SocketCollectives.receive(bb);
         } else {
             System.err.println("Unknown message callback type: "+callbackId);
         }
@@ -532,31 +532,35 @@ public class X10RT {
      * Support for remote operations
      */
     public static void remoteAdd(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteAdd not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.ADD, val);
     }
     public static void remoteAdd__1$u(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteAdd not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.ADD, val);
     }
 
     public static void remoteAnd(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteAnd not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.AND, val);
     }
     public static void remoteAnd__1$u(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteAnd not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.AND, val);
     }
 
     public static void remoteOr(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteOr not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.OR, val);
     }
     public static void remoteOr__1$u(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteOr not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.OR, val);
     }
 
     public static void remoteXor(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteXor not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.XOR, val);
     }
     public static void remoteXor__1$u(GlobalRail<?> target, long idx, long val) {
-        throw new UnsupportedOperationException("remoteXor not implemented for Managed X10");
+        RemoteOps.remoteOp(target, idx, RemoteOps.XOR, val);
+    }
+    
+    public static void flushRemoteOps() {
+        RemoteOps.flush();
     }
     
     /*
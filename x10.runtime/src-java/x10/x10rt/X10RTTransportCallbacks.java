@@ -13,6 +13,7 @@ package x10.x10rt;
 import x10.core.fun.VoidFun_0_1;
 import x10.lang.Place;
 import x10.network.NetworkTransportCallbacks;
+import x10.serialization.LinkDictionaries;
 
 /**
  * Implementation of NetworkTransportCallbacks for the X10RT transports. 
@@ -44,6 +45,8 @@ final class X10RTTransportCallbacks implements NetworkTransportCallbacks {
     }
     
     public void runPlaceRemovedHandler(int placeId) {
+    	LinkDictionaries.placeRemoved(placeId);
+    	RemoteOps.placeRemoved(placeId);
     	VoidFun_0_1<Place> handler = placeRemovedHandler;
     	if (handler == null) return;
     	